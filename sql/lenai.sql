@@ -20,3 +20,16 @@ CREATE TABLE IF NOT EXISTS chatmemory (
     INDEX idx_is_delete (is_delete)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+
+-- 创建对话摘要表，保存每个会话被折叠的早期消息的滚动摘要
+CREATE TABLE IF NOT EXISTS chatmemory_summary (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    conversation_id VARCHAR(255) NOT NULL,
+    summary TEXT NOT NULL,
+    covered_order INT NOT NULL,
+    create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    is_delete BOOLEAN DEFAULT 0,
+    INDEX idx_conversation_id (conversation_id),
+    INDEX idx_is_delete (is_delete)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
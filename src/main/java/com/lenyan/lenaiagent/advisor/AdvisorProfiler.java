@@ -0,0 +1,221 @@
+package com.lenyan.lenaiagent.advisor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Advisor 链性能剖析
+ * 包装每个 Advisor，单独计时它自身的耗时（总耗时减去下游 Advisor 和模型调用的耗时），
+ * 模型调用本身记为 ChatModel 段；结果记为直方图，并由 advisors 端点汇总各段的分位数。
+ * ChatModel 段同时代替 ObservabilityAdvisor 的 ModelProbe，模型调用只测量一次
+ */
+public class AdvisorProfiler {
+
+    // 模型调用段的名称
+    public static final String MODEL_SEGMENT = "ChatModel";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * 单段耗时统计，时间单位为毫秒
+     */
+    public record SegmentStats(String advisor, String mode, long count, double meanMs, double p50Ms,
+                               double p95Ms, double p99Ms, double maxMs) {
+    }
+
+    public AdvisorProfiler(MeterRegistry meterRegistry, boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 包装一组默认 Advisor，并追加模型调用段的计时；其中的 ModelProbe 由模型调用段代替
+     */
+    public List<Advisor> profile(List<Advisor> advisors) {
+        if (!enabled) {
+            return advisors;
+        }
+        List<Advisor> profiled = new ArrayList<>(advisors.size() + 1);
+        advisors.stream()
+                .filter(advisor -> !(advisor instanceof ObservabilityAdvisor.ModelProbe))
+                .forEach(advisor -> profiled.add(profile(advisor)));
+        profiled.add(new ModelSegment());
+        return profiled;
+    }
+
+    /**
+     * 包装单个 Advisor，名称和顺序不变
+     */
+    public Advisor profile(Advisor advisor) {
+        if (!enabled || advisor instanceof ProfiledAdvisor) {
+            return advisor;
+        }
+        return new ProfiledAdvisor(advisor);
+    }
+
+    /**
+     * 各段耗时，按 p99 从高到低排列
+     */
+    public List<SegmentStats> snapshot() {
+        List<SegmentStats> stats = new ArrayList<>();
+        for (Timer timer : timers.values()) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            double p50 = 0, p95 = 0, p99 = 0;
+            for (ValueAtPercentile value : snapshot.percentileValues()) {
+                double millis = value.value(TimeUnit.MILLISECONDS);
+                if (value.percentile() == 0.5) {
+                    p50 = millis;
+                } else if (value.percentile() == 0.95) {
+                    p95 = millis;
+                } else if (value.percentile() == 0.99) {
+                    p99 = millis;
+                }
+            }
+            stats.add(new SegmentStats(timer.getId().getTag("advisor"), timer.getId().getTag("mode"),
+                    snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS), p50, p95, p99,
+                    snapshot.max(TimeUnit.MILLISECONDS)));
+        }
+        stats.sort(Comparator.comparingDouble(SegmentStats::p99Ms).reversed());
+        return stats;
+    }
+
+    private void record(String advisor, String mode, long nanos) {
+        timers.computeIfAbsent(advisor + ":" + mode, key -> Timer.builder("chat.advisor.segment")
+                        .description("单个 Advisor 自身的耗时，不含下游 Advisor 和模型调用")
+                        .tag("advisor", advisor)
+                        .tag("mode", mode)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 计时包装；被包装的 Advisor 不支持某种调用方式时，该方式直接交给下游
+     */
+    private final class ProfiledAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+        private final Advisor delegate;
+
+        private ProfiledAdvisor(Advisor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public int getOrder() {
+            return delegate.getOrder();
+        }
+
+        @Override
+        public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+            if (!(delegate instanceof CallAroundAdvisor advisor)) {
+                return chain.nextAroundCall(request);
+            }
+            long start = System.nanoTime();
+            long[] downstream = new long[1];
+            try {
+                return advisor.aroundCall(request, next -> {
+                    long downstreamStart = System.nanoTime();
+                    try {
+                        return chain.nextAroundCall(next);
+                    } finally {
+                        downstream[0] += System.nanoTime() - downstreamStart;
+                    }
+                });
+            } finally {
+                record(getName(), "call", System.nanoTime() - start - downstream[0]);
+            }
+        }
+
+        @Override
+        public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+            if (!(delegate instanceof StreamAroundAdvisor advisor)) {
+                return chain.nextAroundStream(request);
+            }
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                AtomicLong downstream = new AtomicLong();
+                StreamAroundAdvisorChain timedChain = next -> Flux.defer(() -> {
+                    long downstreamStart = System.nanoTime();
+                    Runnable done = once(() -> downstream.addAndGet(System.nanoTime() - downstreamStart));
+                    return chain.nextAroundStream(next).doOnTerminate(done).doOnCancel(done);
+                });
+                Runnable done = once(() -> record(getName(), "stream", System.nanoTime() - start - downstream.get()));
+                return advisor.aroundStream(request, timedChain).doOnTerminate(done).doOnCancel(done);
+            });
+        }
+    }
+
+    /**
+     * 位于链的最内层，下游即模型调用；耗时同时累加给 ObservabilityAdvisor
+     */
+    private final class ModelSegment implements CallAroundAdvisor, StreamAroundAdvisor {
+
+        @Override
+        public String getName() {
+            return AdvisorProfiler.class.getSimpleName() + MODEL_SEGMENT;
+        }
+
+        @Override
+        public int getOrder() {
+            // ChatClient 调用模型的 Advisor 为 LOWEST_PRECEDENCE，紧挨在它之前
+            return Ordered.LOWEST_PRECEDENCE - 1;
+        }
+
+        @Override
+        public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+            long start = System.nanoTime();
+            try {
+                return chain.nextAroundCall(request);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                record(MODEL_SEGMENT, "call", nanos);
+                ObservabilityAdvisor.ModelProbe.add(request, nanos);
+            }
+        }
+
+        @Override
+        public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                Runnable done = once(() -> {
+                    long nanos = System.nanoTime() - start;
+                    record(MODEL_SEGMENT, "stream", nanos);
+                    ObservabilityAdvisor.ModelProbe.add(request, nanos);
+                });
+                // 完成和失败信号先经过这里再到外层，外层记录时耗时已累加
+                return chain.nextAroundStream(request).doOnTerminate(done).doOnCancel(done);
+            });
+        }
+    }
+
+    private static Runnable once(Runnable action) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if (done.compareAndSet(false, true)) {
+                action.run();
+            }
+        };
+    }
+}
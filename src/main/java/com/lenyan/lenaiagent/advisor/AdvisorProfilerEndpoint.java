@@ -0,0 +1,24 @@
+package com.lenyan.lenaiagent.advisor;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * Advisor 耗时端点，GET /actuator/advisors 返回各 Advisor 自身耗时的分位数，按 p99 从高到低排列
+ */
+@Endpoint(id = "advisors")
+public class AdvisorProfilerEndpoint {
+
+    private final AdvisorProfiler advisorProfiler;
+
+    public AdvisorProfilerEndpoint(AdvisorProfiler advisorProfiler) {
+        this.advisorProfiler = advisorProfiler;
+    }
+
+    @ReadOperation
+    public List<AdvisorProfiler.SegmentStats> segments() {
+        return advisorProfiler.snapshot();
+    }
+}
@@ -0,0 +1,228 @@
+package com.lenyan.lenaiagent.advisor;
+
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
+import com.lenyan.lenaiagent.chatmemory.TokenCounter;
+import com.lenyan.lenaiagent.domain.ChatMemorySummary;
+import com.lenyan.lenaiagent.service.ChatMemorySummaryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.MessageAggregator;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * 带滚动摘要的对话记忆 Advisor，替代 MessageChatMemoryAdvisor
+ * 只取尚未并入摘要的最近消息，超出 token 预算的部分不发给模型；摘要拼接在系统提示词之后。
+ * 未摘要的消息超出预算或超出检索条数时，在回答写入记忆后异步把较早的消息折叠进摘要，
+ * 摘要连同已覆盖的消息序号保存在 chatmemory_summary 表，每次请求的提示词 token 数有上限。
+ * 数据库中的会话被清空时摘要随消息一并删除；缓存的摘要记录见到的最大消息序号，序号回落说明会话被清空，重新读取摘要
+ */
+@Slf4j
+public class CompactingChatMemoryAdvisor extends AbstractChatMemoryAdvisor<ChatMemory> {
+
+    // 写入 adviseContext，标记本轮结束后需要压缩
+    private static final String COMPACT_KEY = "chat_memory_compact";
+
+
+    private final ToIntFunction<String> lastOrder;
+    private final ChatMemorySummaryService summaryService;
+    private final ConversationCompactor compactor;
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+    // 访问顺序的摘要缓存，超出数量上限时淘汰最久未访问的会话
+    private final Map<String, Summary> summaries;
+
+    /**
+     * 会话摘要及其覆盖到的消息序号，seenOrder 为缓存期间见到的最大消息序号
+     */
+    private record Summary(String text, int coveredOrder, int tokens, int seenOrder) {
+
+        private static Summary empty(int seenOrder) {
+            return new Summary("", 0, 0, seenOrder);
+        }
+
+        private Summary seen(int order) {
+            return order > seenOrder ? new Summary(text, coveredOrder, tokens, order) : this;
+        }
+    }
+
+    /**
+     * @param lastOrder        查询会话当前的最大消息序号，需包含尚未落库的消息
+     * @param maxConversations 缓存摘要的最大会话数
+     */
+    public CompactingChatMemoryAdvisor(ChatMemory chatMemory, ToIntFunction<String> lastOrder,
+                                       ChatMemorySummaryService summaryService, ConversationCompactor compactor,
+                                       int maxConversations) {
+        super(chatMemory);
+        this.lastOrder = lastOrder;
+        this.summaryService = summaryService;
+        this.compactor = compactor;
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        AdvisedResponse advisedResponse = chain.nextAroundCall(before(advisedRequest));
+        observeAfter(advisedResponse);
+        return advisedResponse;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        Flux<AdvisedResponse> advisedResponses = doNextWithProtectFromBlockingBefore(advisedRequest, chain,
+                this::before);
+        return new MessageAggregator().aggregateAdvisedResponse(advisedResponses, this::observeAfter);
+    }
+
+    /**
+     * 清空会话的消息和摘要
+     */
+    public void clear(String conversationId) {
+        getChatMemoryStore().clear(conversationId);
+        summaryService.clearSummary(conversationId);
+        synchronized (summaries) {
+            summaries.remove(conversationId);
+        }
+    }
+
+    /**
+     * 把当前未摘要的较早消息折叠进摘要，只保留最近不超过 keepRecentTokens 且不超过检索条数一半的消息
+     *
+     * @return 是否更新了摘要
+     */
+    public boolean compact(String conversationId, int retrieveSize) {
+        int order = lastOrder.applyAsInt(conversationId);
+        Summary summary = currentSummary(conversationId, order);
+        int unsummarized = order - summary.coveredOrder;
+        // 积压过多时只折叠最近的部分，更早的消息本就不在上下文中
+        int fetch = Math.min(unsummarized, Math.max(retrieveSize, 1) * 2);
+        if (fetch <= 0) {
+            return false;
+        }
+        List<Message> messages = getChatMemoryStore().get(conversationId, fetch);
+        if (lastOrder.applyAsInt(conversationId) != order) {
+            // 读取期间有新消息写入，序号对不上，留待下一轮
+            return false;
+        }
+        int keep = messages.size() - ConversationCompactor.keepFrom(messages, 0, compactor.getKeepRecentTokens());
+        keep = Math.min(keep, retrieveSize / 2);
+        int foldCount = messages.size() - keep;
+        if (foldCount <= 0) {
+            return false;
+        }
+
+        String text = compactor.fold(summary.text, messages.subList(0, foldCount));
+        if (lastOrder.applyAsInt(conversationId) < order) {
+            // 摘要期间会话被清空，丢弃旧对话的摘要
+            return false;
+        }
+        int coveredOrder = order - keep;
+        summaryService.saveSummary(conversationId, text, coveredOrder);
+        synchronized (summaries) {
+            summaries.put(conversationId, new Summary(text, coveredOrder, TokenCounter.count(text), order));
+        }
+        log.info("会话 {} 的 {} 条消息已折叠进摘要，摘要覆盖到消息序号 {}", conversationId, foldCount, coveredOrder);
+        return true;
+    }
+
+    private AdvisedRequest before(AdvisedRequest request) {
+        String conversationId = doGetConversationId(request.adviseContext());
+        int retrieveSize = doGetChatMemoryRetrieveSize(request.adviseContext());
+
+        // 1. 只取未并入摘要的最近消息
+        int order = lastOrder.applyAsInt(conversationId);
+        Summary summary = currentSummary(conversationId, order);
+        int unsummarized = order - summary.coveredOrder;
+        int window = Math.min(retrieveSize, unsummarized);
+        List<Message> recent = window > 0 ? getChatMemoryStore().get(conversationId, window) : List.of();
+
+        // 2. 摘要和最近消息合计不超过预算，超出的较早消息本轮不发送
+        int budget = Math.max(0, compactor.getTokenBudget() - summary.tokens);
+        int keepFrom = ConversationCompactor.keepFrom(recent, 0, budget);
+        List<Message> advisedMessages = new ArrayList<>(request.messages());
+        advisedMessages.addAll(recent.subList(keepFrom, recent.size()));
+
+        AdvisedRequest.Builder builder = AdvisedRequest.from(request).messages(advisedMessages);
+        if (!summary.text.isBlank()) {
+            String systemText = request.systemText();
+            builder.systemText((systemText == null || systemText.isBlank() ? "" : systemText + "\n\n")
+                    + ConversationCompactor.SUMMARY_PREFIX + summary.text);
+        }
+        if (keepFrom > 0 || unsummarized > retrieveSize) {
+            Map<String, Object> context = new HashMap<>(request.adviseContext());
+            context.put(COMPACT_KEY, retrieveSize);
+            builder.adviseContext(context);
+        }
+
+        // 3. 记录本轮用户输入
+        getChatMemoryStore().add(conversationId, new UserMessage(request.userText(), request.media()));
+        return builder.build();
+    }
+
+    private void observeAfter(AdvisedResponse advisedResponse) {
+        String conversationId = doGetConversationId(advisedResponse.adviseContext());
+        List<Message> assistantMessages = advisedResponse.response()
+                .getResults()
+                .stream()
+                .map(generation -> (Message) generation.getOutput())
+                .toList();
+        getChatMemoryStore().add(conversationId, assistantMessages);
+
+        if (advisedResponse.adviseContext().get(COMPACT_KEY) instanceof Integer retrieveSize
+                && compacting.add(conversationId)) {
+            // 摘要需要调用模型，不占用本次请求的时间
+            Thread.ofVirtual().name("chat-memory-compactor").start(() -> {
+                try {
+                    compact(conversationId, retrieveSize);
+                } catch (Exception e) {
+                    log.warn("会话 {} 压缩失败，下一轮重试: {}", conversationId, e.getMessage());
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 当前摘要；会话被清空后序号从头开始，序号比缓存时见到的小即重新读取摘要，
+     * 覆盖序号超过当前序号的摘要属于清空前的对话，记为空摘要，会话继续增长也不会再用到
+     *
+     * @param order 会话当前的最大消息序号
+     */
+    private Summary currentSummary(String conversationId, int order) {
+        Summary summary;
+        synchronized (summaries) {
+            summary = summaries.get(conversationId);
+        }
+        if (summary == null || order < summary.seenOrder) {
+            ChatMemorySummary entity = summaryService.getSummary(conversationId);
+            summary = entity == null || entity.getCoveredOrder() > order ? Summary.empty(order)
+                    : new Summary(entity.getSummary(), entity.getCoveredOrder(),
+                    TokenCounter.count(entity.getSummary()), order);
+        }
+        summary = summary.seen(order);
+        synchronized (summaries) {
+            summaries.put(conversationId, summary);
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,291 @@
+package com.lenyan.lenaiagent.advisor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+
+/**
+ * 可观测性 Advisor
+ * 记录调用耗时、流式首 token 耗时、提示词与生成 token 数、模型调用耗时和 Advisor 链开销等 Micrometer 指标；
+ * 对话内容按采样率写入 chat.payload 日志（异步输出），失败的调用总会记录
+ */
+@Slf4j
+public class ObservabilityAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    // 对话内容日志，logback-spring.xml 中配置为异步输出
+    private static final Logger PAYLOAD_LOG = LoggerFactory.getLogger("chat.payload");
+    // 写入 adviseContext，供 ModelProbe 累加模型调用耗时
+    private static final String MODEL_NANOS_KEY = "observability_model_nanos";
+
+    private final MeterRegistry meterRegistry;
+    private final double sampleRate;
+    private final int maxPayloadLength;
+    private final ModelProbe modelProbe = new ModelProbe();
+    private final Map<String, Timer> latencyTimers = new ConcurrentHashMap<>();
+    private final Timer firstTokenTimer;
+    private final Timer modelTimer;
+    private final Timer overheadTimer;
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary completionTokens;
+
+    /**
+     * @param sampleRate       记录对话内容的比例，取值 [0, 1]
+     * @param maxPayloadLength 对话内容日志中输入和输出各自保留的最大字符数
+     */
+    public ObservabilityAdvisor(MeterRegistry meterRegistry, double sampleRate, int maxPayloadLength) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.maxPayloadLength = maxPayloadLength;
+        this.firstTokenTimer = Timer.builder("chat.client.time.to.first.token")
+                .description("流式调用首个片段的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.modelTimer = Timer.builder("chat.client.model.latency")
+                .description("模型调用耗时，不含 Advisor")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.overheadTimer = Timer.builder("chat.client.advisor.overhead")
+                .description("Advisor 链耗时，即调用总耗时减去模型调用耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.promptTokens = DistributionSummary.builder("chat.client.tokens")
+                .description("每次调用的 token 数")
+                .tag("type", "prompt")
+                .register(meterRegistry);
+        this.completionTokens = DistributionSummary.builder("chat.client.tokens")
+                .description("每次调用的 token 数")
+                .tag("type", "completion")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // 最外层，耗时包含所有 Advisor
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * 放在 Advisor 链最内层，测量模型调用本身的耗时，需与本 Advisor 一起注册；
+     * 经 AdvisorProfiler 包装时由其模型调用段代替
+     */
+    public ModelProbe modelProbe() {
+        return modelProbe;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+        AtomicLong modelNanos = new AtomicLong(-1);
+        long start = System.nanoTime();
+        AdvisedResponse response;
+        try {
+            response = chain.nextAroundCall(withProbe(request, modelNanos));
+        } catch (RuntimeException e) {
+            record("call", "error", request, null, System.nanoTime() - start, -1, modelNanos.get(), null, e);
+            throw e;
+        }
+        ChatResponse chatResponse = response == null ? null : response.response();
+        record("call", "success", request, chatResponse == null ? null : usageOf(chatResponse),
+                System.nanoTime() - start, -1, modelNanos.get(), textOf(chatResponse), null);
+        return response;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+        return Flux.defer(() -> {
+            AtomicLong modelNanos = new AtomicLong(-1);
+            long start = System.nanoTime();
+            // 只有采样到的请求才拼接回答文本
+            StreamState state = new StreamState(sampled() ? new StringBuilder() : null);
+            // 在结束信号传给下游之前记录，调用方拿到结果时指标已更新
+            Consumer<String> finish = outcome -> record("stream", outcome, request, state.usage,
+                    System.nanoTime() - start, state.firstTokenNanos, modelNanos.get(),
+                    state.text == null ? null : state.text.toString(), state.error);
+            return chain.nextAroundStream(withProbe(request, modelNanos))
+                    .doOnNext(response -> state.accept(response, start))
+                    .doOnComplete(() -> finish.accept("success"))
+                    .doOnError(error -> {
+                        state.error = error;
+                        finish.accept("error");
+                    })
+                    .doOnCancel(() -> finish.accept("cancelled"));
+        });
+    }
+
+    /**
+     * 一次流式调用的统计状态
+     */
+    private static final class StreamState {
+
+        private final StringBuilder text;
+        private long firstTokenNanos = -1;
+        private Usage usage;
+        private Throwable error;
+
+        private StreamState(StringBuilder text) {
+            this.text = text;
+        }
+
+        private void accept(AdvisedResponse response, long start) {
+            ChatResponse chatResponse = response.response();
+            if (chatResponse == null) {
+                return;
+            }
+            String chunk = textOf(chatResponse);
+            if (firstTokenNanos < 0 && chunk != null && !chunk.isEmpty()) {
+                firstTokenNanos = System.nanoTime() - start;
+            }
+            if (text != null && chunk != null) {
+                text.append(chunk);
+            }
+            // 用量通常只在最后一个片段给出，或每个片段给出累计值，保留最新的非零值
+            Usage chunkUsage = usageOf(chatResponse);
+            if (chunkUsage != null && (positive(chunkUsage.getPromptTokens()) || positive(chunkUsage.getCompletionTokens()))) {
+                usage = chunkUsage;
+            }
+        }
+    }
+
+    private void record(String mode, String outcome, AdvisedRequest request, Usage usage, long elapsedNanos,
+                        long firstTokenNanos, long modelNanos, String answer, Throwable error) {
+        latencyTimers.computeIfAbsent(mode + ":" + outcome, key -> Timer.builder("chat.client.latency")
+                        .description("对话调用总耗时")
+                        .tag("mode", mode)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (firstTokenNanos >= 0) {
+            firstTokenTimer.record(firstTokenNanos, TimeUnit.NANOSECONDS);
+        }
+        if (modelNanos >= 0) {
+            modelTimer.record(modelNanos, TimeUnit.NANOSECONDS);
+        }
+        overheadTimer.record(Math.max(0, elapsedNanos - Math.max(0, modelNanos)), TimeUnit.NANOSECONDS);
+        Integer prompt = usage == null ? null : usage.getPromptTokens();
+        Integer completion = usage == null ? null : usage.getCompletionTokens();
+        if (positive(prompt)) {
+            promptTokens.record(prompt);
+        }
+        if (positive(completion)) {
+            completionTokens.record(completion);
+        }
+
+        Object conversationId = request.adviseContext().get(CHAT_MEMORY_CONVERSATION_ID_KEY);
+        if (error != null) {
+            PAYLOAD_LOG.warn("mode={} outcome={} conversationId={} latencyMs={} user=\"{}\"", mode, outcome,
+                    conversationId, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), abbreviate(request.userText()), error);
+        } else if (answer != null && ("stream".equals(mode) || sampled())) {
+            // 流式调用在开始时已决定是否采样，有回答文本即表示采样到
+            PAYLOAD_LOG.info("mode={} outcome={} conversationId={} latencyMs={} firstTokenMs={} promptTokens={} "
+                            + "completionTokens={} user=\"{}\" answer=\"{}\"", mode, outcome, conversationId,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    firstTokenNanos < 0 ? null : TimeUnit.NANOSECONDS.toMillis(firstTokenNanos),
+                    prompt, completion, abbreviate(request.userText()), abbreviate(answer));
+        } else if (log.isDebugEnabled()) {
+            log.debug("mode={} outcome={} conversationId={} latencyMs={} promptTokens={} completionTokens={}",
+                    mode, outcome, conversationId, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), prompt, completion);
+        }
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private String abbreviate(String text) {
+        if (text == null || text.length() <= maxPayloadLength) {
+            return text;
+        }
+        return text.substring(0, maxPayloadLength) + "...(" + text.length() + " chars)";
+    }
+
+    private static AdvisedRequest withProbe(AdvisedRequest request, AtomicLong modelNanos) {
+        Map<String, Object> context = new HashMap<>(request.adviseContext());
+        context.put(MODEL_NANOS_KEY, modelNanos);
+        return AdvisedRequest.from(request).adviseContext(context).build();
+    }
+
+    private static boolean positive(Integer tokens) {
+        return tokens != null && tokens > 0;
+    }
+
+    private static Usage usageOf(ChatResponse response) {
+        return response.getMetadata() == null ? null : response.getMetadata().getUsage();
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    /**
+     * 最内层 Advisor，把模型调用耗时累加到 ObservabilityAdvisor 放入的计数器
+     */
+    public static class ModelProbe implements CallAroundAdvisor, StreamAroundAdvisor {
+
+        private ModelProbe() {
+        }
+
+        @Override
+        public String getName() {
+            return ObservabilityAdvisor.class.getSimpleName() + "ModelProbe";
+        }
+
+        @Override
+        public int getOrder() {
+            // ChatClient 调用模型的 Advisor 为 LOWEST_PRECEDENCE，紧挨在它之前
+            return Ordered.LOWEST_PRECEDENCE - 1;
+        }
+
+        @Override
+        public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+            long start = System.nanoTime();
+            try {
+                return chain.nextAroundCall(request);
+            } finally {
+                add(request, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                // 完成和失败信号先经过这里再到外层，外层记录时耗时已累加
+                return chain.nextAroundStream(request)
+                        .doOnTerminate(() -> add(request, System.nanoTime() - start))
+                        .doOnCancel(() -> add(request, System.nanoTime() - start));
+            });
+        }
+
+        static void add(AdvisedRequest request, long nanos) {
+            if (request.adviseContext().get(MODEL_NANOS_KEY) instanceof AtomicLong modelNanos) {
+                modelNanos.accumulateAndGet(nanos, (current, added) -> Math.max(current, 0) + added);
+            }
+        }
+    }
+}
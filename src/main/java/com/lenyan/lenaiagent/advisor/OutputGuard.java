@@ -0,0 +1,28 @@
+package com.lenyan.lenaiagent.advisor;
+
+/**
+ * 模型输出校验规则
+ * 逐字符扫描，扫描器保存跨片段的状态，用于流式输出边到达边检查
+ */
+public interface OutputGuard {
+
+    /**
+     * 为一次回答新建扫描器，规则可能热更新，一次回答内始终使用创建时的规则
+     */
+    Scanner newScanner();
+
+    interface Scanner {
+
+        /**
+         * 可能命中的最长文本长度，流式输出时据此暂缓末尾的字符，命中时不会已经输出了一部分
+         */
+        int maxMatchLength();
+
+        /**
+         * 读入一个字符
+         *
+         * @return 命中时返回以该字符结尾的命中文本长度，未命中返回 0
+         */
+        int next(char c);
+    }
+}
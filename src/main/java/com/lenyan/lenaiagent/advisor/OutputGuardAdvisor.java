@@ -0,0 +1,195 @@
+package com.lenyan.lenaiagent.advisor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型输出校验 Advisor
+ * 按输出校验规则检查模型回答，命中时截断回答：保留命中位置之前的内容并追加提示。
+ * 流式输出边到达边扫描，只暂缓末尾不超过最长命中长度的字符，不缓存整段回答
+ */
+@Slf4j
+public class OutputGuardAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    // 写入 adviseContext，标记本次回答被截断
+    public static final String OUTPUT_BLOCKED_KEY = "output_guard_blocked";
+
+    private static final String BLOCKED_FINISH_REASON = "CONTENT_FILTER";
+
+    private final List<OutputGuard> guards;
+    private final String replacement;
+
+    /**
+     * @param guards      输出校验规则
+     * @param replacement 截断时追加的提示
+     */
+    public OutputGuardAdvisor(List<OutputGuard> guards, String replacement) {
+        this.guards = List.copyOf(guards);
+        this.replacement = replacement;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // 在违禁词校验之后、语义缓存之前执行，缓存回放的回答同样经过校验
+        return -90;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+        AdvisedResponse response = chain.nextAroundCall(request);
+        String text = textOf(response);
+        if (text == null) {
+            return response;
+        }
+        Scan scan = new Scan();
+        StringBuilder scanned = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            scanned.append(text.charAt(i));
+            int matched = scan.next(text.charAt(i));
+            if (matched > 0) {
+                return blocked(response, scanned.substring(0, scanned.length() - matched));
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+        return Flux.defer(() -> {
+            Scan scan = new Scan();
+            return chain.nextAroundStream(request)
+                    .mapNotNull(scan::accept)
+                    .takeUntil(response -> scan.blocked)
+                    .concatWith(Mono.fromSupplier(scan::flush));
+        });
+    }
+
+    /**
+     * 一次回答的扫描状态
+     */
+    private final class Scan {
+
+        private final OutputGuard.Scanner[] scanners;
+        // 暂缓输出的末尾字符数，保证命中时命中内容还没有输出
+        private final int holdBack;
+        // 已扫描、尚未输出的字符
+        private final StringBuilder pending = new StringBuilder();
+        private AdvisedResponse last;
+        private boolean blocked;
+
+        private Scan() {
+            this.scanners = new OutputGuard.Scanner[guards.size()];
+            int maxLength = 0;
+            for (int i = 0; i < scanners.length; i++) {
+                scanners[i] = guards.get(i).newScanner();
+                maxLength = Math.max(maxLength, scanners[i].maxMatchLength());
+            }
+            this.holdBack = Math.max(0, maxLength - 1);
+        }
+
+        private int next(char c) {
+            int matched = 0;
+            for (OutputGuard.Scanner scanner : scanners) {
+                matched = Math.max(matched, scanner.next(c));
+            }
+            return matched;
+        }
+
+        /**
+         * 扫描一个片段，返回可以输出的片段，全部暂缓时返回 null
+         */
+        private AdvisedResponse accept(AdvisedResponse response) {
+            String text = textOf(response);
+            if (text == null) {
+                return response;
+            }
+            last = response;
+            for (int i = 0; i < text.length(); i++) {
+                pending.append(text.charAt(i));
+                int matched = next(text.charAt(i));
+                if (matched > 0) {
+                    blocked = true;
+                    return blocked(response, pending.substring(0, Math.max(0, pending.length() - matched)));
+                }
+            }
+            // 最后一个片段带结束原因，全部输出
+            boolean finished = isFinished(response.response().getResult());
+            int emit = finished ? pending.length() : pending.length() - holdBack;
+            if (emit <= 0 && !finished) {
+                return null;
+            }
+            String output = pending.substring(0, Math.max(0, emit));
+            pending.delete(0, Math.max(0, emit));
+            return withText(response, output);
+        }
+
+        /**
+         * 流结束时输出暂缓的字符
+         */
+        private AdvisedResponse flush() {
+            if (blocked || pending.isEmpty() || last == null) {
+                return null;
+            }
+            String output = pending.toString();
+            pending.setLength(0);
+            return withText(last, output);
+        }
+    }
+
+    private AdvisedResponse blocked(AdvisedResponse response, String safeText) {
+        log.warn("模型输出命中校验规则，已截断");
+        ChatResponse chatResponse = response.response();
+        AssistantMessage output = chatResponse.getResult().getOutput();
+        Generation generation = new Generation(new AssistantMessage(safeText + replacement, output.getMetadata()),
+                ChatGenerationMetadata.builder().finishReason(BLOCKED_FINISH_REASON).build());
+        Map<String, Object> context = new HashMap<>(response.adviseContext());
+        context.put(OUTPUT_BLOCKED_KEY, true);
+        return new AdvisedResponse(new ChatResponse(List.of(generation), chatResponse.getMetadata()), context);
+    }
+
+    private static AdvisedResponse withText(AdvisedResponse response, String text) {
+        ChatResponse chatResponse = response.response();
+        Generation result = chatResponse.getResult();
+        Generation generation = new Generation(new AssistantMessage(text, result.getOutput().getMetadata()),
+                result.getMetadata());
+        return new AdvisedResponse(new ChatResponse(List.of(generation), chatResponse.getMetadata()),
+                response.adviseContext());
+    }
+
+    /**
+     * DashScope 中间片段的结束原因为空串或 NULL
+     */
+    private static boolean isFinished(Generation generation) {
+        String finishReason = generation.getMetadata().getFinishReason();
+        return finishReason != null && !finishReason.isBlank() && !"NULL".equalsIgnoreCase(finishReason);
+    }
+
+    /**
+     * 只校验纯文本回答，工具调用等片段原样通过
+     */
+    private static String textOf(AdvisedResponse response) {
+        if (response == null || response.response() == null || response.response().getResult() == null) {
+            return null;
+        }
+        AssistantMessage output = response.response().getResult().getOutput();
+        if (output == null || output.hasToolCalls() || output.getText() == null) {
+            return null;
+        }
+        return output.getText();
+    }
+}
@@ -2,66 +2,140 @@ package com.lenyan.lenaiagent.advisor;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.advisor.api.*;
-import org.springframework.ai.chat.model.MessageAggregator;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
  * 违禁词校验 Advisor
- * 检查用户输入是否包含违禁词
+ * 检查用户输入是否包含违禁词；词表编译为 Aho–Corasick 自动机，
+ * 并定期检查词表文件的修改时间，变化后在后台重新加载，无需重启。
+ * 同时作为输出校验规则，供 OutputGuardAdvisor 检查模型输出
  */
 @Slf4j
-public class ProhibitedWordAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+public class ProhibitedWordAdvisor implements CallAroundAdvisor, StreamAroundAdvisor, OutputGuard {
 
     private static final String DEFAULT_PROHIBITED_WORDS_FILE = "prohibited-words.txt";
-    private final List<String> prohibitedWords;
+    private static final long DEFAULT_RELOAD_INTERVAL_MILLIS = 10_000;
+
+    private final Resource resource;
+    private final long reloadIntervalMillis;
+    private final AtomicLong nextCheckAt = new AtomicLong();
+    private volatile ProhibitedWordMatcher matcher;
+    private volatile long lastModified;
 
     /**
      * 创建默认违禁词Advisor，从默认文件读取违禁词列表
      */
     public ProhibitedWordAdvisor() {
-        this.prohibitedWords = loadProhibitedWordsFromFile(DEFAULT_PROHIBITED_WORDS_FILE);
-        log.info("初始化违禁词Advisor，违禁词数量: {}", prohibitedWords.size());
+        this(DEFAULT_PROHIBITED_WORDS_FILE);
     }
 
     /**
      * 创建违禁词Advisor，从指定文件读取违禁词列表
      */
     public ProhibitedWordAdvisor(String prohibitedWordsFile) {
-        this.prohibitedWords = loadProhibitedWordsFromFile(prohibitedWordsFile);
-        log.info("初始化违禁词Advisor，违禁词数量: {}", prohibitedWords.size());
+        this(prohibitedWordsFile, DEFAULT_RELOAD_INTERVAL_MILLIS);
     }
 
     /**
-     * 从文件加载违禁词列表
+     * 创建违禁词Advisor
+     *
+     * @param prohibitedWordsFile  词表位置，无前缀时从类路径读取，支持 file: 前缀指定外部文件；
+     *                             类路径词表打包进 jar 后无法检测修改，热加载需使用外部文件
+     * @param reloadIntervalMillis 检查词表修改的间隔，不大于 0 表示不热加载
      */
-    private List<String> loadProhibitedWordsFromFile(String filePath) {
-        try {
-            var resource = new ClassPathResource(filePath);
-            var reader = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8));
+    public ProhibitedWordAdvisor(String prohibitedWordsFile, long reloadIntervalMillis) {
+        this.resource = new DefaultResourceLoader().getResource(prohibitedWordsFile);
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.lastModified = lastModified();
+        List<String> words = loadProhibitedWordsFromFile();
+        this.matcher = new ProhibitedWordMatcher(words == null ? List.of() : words);
+        this.nextCheckAt.set(System.currentTimeMillis() + reloadIntervalMillis);
+        log.info("初始化违禁词Advisor，违禁词数量: {}", matcher.size());
+        if (reloadIntervalMillis > 0 && !resource.isFile()) {
+            log.warn("违禁词表 {} 不是独立文件，修改后不会热加载，需要热加载时请使用 file: 前缀指定外部文件",
+                    resource.getDescription());
+        }
+    }
 
+    /**
+     * 从文件加载违禁词列表，失败时返回 null
+     */
+    private List<String> loadProhibitedWordsFromFile() {
+        try (var reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
             List<String> words = reader.lines()
                     .filter(StringUtils::hasText)
                     .map(String::trim)
                     .collect(Collectors.toList());
 
-            log.info("从文件 {} 加载违禁词 {} 个", filePath, words.size());
+            log.info("从文件 {} 加载违禁词 {} 个", resource.getDescription(), words.size());
             return words;
         } catch (Exception e) {
-            log.error("加载违禁词文件 {} 失败", filePath, e);
-            return new ArrayList<>();
+            log.error("加载违禁词文件 {} 失败", resource.getDescription(), e);
+            return null;
         }
     }
 
+    private long lastModified() {
+        try {
+            return resource.lastModified();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 重新加载词表，加载失败时保留原词表
+     */
+    public void reload() {
+        long modified = lastModified();
+        List<String> words = loadProhibitedWordsFromFile();
+        if (words != null) {
+            matcher = new ProhibitedWordMatcher(words);
+            lastModified = modified;
+        }
+    }
+
+    /**
+     * 距上次检查超过间隔时检查词表修改时间，只有一个请求线程负责检查，重新加载在虚拟线程中进行
+     */
+    private void reloadIfModified() {
+        long now = System.currentTimeMillis();
+        long checkAt = nextCheckAt.get();
+        if (reloadIntervalMillis <= 0 || now < checkAt || !nextCheckAt.compareAndSet(checkAt, now + reloadIntervalMillis)) {
+            return;
+        }
+        if (lastModified() != lastModified) {
+            Thread.ofVirtual().name("prohibited-words-reload").start(this::reload);
+        }
+    }
+
+    /**
+     * 当前使用的违禁词匹配器
+     */
+    public ProhibitedWordMatcher getMatcher() {
+        reloadIfModified();
+        return matcher;
+    }
+
+    /**
+     * 扫描器绑定当前词表快照，最长词长与扫描状态来自同一个匹配器
+     */
+    @Override
+    public Scanner newScanner() {
+        return getMatcher().newScanner();
+    }
+
     @Override
     public String getName() {
         return this.getClass().getSimpleName();
@@ -77,27 +151,22 @@ public class ProhibitedWordAdvisor implements CallAroundAdvisor, StreamAroundAdv
      */
     private AdvisedRequest checkRequest(AdvisedRequest request) {
         String userText = request.userText();
-        if (containsProhibitedWord(userText)) {
-            log.warn("检测到违禁词在用户输入中: {}", userText);
+        String word = findProhibitedWord(userText);
+        if (word != null) {
+            log.warn("检测到违禁词 {} 在用户输入中: {}", word, userText);
             throw new ProhibitedWordException("用户输入包含违禁词");
         }
         return request;
     }
 
     /**
-     * 检查文本中是否包含违禁词
+     * 查找文本中的违禁词，未命中返回 null
      */
-    private boolean containsProhibitedWord(String text) {
+    private String findProhibitedWord(String text) {
         if (!StringUtils.hasText(text)) {
-            return false;
-        }
-
-        for (String word : prohibitedWords) {
-            if (text.toLowerCase().contains(word.toLowerCase())) {
-                return true;
-            }
+            return null;
         }
-        return false;
+        return getMatcher().find(text);
     }
 
     @Override
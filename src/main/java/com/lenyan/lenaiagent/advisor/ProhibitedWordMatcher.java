@@ -0,0 +1,185 @@
+package com.lenyan.lenaiagent.advisor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * 违禁词匹配自动机（Aho–Corasick）
+ * 词表构建一次，匹配时对输入只扫描一遍，与词表大小无关；
+ * 匹配不区分大小写和全角半角。状态可以跨多次输入保留，用于逐段扫描流式文本
+ */
+public class ProhibitedWordMatcher implements OutputGuard {
+
+    // 根节点状态，也是逐段扫描的初始状态
+    public static final int ROOT = 0;
+
+    private final List<String> words;
+    // 每个节点的出边，按字符升序，供二分查找
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    // 到达该节点时命中的词下标（含经失败链可达的后缀词），-1 表示未命中
+    private final int[] output;
+    private final int maxWordLength;
+
+    public ProhibitedWordMatcher(Collection<String> words) {
+        this.words = new ArrayList<>();
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        children.add(new HashMap<>());
+        terminal.add(-1);
+        for (String word : words) {
+            if (word == null || word.isBlank()) {
+                continue;
+            }
+            String trimmed = word.trim();
+            int node = ROOT;
+            for (int i = 0; i < trimmed.length(); i++) {
+                char c = fold(trimmed.charAt(i));
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new HashMap<>());
+                    terminal.add(-1);
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            if (terminal.get(node) < 0) {
+                terminal.set(node, this.words.size());
+                this.words.add(trimmed);
+            }
+        }
+
+        this.maxWordLength = this.words.stream().mapToInt(String::length).max().orElse(0);
+        int size = children.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        this.fail = new int[size];
+        this.output = new int[size];
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> sorted = new TreeMap<>(children.get(node));
+            keys[node] = new char[sorted.size()];
+            targets[node] = new int[sorted.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : sorted.entrySet()) {
+                keys[node][i] = edge.getKey();
+                targets[node][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // 按层遍历计算失败链，子节点的失败链依赖父节点
+        output[ROOT] = -1;
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            output[child] = terminal.get(child);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                int child = targets[node][i];
+                int state = fail[node];
+                int next;
+                while ((next = child(state, keys[node][i])) < 0 && state != ROOT) {
+                    state = fail[state];
+                }
+                fail[child] = Math.max(next, ROOT);
+                output[child] = terminal.get(child) >= 0 ? terminal.get(child) : output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 查找文本中第一个出现的违禁词
+     *
+     * @return 命中的违禁词（词表中的原始写法），未命中返回 null
+     */
+    public String find(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            if (output[state] >= 0) {
+                return words.get(output[state]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读入一个字符后的状态
+     */
+    public int next(int state, char c) {
+        c = fold(c);
+        while (true) {
+            int child = child(state, c);
+            if (child >= 0) {
+                return child;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 当前状态命中的违禁词，未命中返回 null
+     */
+    public String matchAt(int state) {
+        return output[state] >= 0 ? words.get(output[state]) : null;
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    @Override
+    public Scanner newScanner() {
+        return new Scanner() {
+            private int state = ROOT;
+
+            @Override
+            public int maxMatchLength() {
+                return maxWordLength;
+            }
+
+            @Override
+            public int next(char c) {
+                state = ProhibitedWordMatcher.this.next(state, c);
+                // 全角半角和大小写转换不改变长度，命中长度即词长
+                return output[state] >= 0 ? words.get(output[state]).length() : 0;
+            }
+        };
+    }
+
+    private int child(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+
+    /**
+     * 全角转半角并转小写
+     */
+    static char fold(char c) {
+        if (c >= '！' && c <= '～') {
+            c = (char) (c - 0xFEE0);
+        } else if (c == '　') {
+            c = ' ';
+        }
+        return Character.toLowerCase(c);
+    }
+}
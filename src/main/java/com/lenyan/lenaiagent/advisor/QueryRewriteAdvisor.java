@@ -0,0 +1,57 @@
+package com.lenyan.lenaiagent.advisor;
+
+import org.springframework.ai.chat.client.advisor.api.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * 查询重写 Advisor
+ * 在语义缓存之后、知识库检索之前改写用户输入：缓存按原始问题查找，命中时不再为重写调用模型；
+ * 对话记忆保存的仍是原始问题
+ */
+public class QueryRewriteAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    private final UnaryOperator<String> rewriter;
+
+    /**
+     * @param rewriter 用户输入 -> 用于检索和回答的查询，可原样返回
+     */
+    public QueryRewriteAdvisor(UnaryOperator<String> rewriter) {
+        this.rewriter = rewriter;
+    }
+
+    private AdvisedRequest before(AdvisedRequest advisedRequest) {
+        String rewritten = rewriter.apply(advisedRequest.userText());
+        if (rewritten == null || rewritten.equals(advisedRequest.userText())) {
+            return advisedRequest;
+        }
+        return AdvisedRequest.from(advisedRequest).userText(rewritten).build();
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        return chain.nextAroundCall(before(advisedRequest));
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        // 重写是阻塞调用，放到弹性线程池执行
+        return Mono.fromCallable(() -> before(advisedRequest))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(chain::nextAroundStream);
+    }
+
+    @Override
+    public int getOrder() {
+        // 在语义缓存（-10）之后、知识库检索（0）之前执行
+        return -5;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+}
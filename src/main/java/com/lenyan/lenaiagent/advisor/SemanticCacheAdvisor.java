@@ -0,0 +1,306 @@
+package com.lenyan.lenaiagent.advisor;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.MessageAggregator;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.embedding.EmbeddingModel;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语义响应缓存 Advisor
+ * 将用户输入向量化，在同一作用域（系统提示词、模板参数、Advisor 组合、模型）的历史问答中查找最相似的问题，
+ * 相似度达到阈值时直接返回缓存的回答，流式调用时按片段回放。
+ * 缓存按 TTL + LRU 淘汰；带工具、多模态或已有对话历史的请求不走缓存，避免回答依赖上下文。
+ * 对话记忆 Advisor 先于本 Advisor 执行并填入历史消息，因此带记忆的会话中只有第一个问题会查找和写入缓存；
+ * 需要在缓存之后执行的改写（如查询重写）应放在本 Advisor 之后，命中时即可跳过
+ */
+@Slf4j
+public class SemanticCacheAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    // 写入 adviseContext，标记本次回答来自缓存
+    public static final String CACHE_HIT_KEY = "semantic_cache_hit";
+
+    // 流式回放时每个片段的字符数
+    private static final int REPLAY_CHUNK_SIZE = 16;
+
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 访问顺序的 LinkedHashMap，头部为最久未命中的问答
+    private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    /**
+     * 缓存的问答，向量已归一化
+     */
+    private record Entry(String scope, String question, float[] vector, String answer, long createdAt) {
+    }
+
+    public SemanticCacheAdvisor(EmbeddingModel embeddingModel, double similarityThreshold, int maxEntries,
+                                long ttlMillis, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.hitCounter = Counter.builder("chat.response.cache.hit")
+                .description("语义响应缓存命中次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("chat.response.cache.miss")
+                .description("语义响应缓存未命中次数")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("chat.response.cache.eviction")
+                .description("语义响应缓存因过期或容量淘汰的条目数")
+                .register(meterRegistry);
+        Gauge.builder("chat.response.cache.size", this, SemanticCacheAdvisor::size)
+                .description("已缓存的问答数")
+                .register(meterRegistry);
+        log.info("初始化语义响应缓存，相似度阈值: {}，容量: {}，TTL: {}ms", similarityThreshold, maxEntries, ttlMillis);
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // 在对话记忆和违禁词校验之后、知识库检索和日志之前执行
+        return -10;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+        if (!cacheable(request)) {
+            return chain.nextAroundCall(request);
+        }
+        float[] vector = embed(request.userText());
+        if (vector == null) {
+            return chain.nextAroundCall(request);
+        }
+        String scope = scope(request);
+        Entry hit = lookup(scope, vector);
+        if (hit != null) {
+            return new AdvisedResponse(toChatResponse(hit.answer()), hitContext(request));
+        }
+        AdvisedResponse response = chain.nextAroundCall(request);
+        store(scope, request.userText(), vector, response);
+        return response;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+        if (!cacheable(request)) {
+            return chain.nextAroundStream(request);
+        }
+        // 向量化是阻塞调用，放到弹性线程池执行
+        return Mono.fromCallable(() -> new float[][]{embed(request.userText())})
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(holder -> {
+                    float[] vector = holder[0];
+                    if (vector == null) {
+                        return chain.nextAroundStream(request);
+                    }
+                    String scope = scope(request);
+                    Entry hit = lookup(scope, vector);
+                    if (hit != null) {
+                        return replay(hit.answer(), hitContext(request));
+                    }
+                    return new MessageAggregator().aggregateAdvisedResponse(chain.nextAroundStream(request),
+                            aggregated -> store(scope, request.userText(), vector, aggregated));
+                });
+    }
+
+    /**
+     * 带工具、多模态或对话历史的请求，回答不只由用户输入决定，不走缓存
+     */
+    private boolean cacheable(AdvisedRequest request) {
+        return StrUtil.isNotBlank(request.userText())
+                && request.media().isEmpty()
+                && request.functionNames().isEmpty()
+                && request.functionCallbacks().isEmpty()
+                && request.messages().isEmpty();
+    }
+
+    /**
+     * 作用域：影响回答的请求配置，不含会话 ID 等每次请求都不同的 Advisor 参数
+     */
+    private static String scope(AdvisedRequest request) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(request.systemText()).append('\u0000')
+                .append(new TreeMap<>(request.systemParams())).append('\u0000')
+                .append(new TreeMap<>(request.userParams())).append('\u0000');
+        for (Advisor advisor : request.advisors()) {
+            builder.append(advisor.getName()).append(',');
+        }
+        ChatOptions options = request.chatOptions();
+        if (options != null) {
+            builder.append('\u0000').append(options.getModel()).append(':').append(options.getTemperature());
+        }
+        return DigestUtil.sha256Hex(builder.toString());
+    }
+
+    private float[] embed(String text) {
+        try {
+            return normalize(embeddingModel.embed(text));
+        } catch (Exception e) {
+            log.warn("语义缓存向量化失败，跳过缓存", e);
+            return null;
+        }
+    }
+
+    private Entry lookup(String scope, float[] vector) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Long bestId = null;
+            Entry best = null;
+            double bestScore = similarityThreshold;
+            // 容量有限，逐条比较即可；顺带清理过期条目
+            Iterator<Map.Entry<Long, Entry>> iterator = cache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Entry> item = iterator.next();
+                Entry entry = item.getValue();
+                if (now - entry.createdAt() > ttlMillis) {
+                    iterator.remove();
+                    evictionCounter.increment();
+                    continue;
+                }
+                if (!entry.scope().equals(scope)) {
+                    continue;
+                }
+                double score = dot(vector, entry.vector());
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestId = item.getKey();
+                    best = entry;
+                }
+            }
+            if (best == null) {
+                missCounter.increment();
+                return null;
+            }
+            // 刷新 LRU 顺序
+            cache.get(bestId);
+            hitCounter.increment();
+            log.debug("语义缓存命中，相似度 {}，原问题: {}", bestScore, best.question());
+            return best;
+        }
+    }
+
+    private void store(String scope, String question, float[] vector, AdvisedResponse response) {
+        String answer = answerOf(response);
+        if (StrUtil.isBlank(answer)) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(sequence.incrementAndGet(), new Entry(scope, question, vector, answer, System.currentTimeMillis()));
+            Iterator<Long> iterator = cache.keySet().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * 只缓存正常结束、没有工具调用的文本回答
+     */
+    private static String answerOf(AdvisedResponse response) {
+        if (response == null || response.response() == null || response.response().getResult() == null) {
+            return null;
+        }
+        Generation generation = response.response().getResult();
+        AssistantMessage output = generation.getOutput();
+        if (output == null || output.hasToolCalls()) {
+            return null;
+        }
+        String finishReason = generation.getMetadata().getFinishReason();
+        if (finishReason != null && !"STOP".equalsIgnoreCase(finishReason)) {
+            return null;
+        }
+        return output.getText();
+    }
+
+    private static Flux<AdvisedResponse> replay(String answer, Map<String, Object> context) {
+        List<AdvisedResponse> chunks = new ArrayList<>();
+        int[] codePoints = answer.codePoints().toArray();
+        for (int start = 0; start < codePoints.length; start += REPLAY_CHUNK_SIZE) {
+            int end = Math.min(start + REPLAY_CHUNK_SIZE, codePoints.length);
+            String text = new String(codePoints, start, end - start);
+            ChatGenerationMetadata metadata = end == codePoints.length
+                    ? ChatGenerationMetadata.builder().finishReason("STOP").build()
+                    : ChatGenerationMetadata.NULL;
+            ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(text), metadata)));
+            chunks.add(new AdvisedResponse(response, context));
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    private static ChatResponse toChatResponse(String answer) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(answer),
+                ChatGenerationMetadata.builder().finishReason("STOP").build())));
+    }
+
+    private static Map<String, Object> hitContext(AdvisedRequest request) {
+        Map<String, Object> context = new HashMap<>(request.adviseContext());
+        context.put(CACHE_HIT_KEY, true);
+        return context;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length && norm > 0; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.lenyan.lenaiagent.agent;
+
+/**
+ * 代理运行被取消（如流式输出时客户端断开），步骤循环应立即停止而不是记录为处理错误
+ */
+public class AgentCancelledException extends RuntimeException {
+
+    public AgentCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
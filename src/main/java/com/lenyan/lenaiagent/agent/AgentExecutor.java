@@ -0,0 +1,119 @@
+package com.lenyan.lenaiagent.agent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 代理执行器
+ * 基于虚拟线程执行会阻塞在 LLM / 工具 HTTP 调用上的任务，并通过信号量限制同时执行的任务数
+ * 超出上限的任务在各自的虚拟线程上排队等待，不占用平台线程
+ */
+@Slf4j
+@Component
+public class AgentExecutor {
+
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService executorService;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer waitTimer;
+
+    public AgentExecutor(@Value("${agent.executor.max-concurrency:256}") int maxConcurrency,
+                         MeterRegistry meterRegistry) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("最大并发数必须大于0");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executorService = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("agent-vt-", 0).factory());
+
+        Gauge.builder("agent.executor.queued", queued, AtomicInteger::get)
+                .description("等待执行的代理任务数")
+                .register(meterRegistry);
+        Gauge.builder("agent.executor.active", active, AtomicInteger::get)
+                .description("正在执行的代理任务数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("agent.executor.wait")
+                .description("代理任务排队等待时间")
+                .register(meterRegistry);
+        log.info("初始化虚拟线程代理执行器，最大并发数: {}", maxConcurrency);
+    }
+
+    /**
+     * 异步执行任务
+     *
+     * @param task 可能阻塞的任务
+     * @return 任务完成时结束的 Future
+     */
+    public CompletableFuture<Void> execute(Runnable task) {
+        queued.incrementAndGet();
+        long enqueuedAt = System.nanoTime();
+        return CompletableFuture.runAsync(() -> {
+            boolean acquired = false;
+            try {
+                permits.acquire();
+                acquired = true;
+                queued.decrementAndGet();
+                waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                active.incrementAndGet();
+                task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("代理任务等待执行时被中断", e);
+            } finally {
+                if (acquired) {
+                    active.decrementAndGet();
+                    permits.release();
+                } else {
+                    queued.decrementAndGet();
+                }
+            }
+        }, executorService);
+    }
+
+    /**
+     * 排队中的任务数
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * 执行中的任务数
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+        }
+        log.info("代理执行器已关闭");
+    }
+}
@@ -0,0 +1,95 @@
+package com.lenyan.lenaiagent.agent;
+
+import com.lenyan.lenaiagent.agent.model.AgentSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理会话池
+ * 限制同时运行的代理数量，并复用已结束的会话对象
+ */
+@Slf4j
+@Component
+public class AgentSessionPool {
+
+    private final int maxActive;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<AgentSession> idleSessions = new ConcurrentLinkedDeque<>();
+
+    public AgentSessionPool(@Value("${agent.session.max-active:32}") int maxActive,
+                            @Value("${agent.session.acquire-timeout-ms:5000}") long acquireTimeoutMillis) {
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("会话池容量必须大于0");
+        }
+        this.maxActive = maxActive;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxActive, true);
+        log.info("初始化代理会话池，最大并发会话数: {}", maxActive);
+    }
+
+    /**
+     * 借出会话，超过并发上限时最多等待 acquireTimeoutMillis
+     *
+     * @param nextStepPrompt 本次运行的下一步提示词
+     * @return 已重置的会话
+     */
+    public AgentSession acquire(String nextStepPrompt) {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("智能体繁忙，当前运行数已达上限 (" + maxActive + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待智能体会话被中断", e);
+        }
+        AgentSession session = idleSessions.pollFirst();
+        if (session == null) {
+            session = new AgentSession();
+        }
+        session.setNextStepPrompt(nextStepPrompt);
+        session.setInUse(true);
+        return session;
+    }
+
+    /**
+     * 归还会话，重复归还会被忽略
+     */
+    public void release(AgentSession session) {
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            if (!session.isInUse()) {
+                return;
+            }
+            session.setInUse(false);
+        }
+        session.reset();
+        idleSessions.offerFirst(session);
+        permits.release();
+    }
+
+    /**
+     * 正在运行的会话数
+     */
+    public int getActiveCount() {
+        return maxActive - permits.availablePermits();
+    }
+
+    /**
+     * 池中空闲的会话数
+     */
+    public int getIdleCount() {
+        return idleSessions.size();
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+}
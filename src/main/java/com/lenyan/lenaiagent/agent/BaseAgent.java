@@ -1,7 +1,9 @@
 package com.lenyan.lenaiagent.agent;
 
 import cn.hutool.core.util.StrUtil;
+import com.lenyan.lenaiagent.agent.model.AgentSession;
 import com.lenyan.lenaiagent.agent.model.AgentState;
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -13,74 +15,89 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 代理基类，管理状态和执行流程
+ * 代理只持有不可变配置，可作为单例共享；每次运行的状态保存在从会话池借出的 AgentSession 中
  */
 @Data
 @Slf4j
 public abstract class BaseAgent {
 
+    /**
+     * 流式运行时思考增量的 SSE 事件名
+     */
+    public static final String THINKING_EVENT = "thinking";
+
     // 核心属性
     private String name;
     private String systemPrompt;
     private String nextStepPrompt;
-    
-    // 状态与执行控制
-    private AgentState state = AgentState.IDLE;
-    private int currentStep = 0;
+
+    // 执行控制
     private int maxSteps = 10;
-    
+
     // 循环检测
     private int duplicateThreshold = 2;
-    
-    // LLM与记忆
+
+    // LLM
     private ChatClient chatClient;
-    private List<Message> messageList = new ArrayList<>();
+
+    // 上下文压缩，为空时不压缩
+    private ConversationCompactor conversationCompactor;
+
+    // 会话池，由子类注入共享实例
+    private AgentSessionPool sessionPool;
+
+    // 执行器（虚拟线程），由子类注入共享实例
+    private AgentExecutor agentExecutor;
 
     /**
      * 运行代理
      */
     public String run(String userPrompt) {
         // 校验
-        if (state != AgentState.IDLE || StrUtil.isBlank(userPrompt)) {
-            throw new RuntimeException("无法执行: " + (state != AgentState.IDLE ? "状态错误" : "空提示词"));
+        if (StrUtil.isBlank(userPrompt)) {
+            throw new RuntimeException("无法执行: 空提示词");
         }
-        
+
         // 执行
-        state = AgentState.RUNNING;
-        messageList.add(new UserMessage(userPrompt));
+        AgentSession session = sessionPool.acquire(nextStepPrompt);
+        session.setState(AgentState.RUNNING);
+        session.getMessageList().add(new UserMessage(userPrompt));
         List<String> results = new ArrayList<>();
-        
+
         try {
             // 步骤循环
-            for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
-                currentStep = i + 1;
-                log.info("执行步骤 {}/{}", currentStep, maxSteps);
-                String stepResult = step();
-                results.add("Step " + currentStep + ": " + stepResult);
-                
+            for (int i = 0; i < maxSteps && session.getState() != AgentState.FINISHED; i++) {
+                session.setCurrentStep(i + 1);
+                log.info("执行步骤 {}/{}", session.getCurrentStep(), maxSteps);
+                String stepResult = step(session);
+                results.add("Step " + session.getCurrentStep() + ": " + stepResult);
+
                 // 检查是否陷入循环
-                if (isStuck()) {
-                    handleStuckState();
+                if (isStuck(session)) {
+                    handleStuckState(session);
                     results.add("检测到可能的循环，已添加额外提示以避免重复");
                 }
+                compactMessages(session);
             }
-            
+
             // 检查终止条件
-            if (currentStep >= maxSteps) {
-                state = AgentState.FINISHED;
+            if (session.getCurrentStep() >= maxSteps) {
+                session.setState(AgentState.FINISHED);
                 results.add("终止: 达到最大步骤 (" + maxSteps + ")");
             }
-            
+
             return String.join("\n", results);
         } catch (Exception e) {
-            state = AgentState.ERROR;
+            session.setState(AgentState.ERROR);
             log.error("执行错误", e);
             return "执行错误: " + e.getMessage();
         } finally {
-            cleanup();
+            cleanup(session);
+            sessionPool.release(session);
         }
     }
 
@@ -89,45 +106,62 @@ public abstract class BaseAgent {
      */
     public SseEmitter runStream(String userPrompt) {
         SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
-        
-        CompletableFuture.runAsync(() -> {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        agentExecutor.execute(() -> {
+            AgentSession session = null;
             try {
                 // 校验
-                if (state != AgentState.IDLE || StrUtil.isBlank(userPrompt)) {
-                    String error = "错误: " + (state != AgentState.IDLE ? "无法从状态运行: " + state : "空提示词");
-                    emitter.send(error);
+                if (StrUtil.isBlank(userPrompt)) {
+                    emitter.send("错误: 空提示词");
                     emitter.complete();
                     return;
                 }
-                
+
                 // 执行
-                state = AgentState.RUNNING;
-                messageList.add(new UserMessage(userPrompt));
-                
+                session = sessionPool.acquire(nextStepPrompt);
+                session.setState(AgentState.RUNNING);
+                session.getMessageList().add(new UserMessage(userPrompt));
+                // 思考阶段的文本增量以 thinking 事件实时推送，不影响按步骤解析的默认消息；推送失败说明客户端已断开，停止运行
+                session.setThinkingListener(delta -> {
+                    try {
+                        emitter.send(SseEmitter.event().name(THINKING_EVENT).data(delta));
+                    } catch (IOException e) {
+                        cancelled.set(true);
+                        throw new AgentCancelledException("客户端已断开", e);
+                    }
+                });
+
                 // 步骤循环
-                for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
-                    currentStep = i + 1;
-                    log.info("执行步骤 {}/{}", currentStep, maxSteps);
-                    String stepResult = step();
-                    String result = "Step " + currentStep + ": " + stepResult;
+                for (int i = 0; i < maxSteps && session.getState() != AgentState.FINISHED && !cancelled.get(); i++) {
+                    session.setCurrentStep(i + 1);
+                    log.info("执行步骤 {}/{}", session.getCurrentStep(), maxSteps);
+                    String stepResult = step(session);
+                    String result = "Step " + session.getCurrentStep() + ": " + stepResult;
                     emitter.send(result);
-                    
+
                     // 检查是否陷入循环
-                    if (isStuck()) {
-                        handleStuckState();
+                    if (isStuck(session)) {
+                        handleStuckState(session);
                         emitter.send("检测到可能的循环，已添加额外提示以避免重复");
                     }
+                    compactMessages(session);
                 }
-                
+
                 // 检查终止条件
-                if (currentStep >= maxSteps) {
-                    state = AgentState.FINISHED;
+                if (session.getCurrentStep() >= maxSteps) {
+                    session.setState(AgentState.FINISHED);
                     emitter.send("执行结束: 达到最大步骤 (" + maxSteps + ")");
                 }
-                
+
                 emitter.complete();
+            } catch (AgentCancelledException e) {
+                session.setState(AgentState.FINISHED);
+                log.info("客户端已断开，停止运行: {}", e.getMessage());
             } catch (Exception e) {
-                state = AgentState.ERROR;
+                if (session != null) {
+                    session.setState(AgentState.ERROR);
+                }
                 log.error("执行错误", e);
                 try {
                     emitter.send("执行错误: " + e.getMessage());
@@ -136,62 +170,74 @@ public abstract class BaseAgent {
                     emitter.completeWithError(ex);
                 }
             } finally {
-                cleanup();
+                if (session != null) {
+                    cleanup(session);
+                    sessionPool.release(session);
+                }
             }
         });
 
-        // 事件处理
+        // 事件处理，会话由执行线程负责归还，这里只通知其停止
         emitter.onTimeout(() -> {
-            state = AgentState.ERROR;
-            cleanup();
+            cancelled.set(true);
             log.warn("SSE连接超时");
         });
-        
+
+        emitter.onError(e -> {
+            cancelled.set(true);
+            log.warn("SSE连接异常: {}", e.getMessage());
+        });
+
         emitter.onCompletion(() -> {
-            if (state == AgentState.RUNNING) {
-                state = AgentState.FINISHED;
-            }
-            cleanup();
+            cancelled.set(true);
             log.info("SSE连接完成");
         });
-        
+
         return emitter;
     }
 
     /**
      * 定义单个执行步骤
      */
-    public abstract String step();
+    public abstract String step(AgentSession session);
 
     /**
      * 清理资源
      */
-    protected void cleanup() {
-        // 重置WebSearchTool的搜索次数计数器
-        com.lenyan.lenaiagent.tools.WebSearchTool.resetSearchCallCount();
-        log.debug("清理资源：已重置WebSearchTool的搜索次数计数器");
-        // 子类可重写
+    protected void cleanup(AgentSession session) {
+        // 子类可重写，会话级状态（含工具调用计数）由会话池归还时重置
+    }
+
+    /**
+     * 消息列表超出 token 预算时，把较早的步骤折叠进摘要
+     */
+    protected void compactMessages(AgentSession session) {
+        if (conversationCompactor != null && session.getState() != AgentState.FINISHED) {
+            session.replaceMessages(conversationCompactor.compact(session.getMessageList()));
+        }
     }
-    
+
     /**
      * 处理陷入循环的状态
      */
-    protected void handleStuckState() {
+    protected void handleStuckState(AgentSession session) {
         String stuckPrompt = "观察到重复响应。请考虑新的策略，避免重复已尝试过的无效路径。";
-        this.nextStepPrompt = stuckPrompt + "\n" + (this.nextStepPrompt != null ? this.nextStepPrompt : "");
+        String current = session.getNextStepPrompt();
+        session.setNextStepPrompt(stuckPrompt + "\n" + (current != null ? current : ""));
         log.warn("检测到智能体陷入循环状态。添加额外提示: {}", stuckPrompt);
     }
-    
+
     /**
      * 检查代理是否陷入循环
-     * 
+     *
      * @return 是否陷入循环
      */
-    protected boolean isStuck() {
+    protected boolean isStuck(AgentSession session) {
+        List<Message> messageList = session.getMessageList();
         if (messageList.size() < 2) {
             return false;
         }
-        
+
         // 获取最后一条助手消息
         AssistantMessage lastAssistantMessage = null;
         for (int i = messageList.size() - 1; i >= 0; i--) {
@@ -200,30 +246,30 @@ public abstract class BaseAgent {
                 break;
             }
         }
-        
-        if (lastAssistantMessage == null || lastAssistantMessage.getText() == null 
+
+        if (lastAssistantMessage == null || lastAssistantMessage.getText() == null
                 || lastAssistantMessage.getText().isEmpty()) {
             return false;
         }
-        
+
         // 计算重复内容出现次数
         int duplicateCount = 0;
         String lastContent = lastAssistantMessage.getText();
-        
+
         for (int i = messageList.size() - 2; i >= 0; i--) {
             Message msg = messageList.get(i);
             if (msg instanceof AssistantMessage) {
                 AssistantMessage assistantMsg = (AssistantMessage) msg;
                 if (lastContent.equals(assistantMsg.getText())) {
                     duplicateCount++;
-                    
+
                     if (duplicateCount >= this.duplicateThreshold) {
                         return true;
                     }
                 }
             }
         }
-        
+
         return false;
     }
 }
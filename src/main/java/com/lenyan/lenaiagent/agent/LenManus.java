@@ -1,9 +1,12 @@
 package com.lenyan.lenaiagent.agent;
 
-import com.lenyan.lenaiagent.advisor.MyLoggerAdvisor;
+import com.lenyan.lenaiagent.advisor.ObservabilityAdvisor;
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -12,8 +15,19 @@ import org.springframework.stereotype.Component;
 @Component
 public class LenManus extends ToolCallAgent {
 
-    public LenManus(ToolCallback[] allTools, ChatModel dashscopeChatModel) {
+    public LenManus(ToolCallback[] allTools, ChatModel dashscopeChatModel,
+                    AgentSessionPool agentSessionPool, AgentExecutor agentExecutor,
+                    @Value("${agent.tool.timeout-ms:60000}") long toolTimeoutMillis,
+                    ObservabilityAdvisor observabilityAdvisor,
+                    @Qualifier("agentConversationCompactor") ConversationCompactor conversationCompactor,
+                    PromptAssembler promptAssembler) {
         super(allTools);
+        // 单例共享，每次运行从会话池借出独立会话
+        this.setSessionPool(agentSessionPool);
+        this.setAgentExecutor(agentExecutor);
+        this.setToolTimeoutMillis(toolTimeoutMillis);
+        this.setConversationCompactor(conversationCompactor);
+        this.setPromptAssembler(promptAssembler);
         
         // 基础配置
         this.setName("lenManus");
@@ -35,7 +49,7 @@ public class LenManus extends ToolCallAgent {
         // 初始化对话客户端
         this.setChatClient(
             ChatClient.builder(dashscopeChatModel)
-                .defaultAdvisors(new MyLoggerAdvisor())
+                .defaultAdvisors(observabilityAdvisor, observabilityAdvisor.modelProbe())
                 .build()
         );
     }
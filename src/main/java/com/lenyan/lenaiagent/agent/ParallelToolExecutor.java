@@ -0,0 +1,213 @@
+package com.lenyan.lenaiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 并行工具执行器
+ * 同一轮返回的多个工具调用相互独立，并发执行后按原始顺序组装 ToolResponseMessage，
+ * 单步耗时从各工具耗时之和降为最慢的那一个；流式思考时可逐个提交已拼接完成的调用，与模型输出重叠执行
+ */
+@Slf4j
+public class ParallelToolExecutor {
+
+    private final Map<String, ToolCallback> toolCallbacks = new HashMap<>();
+    // 工具名 -> 单次运行内允许的调用次数
+    private final Map<String, Integer> callLimits;
+    private final ToolExecutionExceptionProcessor exceptionProcessor =
+            DefaultToolExecutionExceptionProcessor.builder().build();
+    // 工具调用数量受单轮工具调用数限制，不占用 AgentExecutor 的并发许可，避免代理任务与工具任务互相等待
+    private final ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-tool-", 0).factory());
+
+    public ParallelToolExecutor(ToolCallback[] availableTools) {
+        this(availableTools, Map.of());
+    }
+
+    /**
+     * @param callLimits 工具名 -> 单次运行内允许的调用次数，未列出的工具不限制
+     */
+    public ParallelToolExecutor(ToolCallback[] availableTools, Map<String, Integer> callLimits) {
+        this.callLimits = Map.copyOf(callLimits);
+        for (ToolCallback toolCallback : availableTools) {
+            toolCallbacks.put(toolCallback.getToolDefinition().name(), toolCallback);
+        }
+    }
+
+    /**
+     * 并行执行助手消息中的所有工具调用
+     *
+     * @param history          执行前的对话上下文
+     * @param assistantMessage 包含工具调用的助手消息
+     * @param timeoutMillis    单个工具的超时时间
+     * @return 执行结果，对话上下文末尾依次为助手消息和工具响应消息
+     */
+    public ToolExecutionResult execute(List<Message> history, AssistantMessage assistantMessage, long timeoutMillis) {
+        return execute(history, assistantMessage, timeoutMillis, new HashMap<>());
+    }
+
+    /**
+     * 并行执行助手消息中的所有工具调用，并按运行累计调用次数
+     *
+     * @param callCounts 本次运行各工具已调用的次数，在扇出前由调用线程更新；超出限制的调用不执行，直接返回提示
+     */
+    public ToolExecutionResult execute(List<Message> history, AssistantMessage assistantMessage, long timeoutMillis,
+                                       Map<String, Integer> callCounts) {
+        // 先校验全部工具名，任一未知时不启动任何调用
+        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+            resolve(toolCall);
+        }
+        return begin(callCounts).finish(history, assistantMessage, timeoutMillis);
+    }
+
+    /**
+     * 开始一批工具调用，流式思考时每拼接完一个调用即可提交，无需等待整个响应结束
+     *
+     * @param callCounts 本次运行各工具已调用的次数
+     */
+    public ToolCallBatch begin(Map<String, Integer> callCounts) {
+        return new ToolCallBatch(callCounts);
+    }
+
+    private ToolCallback resolve(AssistantMessage.ToolCall toolCall) {
+        ToolCallback toolCallback = toolCallbacks.get(toolCall.name());
+        if (toolCallback == null) {
+            throw new IllegalStateException("未找到工具: " + toolCall.name());
+        }
+        return toolCallback;
+    }
+
+    /**
+     * 一批已提交的工具调用，按提交顺序与助手消息中的调用一一对应
+     */
+    public class ToolCallBatch {
+
+        private final Map<String, Integer> callCounts;
+        private final List<Future<String>> futures = new ArrayList<>();
+        private final List<Long> startNanos = new ArrayList<>();
+
+        private ToolCallBatch(Map<String, Integer> callCounts) {
+            this.callCounts = callCounts;
+        }
+
+        /**
+         * 立即开始执行一个工具调用；工具未知时取消本批已开始的调用
+         */
+        public synchronized void submit(AssistantMessage.ToolCall toolCall) {
+            ToolCallback toolCallback;
+            try {
+                toolCallback = resolve(toolCall);
+            } catch (IllegalStateException e) {
+                cancel();
+                throw e;
+            }
+            startNanos.add(System.nanoTime());
+            Integer limit = callLimits.get(toolCall.name());
+            if (limit != null && callCounts.merge(toolCall.name(), 1, Integer::sum) > limit) {
+                futures.add(CompletableFuture.completedFuture(
+                        "工具 " + toolCall.name() + " 调用次数已达到限制（" + limit + "次），无法继续使用"));
+                return;
+            }
+            futures.add(executorService.submit(() -> callTool(toolCallback, toolCall)));
+        }
+
+        /**
+         * 提交剩余的调用并等待全部结果，每个调用从开始执行起计算超时，超时的调用被中断
+         */
+        public ToolExecutionResult finish(List<Message> history, AssistantMessage assistantMessage, long timeoutMillis) {
+            List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+            boolean returnDirect = !toolCalls.isEmpty();
+            for (int i = 0; i < toolCalls.size(); i++) {
+                if (i >= futures.size()) {
+                    submit(toolCalls.get(i));
+                }
+                returnDirect = returnDirect && resolve(toolCalls.get(i)).getToolMetadata().returnDirect();
+            }
+
+            // 按原始顺序汇总
+            List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(toolCalls.size());
+            for (int i = 0; i < toolCalls.size(); i++) {
+                AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+                long deadline = startNanos.get(i) + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                        await(i, toolCall, deadline, timeoutMillis)));
+            }
+
+            List<Message> conversationHistory = new ArrayList<>(history.size() + 2);
+            conversationHistory.addAll(history);
+            conversationHistory.add(assistantMessage);
+            conversationHistory.add(new ToolResponseMessage(toolResponses, Map.of()));
+            return ToolExecutionResult.builder()
+                    .conversationHistory(conversationHistory)
+                    .returnDirect(returnDirect)
+                    .build();
+        }
+
+        /**
+         * 中断本批所有仍在运行的调用
+         */
+        public synchronized void cancel() {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        private String await(int index, AssistantMessage.ToolCall toolCall, long deadline, long timeoutMillis) {
+            Future<String> future = futures.get(index);
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("工具 {} 执行超时 ({}ms)，已中断", toolCall.name(), timeoutMillis);
+                return "Error: 工具 " + toolCall.name() + " 执行超时 (" + timeoutMillis + "ms)";
+            } catch (ExecutionException e) {
+                return "Error executing tool " + toolCall.name() + ": " + e.getCause().getMessage();
+            } catch (CancellationException e) {
+                return "Error: 工具 " + toolCall.name() + " 已取消";
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待工具执行时被中断", e);
+            }
+        }
+    }
+
+    /**
+     * 关闭执行器并中断仍在运行的工具调用
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private String callTool(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall) {
+        long start = System.currentTimeMillis();
+        try {
+            return toolCallback.call(toolCall.arguments());
+        } catch (ToolExecutionException e) {
+            return exceptionProcessor.process(e);
+        } catch (Exception e) {
+            log.error("工具 {} 执行失败", toolCall.name(), e);
+            return "Error executing tool " + toolCall.name() + ": " + e.getMessage();
+        } finally {
+            log.debug("工具 {} 执行耗时 {}ms", toolCall.name(), System.currentTimeMillis() - start);
+        }
+    }
+}
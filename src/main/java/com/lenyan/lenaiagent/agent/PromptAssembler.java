@@ -0,0 +1,121 @@
+package com.lenyan.lenaiagent.agent;
+
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
+import com.lenyan.lenaiagent.chatmemory.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按 token 预算组装思考阶段的提示词
+ * 会话中的消息保持原样，只在发给模型前处理：重复的下一步提示词只保留最近一次，重复的工具结果替换为说明，
+ * 较早的工具结果截断到 toolResponseTokens，最近一次工具结果截断到 latestToolResponseTokens；
+ * 仍超出预算时丢弃较早的步骤。任务、摘要和系统提示词始终保留，提示词大小不随步骤数增长
+ */
+@Slf4j
+@Component
+public class PromptAssembler {
+
+    static final String DUPLICATE_NOTICE = "（与之后的工具结果相同，已省略）";
+
+    private final int tokenBudget;
+    private final int toolResponseTokens;
+    private final int latestToolResponseTokens;
+
+    /**
+     * @param tokenBudget              提示词总 token 数上限，包含系统提示词
+     * @param toolResponseTokens       较早的工具结果保留的 token 数
+     * @param latestToolResponseTokens 最近一次工具结果保留的 token 数
+     */
+    public PromptAssembler(@Value("${agent.prompt.token-budget:16000}") int tokenBudget,
+                           @Value("${agent.prompt.tool-response-tokens:500}") int toolResponseTokens,
+                           @Value("${agent.prompt.latest-tool-response-tokens:8000}") int latestToolResponseTokens) {
+        if (toolResponseTokens <= 0 || latestToolResponseTokens >= tokenBudget) {
+            throw new IllegalArgumentException("工具结果保留的 token 数必须大于0且小于预算");
+        }
+        this.tokenBudget = tokenBudget;
+        this.toolResponseTokens = toolResponseTokens;
+        this.latestToolResponseTokens = latestToolResponseTokens;
+        log.info("初始化提示词组装，预算: {} tokens", tokenBudget);
+    }
+
+    /**
+     * 组装发给模型的消息列表
+     *
+     * @param messages     会话中的完整消息，首条为任务
+     * @param systemPrompt 系统提示词，计入预算
+     */
+    public List<Message> assemble(List<Message> messages, String systemPrompt) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        int head = messages.size() > 1 && ConversationCompactor.isSummary(messages.get(1)) ? 2 : 1;
+
+        // 从新到旧处理，重复内容保留最近一次
+        List<Message> assembled = new ArrayList<>(messages.size());
+        Set<String> seenPrompts = new HashSet<>();
+        Set<String> seenResults = new HashSet<>();
+        boolean latestToolResponse = true;
+        for (int i = messages.size() - 1; i >= head; i--) {
+            Message message = messages.get(i);
+            if (message instanceof UserMessage && !seenPrompts.add(message.getText())) {
+                continue;
+            }
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                message = shrink(toolResponseMessage, seenResults,
+                        latestToolResponse ? latestToolResponseTokens : toolResponseTokens);
+                latestToolResponse = false;
+            }
+            assembled.add(message);
+        }
+        for (int i = head - 1; i >= 0; i--) {
+            assembled.add(messages.get(i));
+        }
+        Collections.reverse(assembled);
+
+        // 仍超出预算时从最早的步骤开始丢弃，最近一轮始终保留
+        int budget = tokenBudget - TokenCounter.count(systemPrompt) - TokenCounter.count(assembled.subList(0, head));
+        int keepFrom = ConversationCompactor.keepFrom(assembled, head, Math.max(0, budget));
+        if (keepFrom >= assembled.size()) {
+            keepFrom = ConversationCompactor.lastTurnStart(assembled, head);
+        }
+        if (keepFrom > head) {
+            log.debug("提示词超出预算，丢弃 {} 条较早的消息", keepFrom - head);
+            assembled.subList(head, keepFrom).clear();
+        }
+        return assembled;
+    }
+
+    /**
+     * 截断工具结果，与之后结果相同的替换为说明；没有变化时返回原消息
+     */
+    private static ToolResponseMessage shrink(ToolResponseMessage message, Set<String> seenResults, int maxTokens) {
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(message.getResponses().size());
+        boolean changed = false;
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            String data = response.responseData();
+            String shrunk;
+            if (data == null) {
+                shrunk = null;
+            } else if (!seenResults.add(data)) {
+                shrunk = DUPLICATE_NOTICE;
+            } else {
+                String truncated = TokenCounter.truncate(data, maxTokens);
+                shrunk = truncated.length() == data.length() ? data
+                        : truncated + "\n...（内容过长已截断，原文共 " + data.length() + " 个字符）";
+            }
+            changed |= shrunk != data;
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), shrunk));
+        }
+        return changed ? new ToolResponseMessage(responses, message.getMetadata()) : message;
+    }
+}
@@ -1,11 +1,13 @@
 package com.lenyan.lenaiagent.agent;
 
-import com.lenyan.lenaiagent.advisor.MyLoggerAdvisor;
+import com.lenyan.lenaiagent.advisor.ObservabilityAdvisor;
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -16,8 +18,19 @@ public class QuizAssistant extends ToolCallAgent {
 
     @Autowired
     public QuizAssistant(@Qualifier("allTools") ToolCallback[] allTools, 
-                         @Qualifier("dashscopeChatModel") ChatModel dashscopeChatModel) {
+                         @Qualifier("dashscopeChatModel") ChatModel dashscopeChatModel,
+                         AgentSessionPool agentSessionPool, AgentExecutor agentExecutor,
+                         @Value("${agent.tool.timeout-ms:60000}") long toolTimeoutMillis,
+                         ObservabilityAdvisor observabilityAdvisor,
+                         @Qualifier("agentConversationCompactor") ConversationCompactor conversationCompactor,
+                         PromptAssembler promptAssembler) {
         super(allTools);
+        // 单例共享，每次运行从会话池借出独立会话
+        this.setSessionPool(agentSessionPool);
+        this.setAgentExecutor(agentExecutor);
+        this.setToolTimeoutMillis(toolTimeoutMillis);
+        this.setConversationCompactor(conversationCompactor);
+        this.setPromptAssembler(promptAssembler);
         
         // 基础配置
         this.setName("quizAssistant");
@@ -46,7 +59,7 @@ public class QuizAssistant extends ToolCallAgent {
         // 初始化对话客户端
         this.setChatClient(
             ChatClient.builder(dashscopeChatModel)
-                .defaultAdvisors(new MyLoggerAdvisor())
+                .defaultAdvisors(observabilityAdvisor, observabilityAdvisor.modelProbe())
                 .build()
         );
     }
@@ -1,5 +1,6 @@
 package com.lenyan.lenaiagent.agent;
 
+import com.lenyan.lenaiagent.agent.model.AgentSession;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
@@ -14,28 +15,32 @@ public abstract class ReActAgent extends BaseAgent {
 
     /**
      * 思考决策阶段
+     * @param session 当前运行会话
      * @return 是否需要执行行动
      */
-    public abstract boolean think();
+    public abstract boolean think(AgentSession session);
 
     /**
      * 执行行动阶段
+     * @param session 当前运行会话
      * @return 行动执行结果
      */
-    public abstract String act();
+    public abstract String act(AgentSession session);
 
     /**
      * 单步执行思考和行动
      */
     @Override
-    public String step() {
+    public String step(AgentSession session) {
         try {
             // 先思考后行动
-            boolean shouldAct = think();
+            boolean shouldAct = think(session);
             if (!shouldAct) {
                 return "思考完成 - 无需行动";
             }
-            return act();
+            return act(session);
+        } catch (AgentCancelledException e) {
+            throw e;
         } catch (Exception e) {
             log.error("步骤执行失败", e);
             return "步骤执行失败: " + e.getMessage();
@@ -0,0 +1,154 @@
+package com.lenyan.lenaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 流式响应组装器
+ * 逐块接收模型的流式输出：文本增量立即转发给监听器，工具调用片段按 id 增量拼接，
+ * 下一个调用开始（或流结束）时上一个调用即拼接完成并通知监听器，流结束后组装成与阻塞调用等价的 ChatResponse
+ */
+public class StreamingResponseAssembler {
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<ToolCallBuilder> toolCalls = new ArrayList<>();
+    private final Consumer<String> textListener;
+    private final Consumer<AssistantMessage.ToolCall> toolCallListener;
+    private ChatResponseMetadata metadata;
+    private boolean completed;
+
+    /**
+     * @param textListener 文本增量监听器，可为 null
+     */
+    public StreamingResponseAssembler(Consumer<String> textListener) {
+        this(textListener, null);
+    }
+
+    /**
+     * @param textListener     文本增量监听器，可为 null
+     * @param toolCallListener 工具调用拼接完成监听器，可为 null
+     */
+    public StreamingResponseAssembler(Consumer<String> textListener, Consumer<AssistantMessage.ToolCall> toolCallListener) {
+        this.textListener = textListener;
+        this.toolCallListener = toolCallListener;
+    }
+
+    /**
+     * 接收一个流式分块
+     */
+    public void accept(ChatResponse chunk) {
+        if (chunk == null) {
+            return;
+        }
+        if (chunk.getMetadata() != null) {
+            metadata = chunk.getMetadata();
+        }
+        Generation generation = chunk.getResult();
+        if (generation == null || generation.getOutput() == null) {
+            return;
+        }
+        AssistantMessage output = generation.getOutput();
+
+        // 文本增量
+        String delta = output.getText();
+        if (StrUtil.isNotEmpty(delta)) {
+            text.append(delta);
+            if (textListener != null) {
+                textListener.accept(delta);
+            }
+        }
+
+        // 工具调用片段：带新 id 的片段开启新调用，无 id 或同 id 的片段拼接到当前调用
+        for (AssistantMessage.ToolCall fragment : output.getToolCalls()) {
+            ToolCallBuilder current = toolCalls.isEmpty() ? null : toolCalls.get(toolCalls.size() - 1);
+            if (current == null || (StrUtil.isNotEmpty(fragment.id()) && !fragment.id().equals(current.id))) {
+                if (current != null) {
+                    notifyToolCall(current);
+                }
+                current = new ToolCallBuilder(StrUtil.isNotEmpty(fragment.id()) ? fragment.id() : "call_" + toolCalls.size());
+                toolCalls.add(current);
+            }
+            current.merge(fragment);
+        }
+    }
+
+    /**
+     * 流结束，最后一个工具调用拼接完成
+     */
+    public void complete() {
+        if (!completed && !toolCalls.isEmpty()) {
+            notifyToolCall(toolCalls.get(toolCalls.size() - 1));
+        }
+        completed = true;
+    }
+
+    private void notifyToolCall(ToolCallBuilder toolCall) {
+        if (toolCallListener != null) {
+            toolCallListener.accept(toolCall.build());
+        }
+    }
+
+    /**
+     * 已接收的完整文本
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * 已开始接收的工具调用数量
+     */
+    public int getToolCallCount() {
+        return toolCalls.size();
+    }
+
+    /**
+     * 组装最终响应
+     */
+    public ChatResponse toChatResponse() {
+        List<AssistantMessage.ToolCall> calls = toolCalls.stream()
+                .map(ToolCallBuilder::build)
+                .toList();
+        AssistantMessage message = new AssistantMessage(text.toString(), Map.of(), calls);
+        List<Generation> generations = List.of(new Generation(message));
+        return metadata != null ? new ChatResponse(generations, metadata) : new ChatResponse(generations);
+    }
+
+    /**
+     * 工具调用片段拼接器
+     */
+    private static class ToolCallBuilder {
+        private final String id;
+        private String type;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+
+        private ToolCallBuilder(String id) {
+            this.id = id;
+        }
+
+        private void merge(AssistantMessage.ToolCall fragment) {
+            if (StrUtil.isEmpty(type) && StrUtil.isNotEmpty(fragment.type())) {
+                type = fragment.type();
+            }
+            if (StrUtil.isEmpty(name) && StrUtil.isNotEmpty(fragment.name())) {
+                name = fragment.name();
+            }
+            if (fragment.arguments() != null) {
+                arguments.append(fragment.arguments());
+            }
+        }
+
+        private AssistantMessage.ToolCall build() {
+            return new AssistantMessage.ToolCall(id, StrUtil.blankToDefault(type, "function"), name, arguments.toString());
+        }
+    }
+}
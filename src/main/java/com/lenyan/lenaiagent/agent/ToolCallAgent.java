@@ -3,7 +3,10 @@ package com.lenyan.lenaiagent.agent;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.lenyan.lenaiagent.agent.model.AgentSession;
 import com.lenyan.lenaiagent.agent.model.AgentState;
+import com.lenyan.lenaiagent.tools.WebSearchTool;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
@@ -11,13 +14,14 @@ import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -29,40 +33,56 @@ import java.util.stream.Collectors;
 public class ToolCallAgent extends ReActAgent {
 
     private final ToolCallback[] availableTools;
-    private final ToolCallingManager toolCallingManager;
+    private final ParallelToolExecutor parallelToolExecutor;
     private final ChatOptions chatOptions;
-    private ChatResponse toolCallChatResponse;
+    // 单个工具的超时时间
+    private long toolTimeoutMillis = 60000L;
+    // 按 token 预算组装提示词，由子类注入
+    private PromptAssembler promptAssembler;
 
     public ToolCallAgent(ToolCallback[] availableTools) {
         super();
         this.availableTools = availableTools;
-        this.toolCallingManager = ToolCallingManager.builder().build();
+        this.parallelToolExecutor = new ParallelToolExecutor(availableTools,
+                Map.of(WebSearchTool.TOOL_NAME, WebSearchTool.MAX_SEARCH_CALLS));
         // 禁用Spring AI内置工具调用，自行管理
         this.chatOptions = DashScopeChatOptions.builder()
                 .withProxyToolCalls(true)
                 .build();
     }
 
+    /**
+     * 关闭工具执行器，中断仍在运行的工具调用
+     */
+    @PreDestroy
+    public void shutdown() {
+        parallelToolExecutor.shutdown();
+    }
+
     /**
      * 思考阶段：分析当前状态并确定要调用的工具
      */
     @Override
-    public boolean think() {
+    public boolean think(AgentSession session) {
         // 添加下一步提示词
-        if (StrUtil.isNotBlank(getNextStepPrompt())) {
-            getMessageList().add(new UserMessage(getNextStepPrompt()));
+        if (StrUtil.isNotBlank(session.getNextStepPrompt())) {
+            session.getMessageList().add(new UserMessage(session.getNextStepPrompt()));
         }
 
         // 调用AI获取工具选择
         try {
-            Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-            ChatResponse chatResponse = getChatClient().prompt(prompt)
-                    .system(getSystemPrompt())
-                    .tools(availableTools)
-                    .call()
-                    .chatResponse();
-
-            this.toolCallChatResponse = chatResponse;
+            // 会话保留完整记录，提示词只包含预算内的内容
+            Prompt prompt = new Prompt(promptAssembler.assemble(session.getMessageList(), getSystemPrompt()),
+                    this.chatOptions);
+            ChatResponse chatResponse = session.getThinkingListener() != null
+                    ? streamThink(session, prompt)
+                    : getChatClient().prompt(prompt)
+                            .system(getSystemPrompt())
+                            .tools(availableTools)
+                            .call()
+                            .chatResponse();
+
+            session.setToolCallChatResponse(chatResponse);
 
             // 解析响应
             AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
@@ -82,40 +102,80 @@ public class ToolCallAgent extends ReActAgent {
 
             // 没有工具调用时记录助手消息
             if (toolCallList.isEmpty()) {
-                getMessageList().add(assistantMessage);
+                session.getMessageList().add(assistantMessage);
                 return false;
             }
 
             return true;
+        } catch (AgentCancelledException e) {
+            cancelToolCalls(session);
+            throw e;
         } catch (Exception e) {
+            cancelToolCalls(session);
             log.error("{}思考过程错误: {}", getName(), e.getMessage());
-            getMessageList().add(new AssistantMessage("处理错误: " + e.getMessage()));
+            session.getMessageList().add(new AssistantMessage("处理错误: " + e.getMessage()));
             return false;
         }
     }
 
+    /**
+     * 流式思考：文本增量实时转发，工具调用片段增量拼接，
+     * 每个工具调用拼接完成即开始执行，与模型后续输出重叠，行动阶段只需等待结果
+     */
+    private ChatResponse streamThink(AgentSession session, Prompt prompt) {
+        ParallelToolExecutor.ToolCallBatch batch = parallelToolExecutor.begin(session.getToolCallCounts());
+        session.setToolCallBatch(batch);
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(session.getThinkingListener(), batch::submit);
+        getChatClient().prompt(prompt)
+                .system(getSystemPrompt())
+                .tools(availableTools)
+                .stream()
+                .chatResponse()
+                .doOnNext(assembler::accept)
+                .blockLast();
+        assembler.complete();
+        return assembler.toChatResponse();
+    }
+
+    private static void cancelToolCalls(AgentSession session) {
+        if (session.getToolCallBatch() != null) {
+            session.getToolCallBatch().cancel();
+            session.setToolCallBatch(null);
+        }
+    }
+
     /**
      * 行动阶段：执行选定的工具
      */
     @Override
-    public String act() {
-        if (!toolCallChatResponse.hasToolCalls()) {
+    public String act(AgentSession session) {
+        ChatResponse toolCallChatResponse = session.getToolCallChatResponse();
+        if (toolCallChatResponse == null || !toolCallChatResponse.hasToolCalls()) {
             return "没有工具需要调用";
         }
 
-        // 执行工具调用
-        Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult result = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        // 并行执行工具调用，结果按调用顺序排列
+        AssistantMessage assistantMessage = toolCallChatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("模型未请求工具调用"));
+        ParallelToolExecutor.ToolCallBatch batch = session.getToolCallBatch();
+        session.setToolCallBatch(null);
+        ToolExecutionResult result = batch != null
+                ? batch.finish(session.getMessageList(), assistantMessage, toolTimeoutMillis)
+                : parallelToolExecutor.execute(session.getMessageList(), assistantMessage, toolTimeoutMillis,
+                        session.getToolCallCounts());
 
         // 更新消息上下文
-        setMessageList(result.conversationHistory());
+        session.replaceMessages(result.conversationHistory());
         ToolResponseMessage response = (ToolResponseMessage) CollUtil.getLast(result.conversationHistory());
 
         // 检查是否调用了终止工具
         boolean terminated = response.getResponses().stream()
                 .anyMatch(r -> r.name().equals("doTerminate"));
         if (terminated) {
-            setState(AgentState.FINISHED);
+            session.setState(AgentState.FINISHED);
         }
 
         // 格式化结果
@@ -0,0 +1,75 @@
+package com.lenyan.lenaiagent.agent.model;
+
+import com.lenyan.lenaiagent.agent.ParallelToolExecutor;
+import lombok.Data;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 代理单次运行的会话状态
+ * 代理本身只保存不可变配置（客户端、工具、提示词），每次运行的可变状态放在会话中，
+ * 会话由 AgentSessionPool 管理并在运行结束后重置复用
+ */
+@Data
+public class AgentSession {
+
+    // 状态与执行控制
+    private AgentState state = AgentState.IDLE;
+    private int currentStep = 0;
+
+    // 本次运行使用的下一步提示词（循环检测时会被追加额外提示）
+    private String nextStepPrompt;
+
+    // 对话上下文
+    private final List<Message> messageList = new ArrayList<>();
+
+    // 最近一次思考阶段的响应（工具调用代理使用）
+    private ChatResponse toolCallChatResponse;
+
+    // 流式思考时已提前开始执行的工具调用
+    private ParallelToolExecutor.ToolCallBatch toolCallBatch;
+
+    // 本次运行各工具的调用次数，用于按运行限制调用次数
+    private final Map<String, Integer> toolCallCounts = new HashMap<>();
+
+    // 思考阶段的文本增量监听器（流式运行时转发给客户端）
+    private Consumer<String> thinkingListener;
+
+    // 是否已被借出
+    private boolean inUse;
+
+    /**
+     * 用新的上下文替换当前消息列表
+     */
+    public void replaceMessages(List<Message> messages) {
+        if (messages == messageList) {
+            return;
+        }
+        List<Message> snapshot = new ArrayList<>(messages);
+        messageList.clear();
+        messageList.addAll(snapshot);
+    }
+
+    /**
+     * 重置会话，便于归还到池中复用
+     */
+    public void reset() {
+        state = AgentState.IDLE;
+        currentStep = 0;
+        nextStepPrompt = null;
+        messageList.clear();
+        toolCallChatResponse = null;
+        if (toolCallBatch != null) {
+            toolCallBatch.cancel();
+            toolCallBatch = null;
+        }
+        toolCallCounts.clear();
+        thinkingListener = null;
+    }
+}
@@ -1,29 +1,35 @@
 package com.lenyan.lenaiagent.app;
 
-import com.lenyan.lenaiagent.advisor.MyLoggerAdvisor;
+import com.lenyan.lenaiagent.advisor.AdvisorProfiler;
+import com.lenyan.lenaiagent.advisor.CompactingChatMemoryAdvisor;
+import com.lenyan.lenaiagent.advisor.ObservabilityAdvisor;
+import com.lenyan.lenaiagent.advisor.OutputGuardAdvisor;
 import com.lenyan.lenaiagent.advisor.ProhibitedWordAdvisor;
-import com.lenyan.lenaiagent.chatmemory.MySQLChatMemory;
-import com.lenyan.lenaiagent.chatmemory.MybatisPlusChatMemory;
+import com.lenyan.lenaiagent.advisor.QueryRewriteAdvisor;
+import com.lenyan.lenaiagent.advisor.SemanticCacheAdvisor;
+import com.lenyan.lenaiagent.rag.Bm25Index;
 import com.lenyan.lenaiagent.rag.LoveAppRagCustomAdvisorFactory;
 import com.lenyan.lenaiagent.rag.QueryRewriter;
+import com.lenyan.lenaiagent.tools.CallLimitedToolCallback;
+import com.lenyan.lenaiagent.tools.WebSearchTool;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
-import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
@@ -34,8 +40,14 @@ public class LoveApp {
 
     private static final String SYSTEM_PROMPT = "**恋爱大师·情感导航员**  \n" + "10年情感咨询经验，擅长亲密关系理论与沟通技巧。提供中立建议，保护隐私。通过情绪确认、需求拆解（3-5维度）、心理学理论（如非暴力沟通）解析问题，给出2种实操策略（如\"我句式\"对话模拟），引导关系边界建立。示例：\"遗忘纪念日可能涉及记忆模式/爱意表达方式差异，建议用'观察+感受'沟通\"。不评判道德、不做医疗建议，严守伦理规范。您的专属情感顾问，随时为您解惑。";
     private final ChatClient chatClient;
-
-    public LoveApp(ChatModel dashscopeChatModel, MybatisPlusChatMemory mybatisPluschatMemory ,MySQLChatMemory jdbcmysqlchatMemory) {
+    // 按 Advisor 分别统计耗时
+    private final AdvisorProfiler advisorProfiler;
+
+    public LoveApp(ChatModel dashscopeChatModel, CompactingChatMemoryAdvisor loveAppChatMemoryAdvisor,
+                   SemanticCacheAdvisor loveAppSemanticCacheAdvisor, ProhibitedWordAdvisor prohibitedWordAdvisor,
+                   OutputGuardAdvisor outputGuardAdvisor, ObservabilityAdvisor observabilityAdvisor,
+                   AdvisorProfiler advisorProfiler) {
+        this.advisorProfiler = advisorProfiler;
 //         String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
 //         ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
 
@@ -43,14 +55,20 @@ public class LoveApp {
 //        ChatMemory chatMemory = new MySQLChatMemory(dataSource);
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
-                .defaultAdvisors(new MessageChatMemoryAdvisor(mybatisPluschatMemory),
-                        // 记录日志
-                        new MyLoggerAdvisor(),
-                        // 违禁词检测 - 从文件读取违禁词
-                        new ProhibitedWordAdvisor()
+                // 对话记忆：热会话走缓存，写入经写回缓冲批量落库到 chatmemory 表，较早的消息折叠为摘要
+                .defaultAdvisors(advisorProfiler.profile(List.of(loveAppChatMemoryAdvisor,
+                        // 记录耗时和 token 指标，对话内容采样记录日志
+                        observabilityAdvisor,
+                        observabilityAdvisor.modelProbe(),
+                        // 违禁词检测 - 从文件读取违禁词，修改后自动重新加载
+                        prohibitedWordAdvisor,
+                        // 模型输出违禁词检测，流式输出边生成边检查
+                        outputGuardAdvisor,
+                        // 近似问题复用已有回答，只对会话的第一个问题生效（之后的请求带有对话历史）
+                        loveAppSemanticCacheAdvisor
                         // 复读强化阅读能力
                         //new ReReadingAdvisor()
-                ).build();
+                ))).build();
     }
 
     public String doChat(String message, String chatId) {
@@ -62,7 +80,7 @@ public class LoveApp {
                 .call()
                 .chatResponse();
         String content = response.getResult().getOutput().getText();
-        log.info("content: {}", content);
+        log.debug("content: {}", content);
         return content;
     }
 
@@ -81,7 +99,7 @@ public class LoveApp {
                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                 .call().entity(LoveReport.class);
-        log.info("loveReport: {}", loveReport);
+        log.debug("loveReport: {}", loveReport);
         return loveReport;
     }
 
@@ -108,6 +126,9 @@ public class LoveApp {
     @Resource
     private VectorStore loveAppVectorStore;
 
+    @Resource
+    private Bm25Index loveAppKeywordIndex;
+
     @Resource
     private Advisor loveAppRagCloudAdvisor;
 
@@ -117,17 +138,26 @@ public class LoveApp {
     @Resource
     private QueryRewriter queryRewriter;
 
+    // 原始查询可直接检索的判定阈值
+    @Value("${rag.query-rewrite.raw-keyword-confidence:0.75}")
+    private double rawKeywordConfidence;
+
+    @Value("${rag.query-rewrite.raw-similarity-threshold:0.75}")
+    private double rawSimilarityThreshold;
+
     public String doChatWithRag(String message, String chatId) {
-        String rewrittenMessage = queryRewriter.doQueryRewrite(message);
         ChatResponse chatResponse = chatClient
                 .prompt()
-                .user(rewrittenMessage)
+                .user(message)
                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
-                // 开启日志，便于观察效果
-                .advisors(new MyLoggerAdvisor())
-                // 应用知识库问答
-                .advisors(new QuestionAnswerAdvisor(loveAppVectorStore))
+                // 语义缓存未命中后才重写查询；重写与原始查询的检索并行，原始查询已能命中知识库时不等待重写
+                .advisors(advisorProfiler.profile(new QueryRewriteAdvisor(
+                        query -> queryRewriter.rewriteOrKeep(query, this::isRawQueryRetrievable))))
+                // 应用知识库问答（关键词与向量混合检索，关键词命中可信时不做查询向量化）
+                .advisors(advisorProfiler.profile(
+                        LoveAppRagCustomAdvisorFactory.createLoveAppHybridRagAdvisor(loveAppVectorStore, loveAppKeywordIndex)))
+//                .advisors(new QuestionAnswerAdvisor(loveAppVectorStore))
                 // 应用增强检索服务（云知识库服务）
 //                .advisors(loveAppRagCloudAdvisor)
                 // rag应用 （基于 PgVector 向量存储）
@@ -141,11 +171,27 @@ public class LoveApp {
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
-        log.info("content: {}", content);
+        log.debug("content: {}", content);
         return content;
     }
 
 
+    /**
+     * 原始查询能否直接检索到相关文档：关键词命中可信，或向量相似度达到阈值
+     * 查询向量会被缓存，后续检索不会重复向量化
+     */
+    private boolean isRawQueryRetrievable(String query) {
+        List<Bm25Index.Hit> hits = loveAppKeywordIndex.search(query, 1, null);
+        if (!hits.isEmpty() && hits.get(0).confidence() >= rawKeywordConfidence) {
+            return true;
+        }
+        return !loveAppVectorStore.similaritySearch(SearchRequest.builder()
+                .query(query)
+                .topK(1)
+                .similarityThreshold(rawSimilarityThreshold)
+                .build()).isEmpty();
+    }
+
     // AI 调用工具能力
     @Resource
     private ToolCallback[] allTools;
@@ -163,13 +209,13 @@ public class LoveApp {
                 .user(message)
                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
-                // 开启日志，便于观察效果
-                .advisors(new MyLoggerAdvisor())
-                .tools(allTools)
+                // 每次请求重新包装，搜索次数按请求计数
+                .tools(CallLimitedToolCallback.limit(allTools,
+                        Map.of(WebSearchTool.TOOL_NAME, WebSearchTool.MAX_SEARCH_CALLS)))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
-        log.info("content: {}", content);
+        log.debug("content: {}", content);
         return content;
     }
 
@@ -182,13 +228,11 @@ public class LoveApp {
                 .user(message)
                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
-                // 开启日志，便于观察效果
-                .advisors(new MyLoggerAdvisor())
                 .tools(toolCallbackProvider)
                 .call()
                 .chatResponse();
         String content = response.getResult().getOutput().getText();
-        log.info("content: {}", content);
+        log.debug("content: {}", content);
         return content;
     }
 
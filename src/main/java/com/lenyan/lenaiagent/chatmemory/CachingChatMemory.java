@@ -0,0 +1,177 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读穿透缓存的对话记忆装饰器
+ * 每个会话缓存最近 capacity 条消息（环形缓冲），按会话数量上限和空闲时间淘汰；
+ * 写入先落到被装饰的记忆，再追加到已缓存的会话，热会话读取无需访问数据库。
+ * 被装饰的记忆需按时间正序返回消息
+ */
+@Slf4j
+public class CachingChatMemory implements ChatMemory {
+
+    private final ChatMemory delegate;
+    private final int capacity;
+    private final int maxConversations;
+    private final long idleTtlMillis;
+
+    // 访问顺序的 LinkedHashMap，头部为最久未访问的会话
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public CachingChatMemory(ChatMemory delegate, int capacity, int maxConversations, long idleTtlMillis,
+                             MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.maxConversations = maxConversations;
+        this.idleTtlMillis = idleTtlMillis;
+        this.hitCounter = Counter.builder("chat.memory.cache.hit")
+                .description("对话记忆缓存命中次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("chat.memory.cache.miss")
+                .description("对话记忆缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("chat.memory.cache.size", this, CachingChatMemory::size)
+                .description("已缓存的会话数")
+                .register(meterRegistry);
+        log.info("初始化对话记忆缓存，单会话容量: {}，最大会话数: {}", capacity, maxConversations);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        synchronized (cache) {
+            Entry entry = cache.get(conversationId);
+            if (entry == null) {
+                return;
+            }
+            if (entry.loaded) {
+                entry.append(messages, capacity);
+                entry.touch();
+            } else {
+                // 加载过程中发生写入，加载结果作废
+                entry.stale = true;
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        // 超出缓存容量的读取直接透传
+        if (lastN <= 0 || lastN > capacity) {
+            missCounter.increment();
+            return delegate.get(conversationId, lastN);
+        }
+
+        Entry loading;
+        synchronized (cache) {
+            Entry entry = cache.get(conversationId);
+            if (entry != null && entry.isExpired(idleTtlMillis)) {
+                cache.remove(conversationId);
+                entry = null;
+            }
+            if (entry != null && entry.loaded) {
+                entry.touch();
+                hitCounter.increment();
+                return entry.tail(lastN);
+            }
+            loading = new Entry();
+            cache.put(conversationId, loading);
+            evict();
+        }
+
+        missCounter.increment();
+        List<Message> messages = delegate.get(conversationId, capacity);
+        synchronized (cache) {
+            if (cache.get(conversationId) == loading) {
+                if (loading.stale) {
+                    cache.remove(conversationId);
+                } else {
+                    loading.append(messages, capacity);
+                    loading.loaded = true;
+                }
+            }
+        }
+        int from = Math.max(0, messages.size() - lastN);
+        return new ArrayList<>(messages.subList(from, messages.size()));
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+        synchronized (cache) {
+            cache.remove(conversationId);
+        }
+    }
+
+    /**
+     * 已缓存的会话数
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 淘汰超出数量上限或空闲过久的会话（调用方持有锁）
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            if (cache.size() > maxConversations || eldest.isExpired(idleTtlMillis)) {
+                iterator.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 单个会话的缓存项
+     */
+    private static class Entry {
+        private final ArrayDeque<Message> recent = new ArrayDeque<>();
+        private boolean loaded;
+        private boolean stale;
+        private long lastAccess = System.currentTimeMillis();
+
+        private void append(List<Message> messages, int capacity) {
+            for (Message message : messages) {
+                if (recent.size() == capacity) {
+                    recent.pollFirst();
+                }
+                recent.addLast(message);
+            }
+        }
+
+        private List<Message> tail(int lastN) {
+            List<Message> all = new ArrayList<>(recent);
+            return new ArrayList<>(all.subList(Math.max(0, all.size() - lastN), all.size()));
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        private boolean isExpired(long idleTtlMillis) {
+            return System.currentTimeMillis() - lastAccess > idleTtlMillis;
+        }
+    }
+}
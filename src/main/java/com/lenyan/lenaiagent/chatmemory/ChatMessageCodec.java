@@ -0,0 +1,37 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 对话消息的 Kryo 编解码，供文件对话记忆共用
+ */
+final class ChatMessageCodec {
+
+    // Kryo 非线程安全，每个线程持有一个实例
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    });
+
+    private ChatMessageCodec() {
+    }
+
+    static byte[] serialize(Message message) {
+        try (Output output = new Output(256, -1)) {
+            KRYO.get().writeClassAndObject(output, message);
+            return output.toBytes();
+        }
+    }
+
+    static Message deserialize(byte[] bytes) {
+        try (Input input = new Input(bytes)) {
+            return (Message) KRYO.get().readClassAndObject(input);
+        }
+    }
+}
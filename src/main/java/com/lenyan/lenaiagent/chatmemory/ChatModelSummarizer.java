@@ -0,0 +1,81 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.List;
+
+/**
+ * 调用大模型生成增量摘要
+ * 每次只把新折叠的消息连同已有摘要发给模型，单条消息过长时截断，请求大小有上限
+ */
+public class ChatModelSummarizer implements ChatSummarizer {
+
+    private static final String SYSTEM_PROMPT = "你是对话摘要助手。请把已有摘要和新增对话合并为一份新的摘要，"
+            + "保留用户的身份信息、偏好、诉求、已经给出的建议和结论、尚未解决的问题，以及工具调用得到的关键事实；"
+            + "省略寒暄和重复内容。直接输出摘要正文，不超过 %d 字。";
+
+    private final ChatClient chatClient;
+    private final int maxSummaryLength;
+    private final int maxMessageLength;
+
+    /**
+     * @param maxSummaryLength 摘要的最大字数
+     * @param maxMessageLength 单条消息发给模型前保留的最大字符数
+     */
+    public ChatModelSummarizer(ChatModel chatModel, int maxSummaryLength, int maxMessageLength) {
+        this.chatClient = ChatClient.create(chatModel);
+        this.maxSummaryLength = maxSummaryLength;
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    @Override
+    public String summarize(String previousSummary, List<Message> messages) {
+        StringBuilder user = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            user.append("已有摘要：\n").append(previousSummary).append("\n\n");
+        }
+        user.append("新增对话：\n");
+        for (Message message : messages) {
+            user.append(roleOf(message)).append("：").append(abbreviate(textOf(message))).append('\n');
+        }
+        String summary = chatClient.prompt()
+                .system(SYSTEM_PROMPT.formatted(maxSummaryLength))
+                .user(user.toString())
+                .call()
+                .content();
+        return summary == null ? "" : summary.strip();
+    }
+
+    private static String roleOf(Message message) {
+        return switch (message.getMessageType()) {
+            case USER -> "用户";
+            case ASSISTANT -> "助手";
+            case SYSTEM -> "系统";
+            case TOOL -> "工具";
+        };
+    }
+
+    private static String textOf(Message message) {
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            StringBuilder text = new StringBuilder();
+            toolResponseMessage.getResponses().forEach(response ->
+                    text.append('[').append(response.name()).append("] ").append(response.responseData()).append(' '));
+            return text.toString();
+        }
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            StringBuilder text = new StringBuilder(assistantMessage.getText() == null ? "" : assistantMessage.getText());
+            assistantMessage.getToolCalls().forEach(toolCall ->
+                    text.append(" 调用工具 ").append(toolCall.name()).append(toolCall.arguments()));
+            return text.toString();
+        }
+        return message.getText() == null ? "" : message.getText();
+    }
+
+    private String abbreviate(String text) {
+        return text.length() <= maxMessageLength ? text : text.substring(0, maxMessageLength) + "...";
+    }
+}
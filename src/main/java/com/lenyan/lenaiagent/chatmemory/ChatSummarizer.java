@@ -0,0 +1,21 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 对话摘要生成
+ */
+@FunctionalInterface
+public interface ChatSummarizer {
+
+    /**
+     * 把新增的消息合并进已有摘要
+     *
+     * @param previousSummary 已有摘要，没有时为空字符串
+     * @param messages        需要并入摘要的消息，按时间正序
+     * @return 新的摘要
+     */
+    String summarize(String previousSummary, List<Message> messages);
+}
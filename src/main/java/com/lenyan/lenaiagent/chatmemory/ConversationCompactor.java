@@ -0,0 +1,137 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 滚动摘要压缩
+ * 消息总 token 数超出预算时，保留最近不超过 keepRecentTokens 的消息，更早的消息折叠进增量维护的摘要；
+ * 摘要每次只合并新折叠的消息，压缩后消息总量回落到预算以内
+ */
+@Slf4j
+public class ConversationCompactor {
+
+    // 摘要消息的元数据标记
+    public static final String SUMMARY_METADATA_KEY = "compacted_summary";
+    public static final String SUMMARY_PREFIX = "以下是此前对话的摘要：\n";
+
+    private final ChatSummarizer summarizer;
+    private final int tokenBudget;
+    private final int keepRecentTokens;
+
+    /**
+     * @param tokenBudget      消息总 token 数上限，超出时触发压缩
+     * @param keepRecentTokens 压缩后原样保留的最近消息 token 数
+     */
+    public ConversationCompactor(ChatSummarizer summarizer, int tokenBudget, int keepRecentTokens) {
+        if (keepRecentTokens <= 0 || keepRecentTokens >= tokenBudget) {
+            throw new IllegalArgumentException("保留的最近消息 token 数必须大于0且小于预算");
+        }
+        this.summarizer = summarizer;
+        this.tokenBudget = tokenBudget;
+        this.keepRecentTokens = keepRecentTokens;
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public int getKeepRecentTokens() {
+        return keepRecentTokens;
+    }
+
+    /**
+     * 把消息合并进已有摘要
+     */
+    public String fold(String previousSummary, List<Message> messages) {
+        return summarizer.summarize(previousSummary == null ? "" : previousSummary, messages);
+    }
+
+    /**
+     * 压缩智能体的消息列表
+     * 首条消息（任务）始终保留，摘要消息紧随其后，之后是最近的消息；未超出预算时原样返回
+     */
+    public List<Message> compact(List<Message> messages) {
+        if (messages.size() < 3 || TokenCounter.count(messages) <= tokenBudget) {
+            return messages;
+        }
+        int head = 1;
+        String previousSummary = "";
+        if (isSummary(messages.get(1))) {
+            previousSummary = summaryText(messages.get(1));
+            head = 2;
+        }
+        int keepFrom = keepFrom(messages, head, keepRecentTokens);
+        if (keepFrom >= messages.size()) {
+            // 最近一轮本身超出保留额度时仍完整保留这一轮
+            keepFrom = lastTurnStart(messages, head);
+        }
+        if (keepFrom <= head) {
+            return messages;
+        }
+
+        String summary;
+        try {
+            summary = fold(previousSummary, messages.subList(head, keepFrom));
+        } catch (Exception e) {
+            log.warn("生成对话摘要失败，本次不压缩: {}", e.getMessage());
+            return messages;
+        }
+        List<Message> compacted = new ArrayList<>(messages.size() - keepFrom + 2);
+        compacted.add(messages.get(0));
+        compacted.add(summaryMessage(summary));
+        compacted.addAll(messages.subList(keepFrom, messages.size()));
+        log.info("压缩消息列表：{} 条消息折叠进摘要，保留 {} 条", keepFrom - head, messages.size() - keepFrom);
+        return compacted;
+    }
+
+    /**
+     * 从 from 开始，保留的最近消息的起始下标，保留部分的 token 数不超过 budget
+     * 工具返回消息需紧跟发起调用的助手消息，保留部分不以工具返回消息开头
+     */
+    public static int keepFrom(List<Message> messages, int from, int budget) {
+        int start = messages.size();
+        int tokens = 0;
+        for (int i = messages.size() - 1; i >= from; i--) {
+            tokens += TokenCounter.count(messages.get(i));
+            if (tokens > budget) {
+                break;
+            }
+            start = i;
+        }
+        while (start < messages.size() && messages.get(start) instanceof ToolResponseMessage) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * 最后一轮的起始下标，即末尾工具返回消息之前的那条消息
+     */
+    public static int lastTurnStart(List<Message> messages, int head) {
+        int i = messages.size() - 1;
+        while (i > head && messages.get(i) instanceof ToolResponseMessage) {
+            i--;
+        }
+        return Math.max(head, i);
+    }
+
+    public static Message summaryMessage(String summary) {
+        return new UserMessage(SUMMARY_PREFIX + summary, List.of(), Map.of(SUMMARY_METADATA_KEY, true));
+    }
+
+    public static boolean isSummary(Message message) {
+        return Boolean.TRUE.equals(message.getMetadata().get(SUMMARY_METADATA_KEY));
+    }
+
+    private static String summaryText(Message message) {
+        String text = message.getText();
+        return text.startsWith(SUMMARY_PREFIX) ? text.substring(SUMMARY_PREFIX.length()) : text;
+    }
+}
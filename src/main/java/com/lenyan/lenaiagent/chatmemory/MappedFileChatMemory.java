@@ -0,0 +1,329 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 带内存映射索引的分段日志对话记忆
+ * 消息存放在 SegmentedFileChatMemory 的按会话分段日志中；index.dat 通过 FileChannel.map 映射为开放寻址哈希表，
+ * 保存 会话ID → (尾部段, 尾部段记录数, 条数, 最后序号)。
+ * get(lastN) 落在尾部段内时只需一次映射内存查找和一次定位读取，不加载会话日志也不扫描目录；
+ * 超出尾部段或尾部段刚被合并时回退到分段日志读取。清空会删除会话的段文件，只在索引中保留最后序号
+ */
+@Slf4j
+public class MappedFileChatMemory implements ChatMemory, AutoCloseable {
+
+    public static final int DEFAULT_INITIAL_SLOTS = 1 << 16;
+    public static final int MAX_KEY_BYTES = 64;
+
+    private static final String INDEX_FILE = "index.dat";
+    private static final String SEGMENTS_DIR = "segments";
+    private static final int MAGIC = 0x4C4D4958;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    // 索引文件头：magic、槽位数、已用槽位数
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_COUNT_POS = 4;
+    private static final int USED_POS = 8;
+
+    // 槽位布局：keyLen(short) key(64) tailSegment(long) tailRecords(int) count(long) lastOrder(int)
+    private static final int SLOT_BYTES = 96;
+    private static final int KEY_LEN = 0;
+    private static final int KEY = 2;
+    private static final int TAIL_SEGMENT = KEY + MAX_KEY_BYTES;
+    private static final int TAIL_RECORDS = TAIL_SEGMENT + Long.BYTES;
+    private static final int COUNT = TAIL_RECORDS + Integer.BYTES;
+    private static final int LAST_ORDER = COUNT + Long.BYTES;
+
+    private final File baseDir;
+    private final SegmentedFileChatMemory store;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int slotCount;
+    private int used;
+
+    public MappedFileChatMemory(String dir) {
+        this(dir, DEFAULT_INITIAL_SLOTS, SegmentedFileChatMemory.DEFAULT_SEGMENT_RECORDS,
+                SegmentedFileChatMemory.DEFAULT_COMPACT_THRESHOLD, 60000L);
+    }
+
+    /**
+     * @param initialSlots 初始槽位数，向上取整为 2 的幂，装载因子超过 0.7 时翻倍
+     * @param segmentRecords        分段日志单个段的记录数
+     * @param compactThreshold      分段日志合并阈值
+     * @param compactIntervalMillis 分段日志合并周期
+     */
+    public MappedFileChatMemory(String dir, int initialSlots, int segmentRecords, int compactThreshold,
+                                long compactIntervalMillis) {
+        this.baseDir = new File(dir);
+        baseDir.mkdirs();
+        this.store = new SegmentedFileChatMemory(new File(baseDir, SEGMENTS_DIR).getPath(), segmentRecords,
+                compactThreshold, compactIntervalMillis);
+        try {
+            openIndex(Math.max(2, Integer.highestOneBit(Math.max(1, initialSlots - 1)) << 1));
+        } catch (IOException e) {
+            store.close();
+            throw new UncheckedIOException("打开对话记忆索引失败: " + dir, e);
+        }
+        log.info("初始化映射索引对话记忆，目录: {}，槽位: {}，已用: {}", dir, slotCount, used);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        byte[] key = toKey(conversationId);
+        // 回调在会话写锁内执行，同一会话的索引更新顺序与追加顺序一致
+        store.add(conversationId, messages, tail -> {
+            lock.writeLock().lock();
+            try {
+                int base = slotBase(findSlot(key, true));
+                index.putLong(base + TAIL_SEGMENT, tail.segment());
+                index.putInt(base + TAIL_RECORDS, tail.records());
+                index.putLong(base + COUNT, tail.count());
+                index.putInt(base + LAST_ORDER, index.getInt(base + LAST_ORDER) + messages.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        byte[] key = toKey(conversationId);
+        SegmentedFileChatMemory.SegmentTail tail;
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key, false);
+            if (slot < 0) {
+                return new ArrayList<>();
+            }
+            int base = slotBase(slot);
+            tail = new SegmentedFileChatMemory.SegmentTail(index.getLong(base + TAIL_SEGMENT),
+                    index.getInt(base + TAIL_RECORDS), index.getLong(base + COUNT));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (tail.count() == 0) {
+            return new ArrayList<>();
+        }
+        if (lastN > 0 && lastN <= tail.records()) {
+            try {
+                return store.readTail(conversationId, tail, lastN);
+            } catch (IOException e) {
+                log.debug("尾部段已变化，回退到分段日志读取: {}", conversationId);
+            }
+        }
+        return store.get(conversationId, lastN);
+    }
+
+    /**
+     * 清空会话并删除其段文件，保留最后序号使后续消息的序号继续递增
+     */
+    @Override
+    public void clear(String conversationId) {
+        byte[] key = toKey(conversationId);
+        store.clear(conversationId, () -> {
+            lock.writeLock().lock();
+            try {
+                int slot = findSlot(key, false);
+                if (slot >= 0) {
+                    int base = slotBase(slot);
+                    index.putLong(base + TAIL_SEGMENT, 0);
+                    index.putInt(base + TAIL_RECORDS, 0);
+                    index.putLong(base + COUNT, 0);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * 会话最后一条消息的序号，会话不存在时为 0
+     */
+    public int getLastOrder(String conversationId) {
+        byte[] key = toKey(conversationId);
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key, false);
+            return slot < 0 ? 0 : index.getInt(slotBase(slot) + LAST_ORDER);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引中的会话数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return used;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 底层分段日志
+     */
+    SegmentedFileChatMemory getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+        lock.writeLock().lock();
+        try {
+            index.force();
+            indexChannel.close();
+        } catch (IOException e) {
+            log.error("关闭对话记忆索引失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 线性探测查找会话的槽位
+     *
+     * @param create 不存在时是否占用新槽位（调用方需持有写锁）
+     * @return 槽位下标，不存在且不创建时返回 -1
+     */
+    private int findSlot(byte[] key, boolean create) {
+        if (create && used + 1 > slotCount * MAX_LOAD_FACTOR) {
+            try {
+                grow();
+            } catch (IOException e) {
+                throw new UncheckedIOException("扩容对话记忆索引失败", e);
+            }
+        }
+        int mask = slotCount - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int base = slotBase(slot);
+            int keyLength = index.getShort(base + KEY_LEN);
+            if (keyLength == 0) {
+                if (!create) {
+                    return -1;
+                }
+                index.putShort(base + KEY_LEN, (short) key.length);
+                index.put(base + KEY, key);
+                used++;
+                index.putInt(USED_POS, used);
+                return slot;
+            }
+            if (keyLength == key.length && keyEquals(base, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(int base, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (index.get(base + KEY + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 槽位数翻倍：写入临时文件后整体替换并重新映射
+     */
+    private void grow() throws IOException {
+        int newSlotCount = slotCount << 1;
+        File indexFile = new File(baseDir, INDEX_FILE);
+        File tmpFile = new File(baseDir, INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) newSlotCount * SLOT_BYTES);
+            target.putInt(0, MAGIC);
+            target.putInt(SLOT_COUNT_POS, newSlotCount);
+            target.putInt(USED_POS, used);
+            byte[] slotBytes = new byte[SLOT_BYTES];
+            int mask = newSlotCount - 1;
+            for (int i = 0; i < slotCount; i++) {
+                int base = slotBase(i);
+                int keyLength = index.getShort(base + KEY_LEN);
+                if (keyLength == 0) {
+                    continue;
+                }
+                index.get(base, slotBytes);
+                byte[] key = Arrays.copyOfRange(slotBytes, KEY, KEY + keyLength);
+                int slot = hash(key) & mask;
+                while (target.getShort(HEADER_BYTES + slot * SLOT_BYTES + KEY_LEN) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                target.put(HEADER_BYTES + slot * SLOT_BYTES, slotBytes);
+            }
+            target.force();
+        }
+        indexChannel.close();
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        openIndex(newSlotCount);
+        log.info("对话记忆索引扩容至 {} 个槽位", slotCount);
+    }
+
+    private void openIndex(int initialSlots) throws IOException {
+        File indexFile = new File(baseDir, INDEX_FILE);
+        boolean exists = indexFile.length() >= HEADER_BYTES;
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            MappedByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("对话记忆索引文件格式不正确: " + indexFile);
+            }
+            slotCount = header.getInt(SLOT_COUNT_POS);
+        } else {
+            slotCount = initialSlots;
+        }
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+        if (!exists) {
+            index.putInt(0, MAGIC);
+            index.putInt(SLOT_COUNT_POS, slotCount);
+        }
+        used = index.getInt(USED_POS);
+    }
+
+    private static int slotBase(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] toKey(String conversationId) {
+        byte[] key = conversationId.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("会话ID长度需在 1~" + MAX_KEY_BYTES + " 字节之间: " + conversationId);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,436 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * 基于追加写分段日志的对话记忆
+ * 每个会话一个目录，消息以 [长度][Kryo字节] 记录追加到段文件（.log），
+ * 同名 .idx 文件按记录顺序保存每条记录的起始偏移（8字节）。
+ * 追加为 O(1)，get(lastN) 只读取尾部段的索引和数据；已封存的小段由后台任务合并，
+ * 已合并的大段不再参与合并，每条记录最多被重写一次；空闲的会话日志由后台任务移出内存，再次访问时从目录恢复。
+ * 会话ID只含字母、数字、下划线和短横线时直接作为目录名，否则使用 ~ 加 ID 的 SHA-256，目录总在存储目录之下
+ */
+@Slf4j
+public class SegmentedFileChatMemory implements ChatMemory, AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_RECORDS = 1024;
+    public static final int DEFAULT_COMPACT_THRESHOLD = 8;
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int OFFSET_BYTES = Long.BYTES;
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Path baseDir;
+    private final int segmentRecords;
+    private final int compactThreshold;
+    private final long compactIntervalMillis;
+    private final Map<String, ConversationLog> logs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentedFileChatMemory(String dir) {
+        this(dir, DEFAULT_SEGMENT_RECORDS, DEFAULT_COMPACT_THRESHOLD, 60000L);
+    }
+
+    public SegmentedFileChatMemory(String dir, int segmentRecords, int compactThreshold, long compactIntervalMillis) {
+        this.baseDir = Path.of(dir).toAbsolutePath().normalize();
+        this.segmentRecords = segmentRecords;
+        this.compactThreshold = compactThreshold;
+        this.compactIntervalMillis = compactIntervalMillis;
+        new File(dir).mkdirs();
+        compactor.scheduleWithFixedDelay(this::compactAll, compactIntervalMillis, compactIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        add(conversationId, messages, null);
+    }
+
+    /**
+     * 追加消息，完成后在持有会话写锁时回调尾部段的位置，供外部索引按相同顺序更新
+     */
+    void add(String conversationId, List<Message> messages, Consumer<SegmentTail> onAppended) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ConversationLog conversationLog = lockLog(conversationId, true);
+        try {
+            int written = 0;
+            Segment active = null;
+            while (written < messages.size()) {
+                active = conversationLog.activeSegment(segmentRecords);
+                int batch = Math.min(messages.size() - written, segmentRecords - active.records);
+                append(active, messages.subList(written, written + batch));
+                conversationLog.nextSequence += batch;
+                written += batch;
+            }
+            if (onAppended != null) {
+                onAppended.accept(new SegmentTail(Long.parseLong(active.name), active.records,
+                        conversationLog.nextSequence));
+            }
+        } catch (IOException e) {
+            log.error("追加对话记录失败: {}", conversationId, e);
+            throw new UncheckedIOException(e);
+        } finally {
+            conversationLog.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        ConversationLog conversationLog = lockLog(conversationId, false);
+        try {
+            List<Message> result = new ArrayList<>();
+            int remaining = lastN > 0 ? lastN : Integer.MAX_VALUE;
+            // 从最新的段向前读取，直到凑满 lastN 条
+            for (int i = conversationLog.segments.size() - 1; i >= 0 && remaining > 0; i--) {
+                Segment segment = conversationLog.segments.get(i);
+                int take = Math.min(remaining, segment.records);
+                List<Message> tail = readTail(segment, take);
+                Collections.reverse(tail);
+                result.addAll(tail);
+                remaining -= take;
+            }
+            Collections.reverse(result);
+            return result;
+        } catch (IOException e) {
+            log.error("读取对话记录失败: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            conversationLog.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        clear(conversationId, null);
+    }
+
+    /**
+     * 删除会话的全部段文件，完成后在持有会话写锁时回调
+     */
+    void clear(String conversationId, Runnable onCleared) {
+        ConversationLog conversationLog = lockLog(conversationId, true);
+        try {
+            // 标记关闭后持有旧引用的线程会重新获取新的会话日志，不会写入已删除的目录
+            FileUtil.del(conversationLog.dir);
+            conversationLog.segments.clear();
+            conversationLog.closed = true;
+            logs.remove(conversationId, conversationLog);
+            if (onCleared != null) {
+                onCleared.run();
+            }
+        } finally {
+            conversationLog.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按外部索引记录的尾部段位置直接读取最近的消息，不加载会话日志也不扫描目录
+     * 尾部段随后被合并或清空时抛出 IOException，调用方应回退到 get
+     */
+    List<Message> readTail(String conversationId, SegmentTail tail, int lastN) throws IOException {
+        Segment segment = new Segment(conversationDir(conversationId), String.format("%020d", tail.segment()));
+        segment.records = tail.records();
+        return readTail(segment, Math.min(lastN, tail.records()));
+    }
+
+    /**
+     * 合并会话末尾连续的已封存小段，达到 compactThreshold 个时合并为一个大段
+     *
+     * @return 是否发生了合并
+     */
+    public boolean compact(String conversationId) {
+        ConversationLog conversationLog = lockLog(conversationId, true, false);
+        try {
+            // 最新的段仍在写入，不参与合并；已合并的大段记录数超过 segmentRecords，也不再参与
+            List<Segment> segments = conversationLog.segments;
+            int sealed = segments.size() - 1;
+            int from = sealed;
+            while (from > 0 && segments.get(from - 1).records <= segmentRecords) {
+                from--;
+            }
+            if (sealed - from < Math.max(2, compactThreshold)) {
+                return false;
+            }
+            List<Segment> toMerge = new ArrayList<>(segments.subList(from, sealed));
+            Segment merged = mergeSegments(conversationLog.dir, toMerge);
+            segments.subList(from, sealed).clear();
+            segments.add(from, merged);
+            log.debug("会话 {} 合并 {} 个段", conversationId, toMerge.size());
+            return true;
+        } catch (IOException e) {
+            log.error("合并对话记录失败: {}", conversationId, e);
+            return false;
+        } finally {
+            conversationLog.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 会话当前的段数量
+     */
+    public int getSegmentCount(String conversationId) {
+        return getLog(conversationId).segments.size();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+    }
+
+    /**
+     * 内存中的会话日志数
+     */
+    public int getOpenLogCount() {
+        return logs.size();
+    }
+
+    /**
+     * 合并所有会话的小段，并移出空闲超过一个合并周期的会话日志
+     */
+    void compactAll() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, ConversationLog> entry : logs.entrySet()) {
+            compact(entry.getKey());
+            ConversationLog conversationLog = entry.getValue();
+            if (now - conversationLog.lastAccess < compactIntervalMillis) {
+                continue;
+            }
+            conversationLog.lock.writeLock().lock();
+            try {
+                if (!conversationLog.closed && now - conversationLog.lastAccess >= compactIntervalMillis) {
+                    conversationLog.closed = true;
+                    logs.remove(entry.getKey(), conversationLog);
+                }
+            } finally {
+                conversationLog.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private ConversationLog getLog(String conversationId) {
+        return logs.computeIfAbsent(conversationId, id -> new ConversationLog(conversationDir(id)));
+    }
+
+    /**
+     * 会话目录，ID 来自请求参数，不能直接作为路径，否则 .. 等 ID 会在存储目录之外写入或删除文件
+     */
+    File conversationDir(String conversationId) {
+        String name = SAFE_ID.matcher(conversationId).matches()
+                ? conversationId
+                // ~ 不在安全字符中，编码后的目录名不会与原样使用的 ID 冲突
+                : "~" + DigestUtil.sha256Hex(conversationId);
+        Path dir = baseDir.resolve(name).normalize();
+        if (!baseDir.equals(dir.getParent())) {
+            throw new IllegalArgumentException("会话目录不在存储目录之下: " + conversationId);
+        }
+        return dir.toFile();
+    }
+
+    /**
+     * 获取并锁定会话日志，已被清空关闭的日志会重新获取
+     */
+    private ConversationLog lockLog(String conversationId, boolean write) {
+        return lockLog(conversationId, write, true);
+    }
+
+    /**
+     * @param touch 是否刷新最近访问时间，后台合并不刷新，以免会话日志永远无法移出内存
+     */
+    private ConversationLog lockLog(String conversationId, boolean write, boolean touch) {
+        while (true) {
+            ConversationLog conversationLog = getLog(conversationId);
+            Lock lock = write ? conversationLog.lock.writeLock() : conversationLog.lock.readLock();
+            lock.lock();
+            if (!conversationLog.closed) {
+                if (touch) {
+                    conversationLog.lastAccess = System.currentTimeMillis();
+                }
+                return conversationLog;
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加一批消息到段：先写数据，再写偏移索引
+     */
+    private void append(Segment segment, List<Message> messages) throws IOException {
+        ByteBuffer offsets = ByteBuffer.allocate(messages.size() * OFFSET_BYTES);
+        try (DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(segment.logFile, true)))) {
+            long position = segment.logFile.length();
+            for (Message message : messages) {
+                byte[] bytes = ChatMessageCodec.serialize(message);
+                offsets.putLong(position);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+                position += Integer.BYTES + bytes.length;
+            }
+        }
+        try (FileOutputStream index = new FileOutputStream(segment.indexFile, true)) {
+            index.write(offsets.array());
+        }
+        segment.records += messages.size();
+    }
+
+    /**
+     * 读取段末尾的 count 条记录
+     */
+    private List<Message> readTail(Segment segment, int count) throws IOException {
+        List<Message> messages = new ArrayList<>(count);
+        if (count <= 0) {
+            return messages;
+        }
+        long startOffset;
+        try (RandomAccessFile index = new RandomAccessFile(segment.indexFile, "r")) {
+            index.seek((long) (segment.records - count) * OFFSET_BYTES);
+            startOffset = index.readLong();
+        }
+        try (RandomAccessFile data = new RandomAccessFile(segment.logFile, "r")) {
+            data.seek(startOffset);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[data.readInt()];
+                data.readFully(bytes);
+                messages.add(ChatMessageCodec.deserialize(bytes));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 将多个段合并为一个，写入临时文件后替换第一个段
+     */
+    private Segment mergeSegments(File dir, List<Segment> segments) throws IOException {
+        Segment first = segments.get(0);
+        File tmpLog = new File(dir, first.name + LOG_SUFFIX + ".tmp");
+        File tmpIndex = new File(dir, first.name + INDEX_SUFFIX + ".tmp");
+        int records = 0;
+        try (FileOutputStream logOut = new FileOutputStream(tmpLog);
+             DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpIndex)))) {
+            long base = 0;
+            for (Segment segment : segments) {
+                byte[] indexBytes = FileUtil.readBytes(segment.indexFile);
+                ByteBuffer offsets = ByteBuffer.wrap(indexBytes);
+                while (offsets.hasRemaining()) {
+                    indexOut.writeLong(base + offsets.getLong());
+                }
+                byte[] logBytes = FileUtil.readBytes(segment.logFile);
+                logOut.write(logBytes);
+                base += logBytes.length;
+                records += segment.records;
+            }
+        }
+        // 先替换第一个段再删除其余段，中途失败最多产生重复而不会丢失记录
+        FileUtil.rename(tmpLog, first.logFile.getName(), true);
+        FileUtil.rename(tmpIndex, first.indexFile.getName(), true);
+        for (Segment segment : segments.subList(1, segments.size())) {
+            FileUtil.del(segment.logFile);
+            FileUtil.del(segment.indexFile);
+        }
+        Segment merged = new Segment(dir, first.name);
+        merged.records = records;
+        return merged;
+    }
+
+    /**
+     * 单个会话的段列表，按名称（起始记录序号）升序
+     */
+    private static class ConversationLog {
+        private final File dir;
+        private final List<Segment> segments = new ArrayList<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private long nextSequence;
+        private volatile long lastAccess = System.currentTimeMillis();
+        // 已被清空或移出内存，并从 logs 移除
+        private boolean closed;
+
+        private ConversationLog(File dir) {
+            this.dir = dir;
+            String[] names = dir.list((d, name) -> name.endsWith(INDEX_SUFFIX));
+            if (names == null) {
+                return;
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                Segment segment = new Segment(dir, name.substring(0, name.length() - INDEX_SUFFIX.length()));
+                segment.records = (int) (segment.indexFile.length() / OFFSET_BYTES);
+                segments.add(segment);
+                nextSequence += segment.records;
+            }
+        }
+
+        /**
+         * 获取可写入的段，当前段已满时新建一个
+         */
+        private Segment activeSegment(int segmentRecords) {
+            Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last == null || last.records >= segmentRecords) {
+                dir.mkdirs();
+                // 段名为起始记录序号，补零保证字典序即时间序
+                last = new Segment(dir, String.format("%020d", nextSequence));
+                segments.add(last);
+            }
+            return last;
+        }
+    }
+
+    /**
+     * 会话尾部段的位置
+     *
+     * @param segment 尾部段名（起始记录序号）
+     * @param records 尾部段的记录数
+     * @param count   会话的记录总数
+     */
+    record SegmentTail(long segment, int records, long count) {
+    }
+
+    /**
+     * 段文件
+     */
+    private static class Segment {
+        private final String name;
+        private final File logFile;
+        private final File indexFile;
+        private int records;
+
+        private Segment(File dir, String name) {
+            this.name = name;
+            this.logFile = new File(dir, name + LOG_SUFFIX);
+            this.indexFile = new File(dir, name + INDEX_SUFFIX);
+        }
+    }
+}
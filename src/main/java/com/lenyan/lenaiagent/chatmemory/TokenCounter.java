@@ -0,0 +1,73 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.List;
+
+/**
+ * 消息 token 数估算
+ * 与文本切分使用同一编码，结果用于预算控制，与模型实际计费可能略有差异
+ */
+public final class TokenCounter {
+
+    // 每条消息角色、分隔符等固定开销
+    private static final int MESSAGE_OVERHEAD = 4;
+    // 截断时每个 token 预留的字符数，只编码有限长度的前缀
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    private TokenCounter() {
+    }
+
+    public static int count(String text) {
+        return text == null || text.isEmpty() ? 0 : ENCODING.countTokensOrdinary(text);
+    }
+
+    /**
+     * 截取不超过 maxTokens 个 token 的前缀，未超出时原样返回
+     * 只编码前 maxTokens * 4 个字符，耗时与原文长度无关
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        int window = (int) Math.min(text.length(), (long) maxTokens * CHARS_PER_TOKEN);
+        EncodingResult result = ENCODING.encodeOrdinary(text.substring(0, window), maxTokens);
+        if (result.isTruncated()) {
+            return text.substring(0, result.getLastProcessedCharacterIndex() + 1);
+        }
+        return window == text.length() ? text : text.substring(0, window);
+    }
+
+    /**
+     * 单条消息的 token 数，包含工具调用参数和工具返回内容
+     */
+    public static int count(Message message) {
+        int tokens = MESSAGE_OVERHEAD + count(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += count(toolCall.name()) + count(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += count(response.name()) + count(response.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    public static int count(List<Message> messages) {
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += count(message);
+        }
+        return tokens;
+    }
+}
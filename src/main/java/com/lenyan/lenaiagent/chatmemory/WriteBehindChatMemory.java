@@ -0,0 +1,341 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.json.JSONUtil;
+import com.lenyan.lenaiagent.constant.FileConstant;
+import com.lenyan.lenaiagent.domain.ChatMemory;
+import com.lenyan.lenaiagent.service.ChatMemoryService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写回（write-behind）批量持久化的对话记忆
+ * 消息先写入内存缓冲，序号由会话内计数器分配，按数量或时间触发跨会话批量写入 chatmemory 表；
+ * 已全部落库且空闲超过 idleEvictMillis 的会话缓冲会被移除，再次访问时从数据库重新读取最大序号，
+ * 避免缓冲无限增长，也让其他写入方（如 MybatisPlusChatMemory、其他节点）写入的消息在会话空闲后得到同步；
+ * 关闭时刷盘失败的消息落地到本地文件，下次启动时恢复
+ */
+@Component
+@Slf4j
+public class WriteBehindChatMemory implements org.springframework.ai.chat.memory.ChatMemory {
+
+    private static final String FALLBACK_FILE = FileConstant.FILE_SAVE_DIR + "/chat-memory/write-behind-fallback.jsonl";
+
+    private final ChatMemoryService chatMemoryService;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long idleEvictMillis;
+    private final String fallbackFile;
+
+    private final Map<String, ConversationBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    // 刷盘与清空互斥，避免清空后旧消息被写回
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public WriteBehindChatMemory(ChatMemoryService chatMemoryService,
+                                 @Value("${chat-memory.write-behind.batch-size:100}") int batchSize,
+                                 @Value("${chat-memory.write-behind.flush-interval-ms:1000}") long flushIntervalMillis,
+                                 @Value("${chat-memory.write-behind.idle-evict-ms:60000}") long idleEvictMillis) {
+        this(chatMemoryService, batchSize, flushIntervalMillis, idleEvictMillis, FALLBACK_FILE);
+    }
+
+    WriteBehindChatMemory(ChatMemoryService chatMemoryService, int batchSize, long flushIntervalMillis,
+                          String fallbackFile) {
+        this(chatMemoryService, batchSize, flushIntervalMillis, 60000L, fallbackFile);
+    }
+
+    WriteBehindChatMemory(ChatMemoryService chatMemoryService, int batchSize, long flushIntervalMillis,
+                          long idleEvictMillis, String fallbackFile) {
+        this.chatMemoryService = chatMemoryService;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.idleEvictMillis = idleEvictMillis;
+        this.fallbackFile = fallbackFile;
+    }
+
+    @PostConstruct
+    public void start() {
+        recoverFallback();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        log.info("初始化写回对话记忆，批量大小: {}，刷盘间隔: {}ms", batchSize, flushIntervalMillis);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty() || conversationId == null) {
+            return;
+        }
+        // 缓冲可能刚被移除，此时重新创建并从数据库读取序号
+        while (true) {
+            ConversationBuffer buffer = getBuffer(conversationId);
+            synchronized (buffer) {
+                if (buffer.evicted) {
+                    continue;
+                }
+                for (Message message : messages) {
+                    buffer.pending.add(chatMemoryService.toEntity(conversationId, ++buffer.lastOrder, message));
+                }
+                buffer.touch();
+                break;
+            }
+        }
+        // 达到批量大小时立即触发一次异步刷盘
+        if (pendingCount.addAndGet(messages.size()) >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 获取最近的 lastN 条消息，按时间正序，包含尚未落库的消息
+     */
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        // 以序号去重合并数据库与缓冲中的消息
+        TreeMap<Integer, ChatMemory> merged = new TreeMap<>();
+        List<ChatMemory> persisted = lastN > 0
+                ? chatMemoryService.getLatestEntities(conversationId, lastN)
+                : chatMemoryService.lambdaQuery()
+                        .eq(ChatMemory::getConversationId, conversationId)
+                        .eq(ChatMemory::getIsDelete, false)
+                        .list();
+        persisted.forEach(entity -> merged.put(entity.getMessageOrder(), entity));
+        ConversationBuffer buffer = buffers.get(conversationId);
+        if (buffer != null) {
+            synchronized (buffer) {
+                buffer.pending.forEach(entity -> merged.put(entity.getMessageOrder(), entity));
+            }
+        }
+
+        List<ChatMemory> entities = new ArrayList<>(merged.values());
+        if (lastN > 0 && entities.size() > lastN) {
+            entities = entities.subList(entities.size() - lastN, entities.size());
+        }
+        return entities.stream().map(chatMemoryService::toMessage).toList();
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        flushLock.lock();
+        try {
+            ConversationBuffer buffer = buffers.remove(conversationId);
+            if (buffer != null) {
+                synchronized (buffer) {
+                    pendingCount.addAndGet(-buffer.pending.size());
+                    buffer.pending.clear();
+                    buffer.evicted = true;
+                }
+            }
+            chatMemoryService.clearMessages(conversationId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 将所有会话的缓冲消息合并为一个批次写入数据库
+     *
+     * @return 写入的消息数量
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            // 只取快照，写入成功后再从缓冲移除，期间 get 仍能读到这些消息
+            Map<ConversationBuffer, Integer> snapshotSizes = new HashMap<>();
+            List<ChatMemory> batch = new ArrayList<>();
+            for (ConversationBuffer buffer : buffers.values()) {
+                synchronized (buffer) {
+                    if (!buffer.pending.isEmpty()) {
+                        snapshotSizes.put(buffer, buffer.pending.size());
+                        batch.addAll(buffer.pending);
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                evictIdle();
+                return 0;
+            }
+
+            chatMemoryService.saveBatch(batch, batchSize);
+
+            for (Map.Entry<ConversationBuffer, Integer> entry : snapshotSizes.entrySet()) {
+                ConversationBuffer buffer = entry.getKey();
+                synchronized (buffer) {
+                    buffer.pending.subList(0, entry.getValue()).clear();
+                }
+            }
+            pendingCount.addAndGet(-batch.size());
+            log.debug("批量写入 {} 条消息，涉及 {} 个会话", batch.size(), snapshotSizes.size());
+            evictIdle();
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 移除已全部落库且空闲超时的会话缓冲，调用方持有 flushLock
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (Map.Entry<String, ConversationBuffer> entry : buffers.entrySet()) {
+            ConversationBuffer buffer = entry.getValue();
+            synchronized (buffer) {
+                if (buffer.pending.isEmpty() && now - buffer.lastAccess >= idleEvictMillis
+                        && buffers.remove(entry.getKey(), buffer)) {
+                    buffer.evicted = true;
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.debug("移除 {} 个空闲会话缓冲", evicted);
+        }
+    }
+
+    /**
+     * 会话当前的最大消息序号，包含尚未落库的消息，会话为空时返回0
+     */
+    public int lastOrder(String conversationId) {
+        ConversationBuffer buffer = buffers.get(conversationId);
+        if (buffer != null) {
+            synchronized (buffer) {
+                if (!buffer.evicted) {
+                    return buffer.lastOrder;
+                }
+            }
+        }
+        return chatMemoryService.getMaxOrder(conversationId);
+    }
+
+    /**
+     * 内存中的会话缓冲数量
+     */
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * 缓冲中尚未落库的消息数量
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("关闭时写入对话记忆失败，转存到本地文件: {}", fallbackFile, e);
+            spillToFallback();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("批量写入对话记忆失败，将在下次刷盘时重试", e);
+        }
+    }
+
+    private ConversationBuffer getBuffer(String conversationId) {
+        return buffers.computeIfAbsent(conversationId,
+                id -> new ConversationBuffer(chatMemoryService.getMaxOrder(id)));
+    }
+
+    /**
+     * 将缓冲中的消息写入本地文件
+     */
+    private void spillToFallback() {
+        List<String> lines = new ArrayList<>();
+        for (ConversationBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                buffer.pending.forEach(entity -> lines.add(JSONUtil.toJsonStr(entity)));
+            }
+        }
+        if (!lines.isEmpty()) {
+            FileUtil.appendLines(lines, fallbackFile, StandardCharsets.UTF_8);
+            log.warn("已转存 {} 条未写入的消息", lines.size());
+        }
+    }
+
+    /**
+     * 恢复上次关闭时转存的消息
+     */
+    private void recoverFallback() {
+        File file = new File(fallbackFile);
+        if (!file.exists()) {
+            return;
+        }
+        List<ChatMemory> recovered = FileUtil.readLines(file, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isBlank())
+                .map(line -> JSONUtil.toBean(line, ChatMemory.class))
+                .sorted(Comparator.comparing(ChatMemory::getMessageOrder))
+                .toList();
+        // 启动阶段尚未开始刷盘，缓冲不会被移除
+        for (ChatMemory entity : recovered) {
+            ConversationBuffer buffer = getBuffer(entity.getConversationId());
+            synchronized (buffer) {
+                buffer.pending.add(entity);
+                buffer.lastOrder = Math.max(buffer.lastOrder, entity.getMessageOrder());
+            }
+        }
+        pendingCount.addAndGet(recovered.size());
+        FileUtil.del(file);
+        log.info("从本地文件恢复 {} 条未写入的消息", recovered.size());
+    }
+
+    /**
+     * 单个会话的写缓冲
+     */
+    private static class ConversationBuffer {
+        private final List<ChatMemory> pending = new ArrayList<>();
+        private int lastOrder;
+        private long lastAccess = System.currentTimeMillis();
+        // 已从 buffers 移除，持有旧引用的写入方需重新获取
+        private boolean evicted;
+
+        private ConversationBuffer(int lastOrder) {
+            this.lastOrder = lastOrder;
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
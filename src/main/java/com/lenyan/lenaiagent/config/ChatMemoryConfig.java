@@ -0,0 +1,108 @@
+package com.lenyan.lenaiagent.config;
+
+import com.lenyan.lenaiagent.advisor.CompactingChatMemoryAdvisor;
+import com.lenyan.lenaiagent.chatmemory.CachingChatMemory;
+import com.lenyan.lenaiagent.chatmemory.ChatModelSummarizer;
+import com.lenyan.lenaiagent.chatmemory.ChatSummarizer;
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
+import com.lenyan.lenaiagent.chatmemory.MappedFileChatMemory;
+import com.lenyan.lenaiagent.chatmemory.WriteBehindChatMemory;
+import com.lenyan.lenaiagent.constant.FileConstant;
+import com.lenyan.lenaiagent.service.ChatMemorySummaryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * 对话记忆配置类
+ * 组装恋爱大师使用的对话记忆：读缓存 -> 写回批量落库 -> chatmemory 表；
+ * chat-memory.store=file 时改为读缓存 -> 本地分段日志（带映射索引），不依赖数据库；
+ * 较早的消息按 token 预算折叠为滚动摘要，保存在 chatmemory_summary 表
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    @Value("${chat-memory.cache.per-conversation:20}")
+    private int perConversation;
+
+    @Value("${chat-memory.cache.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${chat-memory.cache.idle-ttl-ms:1800000}")
+    private long idleTtlMillis;
+
+    @Value("${chat-memory.compaction.token-budget:2000}")
+    private int memoryTokenBudget;
+
+    @Value("${chat-memory.compaction.keep-recent-tokens:1000}")
+    private int memoryKeepRecentTokens;
+
+    @Value("${chat-memory.compaction.max-summary-length:500}")
+    private int maxSummaryLength;
+
+    @Value("${chat-memory.compaction.max-message-length:2000}")
+    private int maxMessageLength;
+
+    @Value("${agent.compaction.token-budget:12000}")
+    private int agentTokenBudget;
+
+    @Value("${agent.compaction.keep-recent-tokens:6000}")
+    private int agentKeepRecentTokens;
+
+    @Value("${chat-memory.file.segment-records:1024}")
+    private int segmentRecords;
+
+    @Value("${chat-memory.file.compact-threshold:8}")
+    private int compactThreshold;
+
+    @Value("${chat-memory.file.compact-interval-ms:60000}")
+    private long compactIntervalMillis;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "chat-memory.store", havingValue = "file")
+    public MappedFileChatMemory fileChatMemory() {
+        return new MappedFileChatMemory(FileConstant.FILE_SAVE_DIR + "/chat-memory/file-store",
+                MappedFileChatMemory.DEFAULT_INITIAL_SLOTS, segmentRecords, compactThreshold, compactIntervalMillis);
+    }
+
+    @Bean
+    public ChatMemory loveAppChatMemory(WriteBehindChatMemory writeBehindChatMemory,
+                                        ObjectProvider<MappedFileChatMemory> fileChatMemory,
+                                        MeterRegistry meterRegistry) {
+        ChatMemory store = fileChatMemory.getIfAvailable();
+        return new CachingChatMemory(store != null ? store : writeBehindChatMemory, perConversation, maxConversations,
+                idleTtlMillis, meterRegistry);
+    }
+
+    @Bean
+    public ChatSummarizer chatSummarizer(@Qualifier("dashscopeChatModel") ChatModel dashscopeChatModel) {
+        return new ChatModelSummarizer(dashscopeChatModel, maxSummaryLength, maxMessageLength);
+    }
+
+    @Bean
+    public CompactingChatMemoryAdvisor loveAppChatMemoryAdvisor(@Qualifier("loveAppChatMemory") ChatMemory loveAppChatMemory,
+                                                                WriteBehindChatMemory writeBehindChatMemory,
+                                                                ObjectProvider<MappedFileChatMemory> fileChatMemory,
+                                                                ChatMemorySummaryService chatMemorySummaryService,
+                                                                ChatSummarizer chatSummarizer) {
+        MappedFileChatMemory file = fileChatMemory.getIfAvailable();
+        ToIntFunction<String> lastOrder = file != null ? file::getLastOrder : writeBehindChatMemory::lastOrder;
+        return new CompactingChatMemoryAdvisor(loveAppChatMemory, lastOrder,
+                chatMemorySummaryService,
+                new ConversationCompactor(chatSummarizer, memoryTokenBudget, memoryKeepRecentTokens),
+                maxConversations);
+    }
+
+    @Bean
+    public ConversationCompactor agentConversationCompactor(ChatSummarizer chatSummarizer) {
+        return new ConversationCompactor(chatSummarizer, agentTokenBudget, agentKeepRecentTokens);
+    }
+}
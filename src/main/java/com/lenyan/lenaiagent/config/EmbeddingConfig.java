@@ -0,0 +1,34 @@
+package com.lenyan.lenaiagent.config;
+
+import com.lenyan.lenaiagent.constant.FileConstant;
+import com.lenyan.lenaiagent.rag.CachingEmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 向量模型配置类
+ * 在 DashScope 向量模型前加一层缓存，供各向量库共用
+ */
+@Configuration
+public class EmbeddingConfig {
+
+    @Value("${embedding.cache.capacity:10000}")
+    private int capacity;
+
+    @Value("${embedding.cache.disk-enabled:true}")
+    private boolean diskEnabled;
+
+    @Value("${embedding.cache.disk-max-entries:20000}")
+    private int diskMaxEntries;
+
+    @Bean
+    public CachingEmbeddingModel cachingEmbeddingModel(@Qualifier("dashscopeEmbeddingModel") EmbeddingModel dashscopeEmbeddingModel,
+                                                       MeterRegistry meterRegistry) {
+        String diskDir = diskEnabled ? FileConstant.FILE_SAVE_DIR + "/embedding-cache" : null;
+        return new CachingEmbeddingModel(dashscopeEmbeddingModel, capacity, diskDir, diskMaxEntries, meterRegistry);
+    }
+}
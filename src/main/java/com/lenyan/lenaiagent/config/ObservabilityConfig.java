@@ -0,0 +1,41 @@
+package com.lenyan.lenaiagent.config;
+
+import com.lenyan.lenaiagent.advisor.AdvisorProfiler;
+import com.lenyan.lenaiagent.advisor.AdvisorProfilerEndpoint;
+import com.lenyan.lenaiagent.advisor.ObservabilityAdvisor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话可观测性配置类
+ * 指标对每次调用都记录，对话内容只按比例采样记录；可按 Advisor 分别统计耗时
+ */
+@Configuration
+public class ObservabilityConfig {
+
+    @Value("${chat.observability.payload-sample-rate:0.01}")
+    private double payloadSampleRate;
+
+    @Value("${chat.observability.max-payload-length:500}")
+    private int maxPayloadLength;
+
+    @Value("${chat.advisor-profiler.enabled:true}")
+    private boolean profilerEnabled;
+
+    @Bean
+    public ObservabilityAdvisor observabilityAdvisor(MeterRegistry meterRegistry) {
+        return new ObservabilityAdvisor(meterRegistry, payloadSampleRate, maxPayloadLength);
+    }
+
+    @Bean
+    public AdvisorProfiler advisorProfiler(MeterRegistry meterRegistry) {
+        return new AdvisorProfiler(meterRegistry, profilerEnabled);
+    }
+
+    @Bean
+    public AdvisorProfilerEndpoint advisorProfilerEndpoint(AdvisorProfiler advisorProfiler) {
+        return new AdvisorProfilerEndpoint(advisorProfiler);
+    }
+}
@@ -24,9 +24,9 @@ public class PgVectorVectorStoreConfig {
 
 //    @Bean
     // todo 按需使用加载
-    public VectorStore pgVectorVectorStore(@Qualifier("postgresJdbcTemplate") JdbcTemplate jdbcTemplate, EmbeddingModel dashscopeEmbeddingModel) {
+    public VectorStore pgVectorVectorStore(@Qualifier("postgresJdbcTemplate") JdbcTemplate jdbcTemplate, EmbeddingModel cachingEmbeddingModel) {
         // 创建PgVectorStore实例，配置向量存储的参数
-        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, dashscopeEmbeddingModel)
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, cachingEmbeddingModel)
                 .dimensions(1536)                    // 设置向量的维度，可选，默认为模型维度或1536
                 .distanceType(COSINE_DISTANCE)       // 设置计算向量间距离的方法，可选，默认为余弦距离
                 .indexType(HNSW)                     // 设置索引类型，可选，默认为HNSW（高效近似最近邻搜索）
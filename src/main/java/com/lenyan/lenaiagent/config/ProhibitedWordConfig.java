@@ -0,0 +1,37 @@
+package com.lenyan.lenaiagent.config;
+
+import com.lenyan.lenaiagent.advisor.OutputGuardAdvisor;
+import com.lenyan.lenaiagent.advisor.ProhibitedWordAdvisor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 违禁词配置类
+ * 词表可指向外部文件，修改后自动重新加载；同一词表也用于检查模型输出。
+ * 默认的类路径词表打包后不是独立文件，热加载只对 file: 前缀的外部文件生效
+ */
+@Configuration
+public class ProhibitedWordConfig {
+
+    @Value("${chat.prohibited-words.location:prohibited-words.txt}")
+    private String location;
+
+    @Value("${chat.prohibited-words.reload-interval-ms:10000}")
+    private long reloadIntervalMillis;
+
+    @Value("${chat.output-guard.replacement:……（回答包含违规内容，已停止输出）}")
+    private String outputReplacement;
+
+    @Bean
+    public ProhibitedWordAdvisor prohibitedWordAdvisor() {
+        return new ProhibitedWordAdvisor(location, reloadIntervalMillis);
+    }
+
+    @Bean
+    public OutputGuardAdvisor outputGuardAdvisor(ProhibitedWordAdvisor prohibitedWordAdvisor) {
+        return new OutputGuardAdvisor(List.of(prohibitedWordAdvisor), outputReplacement);
+    }
+}
@@ -0,0 +1,31 @@
+package com.lenyan.lenaiagent.config;
+
+import com.lenyan.lenaiagent.advisor.SemanticCacheAdvisor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 响应缓存配置类
+ * 恋爱大师对近似问题直接复用已有回答，问题向量复用带缓存的向量模型；
+ * 对话记忆会填入历史消息，缓存只对每个会话的第一个问题生效
+ */
+@Configuration
+public class ResponseCacheConfig {
+
+    @Value("${chat.response-cache.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Value("${chat.response-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${chat.response-cache.ttl-ms:3600000}")
+    private long ttlMillis;
+
+    @Bean
+    public SemanticCacheAdvisor loveAppSemanticCacheAdvisor(EmbeddingModel cachingEmbeddingModel, MeterRegistry meterRegistry) {
+        return new SemanticCacheAdvisor(cachingEmbeddingModel, similarityThreshold, maxEntries, ttlMillis, meterRegistry);
+    }
+}
@@ -4,8 +4,6 @@ package com.lenyan.lenaiagent.controller;
 import com.lenyan.lenaiagent.agent.LenManus;
 import com.lenyan.lenaiagent.app.LoveApp;
 import jakarta.annotation.Resource;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,10 +22,7 @@ public class AiController {
     private LoveApp loveApp;
 
     @Resource
-    private ToolCallback[] allTools;
-
-    @Resource
-    private ChatModel dashscopeChatModel;
+    private LenManus lenManus;
 
     /**
      * 同步调用 AI 恋爱大师应用
@@ -100,7 +95,7 @@ public class AiController {
      */
     @GetMapping("/manus/chat")
     public SseEmitter doChatWithManus(String message) {
-        LenManus lenManus = new LenManus(allTools, dashscopeChatModel);
+        // 复用单例智能体，运行状态由会话池隔离
         return lenManus.runStream(message);
     }
 }
@@ -1,5 +1,6 @@
 package com.lenyan.lenaiagent.controller;
 
+import com.lenyan.lenaiagent.agent.AgentExecutor;
 import com.lenyan.lenaiagent.domain.request.QwenMultiModalRequest;
 import com.lenyan.lenaiagent.domain.request.QwenTextRequest;
 import com.lenyan.lenaiagent.domain.response.QwenResponse;
@@ -15,11 +16,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * 通义千问控制器
@@ -32,7 +30,7 @@ import java.util.concurrent.Executors;
 public class QwenController {
 
     private final QwenService qwenService;
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final AgentExecutor agentExecutor;
 
     /**
      * 1. 文本对话
@@ -53,28 +51,14 @@ public class QwenController {
         log.info("接收到流式文本对话请求: {}", request.getContent());
         SseEmitter emitter = new SseEmitter(-1L); // 无超时
 
-        executorService.execute(() -> {
+        // 在执行器任务内阻塞到流结束，并发许可和活跃数覆盖整个流式响应；客户端断开时发送失败会取消上游
+        agentExecutor.execute(() -> {
             try {
-                qwenService.streamChat(request)
-                        .subscribe(
-                                response -> {
-                                    try {
-                                        emitter.send(response);
-                                    } catch (IOException e) {
-                                        log.error("发送流式消息出错", e);
-                                        emitter.completeWithError(e);
-                                    }
-                                },
-                                error -> {
-                                    log.error("流式对话出错", error);
-                                    emitter.completeWithError(error);
-                                },
-                                () -> {
-                                    log.info("流式对话完成");
-                                    emitter.complete();
-                                });
+                qwenService.streamChat(request).blockingForEach(emitter::send);
+                log.info("流式对话完成");
+                emitter.complete();
             } catch (Exception e) {
-                log.error("处理流式对话请求出错", e);
+                log.error("流式对话出错", e);
                 emitter.completeWithError(e);
             }
         });
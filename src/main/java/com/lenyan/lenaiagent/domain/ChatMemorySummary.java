@@ -0,0 +1,72 @@
+package com.lenyan.lenaiagent.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableLogic;
+import com.baomidou.mybatisplus.annotation.TableName;
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 对话摘要实体类
+ *
+ * @TableName chatmemory_summary
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName(value = "chatmemory_summary")
+public class ChatMemorySummary implements Serializable {
+    /**
+     * 主键ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 会话ID
+     */
+    @TableField(value = "conversation_id")
+    private String conversationId;
+
+    /**
+     * 摘要内容
+     */
+    @TableField(value = "summary")
+    private String summary;
+
+    /**
+     * 已并入摘要的最大消息序号
+     */
+    @TableField(value = "covered_order")
+    private Integer coveredOrder;
+
+    /**
+     * 创建时间
+     */
+    @TableField(value = "create_time")
+    private Date createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField(value = "update_time")
+    private Date updateTime;
+
+    /**
+     * 是否删除
+     */
+    @TableField(value = "is_delete")
+    @TableLogic
+    private Boolean isDelete;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
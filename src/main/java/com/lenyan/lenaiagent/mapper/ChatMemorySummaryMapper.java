@@ -0,0 +1,31 @@
+package com.lenyan.lenaiagent.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lenyan.lenaiagent.domain.ChatMemorySummary;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * <p>
+ * 对话摘要 Mapper 接口
+ * </p>
+ *
+ * @author lenyan
+ */
+@Mapper
+public interface ChatMemorySummaryMapper extends BaseMapper<ChatMemorySummary> {
+
+    /**
+     * 获取会话当前的摘要
+     */
+    @Select("SELECT * FROM chatmemory_summary WHERE conversation_id = #{conversationId} AND is_delete = 0 ORDER BY id DESC LIMIT 1")
+    ChatMemorySummary getByConversationId(@Param("conversationId") String conversationId);
+
+    /**
+     * 逻辑删除会话摘要
+     */
+    @Update("UPDATE chatmemory_summary SET is_delete = 1, update_time = NOW() WHERE conversation_id = #{conversationId} AND is_delete = 0")
+    int logicalDeleteByConversationId(@Param("conversationId") String conversationId);
+}
@@ -0,0 +1,149 @@
+package com.lenyan.lenaiagent.rag;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentTransformer;
+import org.springframework.ai.transformer.KeywordMetadataEnricher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 批量关键词元信息增强器
+ * 将多段文档放进同一个提示词，一次调用提取各自的关键词，结果写入与 KeywordMetadataEnricher 相同的元信息键；
+ * 返回结果无法解析或数量对不上时，该批退回逐个文档调用；
+ * 设置限流器时每次模型调用（包括退回后的逐个调用）各获取一个令牌
+ */
+@Slf4j
+public class BatchKeywordMetadataEnricher implements DocumentTransformer {
+
+    // 与 KeywordMetadataEnricher 写入的元信息键一致
+    public static final String EXCERPT_KEYWORDS_METADATA_KEY = "excerpt_keywords";
+
+    private static final String PROMPT_TEMPLATE = """
+            下面有 %d 段文档，每段以 [编号] 开头。请为每段文档分别提取 %d 个不重复的关键词。
+            只输出一个 JSON 数组，第 i 个元素是第 i 段文档的关键词字符串数组，元素个数必须等于文档段数，不要输出其它内容。
+
+            %s""";
+
+    private final ChatModel chatModel;
+    private final int keywordCount;
+    private final int batchSize;
+    private final KeywordMetadataEnricher fallback;
+    private final TokenBucketRateLimiter rateLimiter;
+
+    public BatchKeywordMetadataEnricher(ChatModel chatModel, int keywordCount, int batchSize) {
+        this(chatModel, keywordCount, batchSize, null);
+    }
+
+    /**
+     * @param rateLimiter 模型调用限流，为 null 时不限流
+     */
+    public BatchKeywordMetadataEnricher(ChatModel chatModel, int keywordCount, int batchSize,
+                                        TokenBucketRateLimiter rateLimiter) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("批大小必须大于0");
+        }
+        this.chatModel = chatModel;
+        this.keywordCount = keywordCount;
+        this.batchSize = batchSize;
+        this.fallback = new KeywordMetadataEnricher(chatModel, keywordCount);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public List<Document> apply(List<Document> documents) {
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            enrichBatch(documents.subList(from, Math.min(from + batchSize, documents.size())));
+        }
+        return documents;
+    }
+
+    private void enrichBatch(List<Document> batch) {
+        if (batch.size() > 1) {
+            List<String> keywords;
+            acquire();
+            try {
+                keywords = parseKeywords(chatModel.call(new Prompt(buildPrompt(batch))).getResult().getOutput().getText(),
+                        batch.size());
+            } catch (Exception e) {
+                log.warn("批量提取关键词失败，退回逐个提取，共 {} 个文档", batch.size(), e);
+                keywords = null;
+            }
+            if (keywords != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).getMetadata().put(EXCERPT_KEYWORDS_METADATA_KEY, keywords.get(i));
+                }
+                return;
+            }
+        }
+        for (Document document : batch) {
+            acquire();
+            fallback.apply(List.of(document));
+        }
+    }
+
+    private void acquire() {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            rateLimiter.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("等待限流时被中断");
+        }
+    }
+
+    private String buildPrompt(List<Document> batch) {
+        StringBuilder chunks = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            chunks.append('[').append(i + 1).append("]\n").append(batch.get(i).getText()).append("\n\n");
+        }
+        return PROMPT_TEMPLATE.formatted(batch.size(), keywordCount, chunks.toString().trim());
+    }
+
+    /**
+     * 解析模型返回的关键词数组，每段文档的关键词以逗号拼接
+     *
+     * @return 与文档一一对应的关键词，格式不符时返回 null
+     */
+    static List<String> parseKeywords(String text, int expected) {
+        if (text == null) {
+            return null;
+        }
+        // 兼容模型用代码块包裹 JSON 或附带说明文字
+        int start = text.indexOf('[');
+        int end = text.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        JSONArray array;
+        try {
+            array = JSONUtil.parseArray(text.substring(start, end + 1));
+        } catch (Exception e) {
+            return null;
+        }
+        if (array.size() != expected) {
+            return null;
+        }
+        List<String> result = new ArrayList<>(expected);
+        for (Object item : array) {
+            if (!(item instanceof JSONArray words)) {
+                return null;
+            }
+            List<String> keywords = words.stream().map(String::valueOf).map(String::trim).filter(StrUtil::isNotBlank).toList();
+            if (keywords.isEmpty()) {
+                return null;
+            }
+            result.add(String.join(", ", keywords));
+        }
+        return result;
+    }
+}
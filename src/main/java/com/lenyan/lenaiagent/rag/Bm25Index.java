@@ -0,0 +1,237 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 内存倒排索引，按 BM25 打分的关键词检索
+ * 中文按单字加相邻二字切分（与 Lucene CJK 分词思路一致，无需词典），英文和数字按连续字符切分并转小写
+ */
+public class Bm25Index {
+
+    /**
+     * 检索结果
+     *
+     * @param document   文档
+     * @param score      BM25 得分
+     * @param confidence 文档覆盖的查询词按 IDF 加权的比例，取值 [0, 1]，不受文档长度影响
+     */
+    public record Hit(Document document, double score, double confidence) {
+    }
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // 只作为单字时过滤的虚词，二字组合中保留
+    private static final Set<String> STOP_CHARS = Set.of("的", "了", "是", "在", "和", "也", "就", "都", "而", "及",
+            "与", "着", "吗", "呢", "吧", "啊", "呀", "么", "我", "你", "他", "她", "它", "们", "这", "那", "有", "很");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int[] lengths = new int[64];
+    private long totalLength;
+    private int liveCount;
+
+    /**
+     * 倒排表：行号和词频按追加顺序存放，df 只统计未删除的文档
+     */
+    private static final class Postings {
+        private int[] rows = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+        private int df;
+
+        private void add(int row, int frequency) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            rows[size] = row;
+            frequencies[size] = frequency;
+            size++;
+            df++;
+        }
+    }
+
+    /**
+     * 添加文档，ID 已存在时先删除旧文档
+     */
+    public void add(Collection<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : documents) {
+                Integer existing = rowById.get(document.getId());
+                if (existing != null) {
+                    remove(existing);
+                }
+                int row = this.documents.size();
+                this.documents.add(document);
+                rowById.put(document.getId(), row);
+                Map<String, Integer> frequencies = termFrequencies(document.getText());
+                int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+                if (row == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, row * 2);
+                }
+                lengths[row] = length;
+                totalLength += length;
+                liveCount++;
+                frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> new Postings()).add(row, frequency));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer row = rowById.get(id);
+                if (row != null) {
+                    remove(row);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(int row) {
+        Document document = documents.get(row);
+        rowById.remove(document.getId());
+        deleted.set(row);
+        totalLength -= lengths[row];
+        liveCount--;
+        termFrequencies(document.getText()).keySet().forEach(term -> postings.get(term).df--);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 关键词检索
+     *
+     * @param query  查询文本
+     * @param topK   返回数量
+     * @param filter 元信息过滤条件，为 null 表示不过滤
+     * @return 按得分从高到低排列的结果
+     */
+    public List<Hit> search(String query, int topK, Predicate<Map<String, Object>> filter) {
+        Set<String> terms = termFrequencies(query).keySet();
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0 || terms.isEmpty()) {
+                return List.of();
+            }
+            double avgLength = Math.max(1.0, (double) totalLength / liveCount);
+            Map<Integer, Double> scores = new HashMap<>();
+            Map<Integer, Double> covered = new HashMap<>();
+            double totalIdf = 0;
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                int df = list == null ? 0 : list.df;
+                double idf = Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+                totalIdf += idf;
+                if (df == 0) {
+                    continue;
+                }
+                for (int i = 0; i < list.size; i++) {
+                    int row = list.rows[i];
+                    if (deleted.get(row)) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    double norm = K1 * (1 - B + B * lengths[row] / avgLength);
+                    scores.merge(row, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                    covered.merge(row, idf, Double::sum);
+                }
+            }
+            double idfSum = totalIdf;
+            return scores.entrySet().stream()
+                    .filter(entry -> filter == null || filter.test(documents.get(entry.getKey()).getMetadata()))
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue(Comparator.reverseOrder()))
+                    .limit(topK)
+                    .map(entry -> new Hit(documents.get(entry.getKey()), entry.getValue(),
+                            covered.get(entry.getKey()) / idfSum))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 统计文本中各词的出现次数
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    /**
+     * 分词：中文输出单字和相邻二字，其它字母数字按连续片段输出
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        int[] codePoints = normalized.codePoints().toArray();
+        int i = 0;
+        while (i < codePoints.length) {
+            int codePoint = codePoints[i];
+            if (isHan(codePoint)) {
+                int start = i;
+                while (i < codePoints.length && isHan(codePoints[i])) {
+                    i++;
+                }
+                for (int j = start; j < i; j++) {
+                    String unigram = Character.toString(codePoints[j]);
+                    if (!STOP_CHARS.contains(unigram)) {
+                        tokens.add(unigram);
+                    }
+                    if (j + 1 < i) {
+                        tokens.add(unigram + Character.toString(codePoints[j + 1]));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < codePoints.length && Character.isLetterOrDigit(codePoints[i]) && !isHan(codePoints[i])) {
+                    i++;
+                }
+                tokens.add(new String(codePoints, start, i - start));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isHan(int codePoint) {
+        return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+    }
+}
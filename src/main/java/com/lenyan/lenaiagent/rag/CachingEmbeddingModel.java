@@ -0,0 +1,443 @@
+package com.lenyan.lenaiagent.rag;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 带缓存的向量模型装饰器
+ * 以规范化文本（NFKC、去首尾空白、合并连续空白）和模型参数的哈希为键：
+ * 内存 LRU -> 可选的磁盘层（定长记录紧凑存储 float 向量，按条数轮换）-> 被装饰的模型；
+ * 并发请求同一文本时只调用一次模型，其余请求等待同一结果
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    public static final int DEFAULT_DISK_MAX_ENTRIES = 20_000;
+
+    private final EmbeddingModel delegate;
+    private final LinkedHashMap<String, float[]> memory;
+    private final DiskTier disk;
+    private final Map<String, CompletableFuture<float[]>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, int capacity, String diskDir, MeterRegistry meterRegistry) {
+        this(delegate, capacity, diskDir, DEFAULT_DISK_MAX_ENTRIES, meterRegistry);
+    }
+
+    /**
+     * @param capacity       内存中缓存的向量数
+     * @param diskDir        磁盘层目录，为 null 时不启用
+     * @param diskMaxEntries 磁盘层每代文件的记录数，最多保留两代
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, int capacity, String diskDir, int diskMaxEntries,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        // 访问顺序的 LinkedHashMap，超出容量时淘汰最久未访问的向量
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.disk = diskDir == null ? null : DiskTier.open(new File(diskDir), diskMaxEntries);
+        this.hitCounter = Counter.builder("embedding.cache.hit")
+                .description("向量缓存命中次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("embedding.cache.miss")
+                .description("向量缓存未命中、实际调用模型的文本数")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("embedding.cache.coalesced")
+                .description("合并到进行中请求的文本数")
+                .register(meterRegistry);
+        log.info("初始化向量缓存，内存容量: {}，磁盘层: {}", capacity, diskDir == null ? "未启用" : diskDir);
+    }
+
+    /**
+     * 磁盘层中的向量数，未启用时为 0
+     */
+    int getDiskEntryCount() {
+        return disk == null ? 0 : disk.size();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的键 -> 在请求中的位置
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        Map<String, String> missingTexts = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = cacheKey(texts.get(i), request.getOptions());
+            float[] vector = lookup(key);
+            if (vector != null) {
+                hitCounter.increment();
+                vectors[i] = vector;
+            } else {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                missingTexts.putIfAbsent(key, texts.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, CompletableFuture<float[]>> futures = new LinkedHashMap<>();
+            List<String> owned = new ArrayList<>();
+            for (String key : missing.keySet()) {
+                CompletableFuture<float[]> created = new CompletableFuture<>();
+                CompletableFuture<float[]> existing = inflight.putIfAbsent(key, created);
+                if (existing == null) {
+                    owned.add(key);
+                    futures.put(key, created);
+                } else {
+                    coalescedCounter.increment();
+                    futures.put(key, existing);
+                }
+            }
+            if (!owned.isEmpty()) {
+                embedOwned(owned, missingTexts, futures, request.getOptions());
+            }
+            missing.forEach((key, positions) -> {
+                float[] vector = await(futures.get(key));
+                positions.forEach(i -> vectors[i] = vector);
+            });
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * 与 DashScope 默认行为一致，按 EMBED 模式拼接元信息后向量化
+     */
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    /**
+     * 将本次请求负责的文本合并为一次模型调用
+     */
+    private void embedOwned(List<String> owned, Map<String, String> texts,
+                            Map<String, CompletableFuture<float[]>> futures, EmbeddingOptions options) {
+        missCounter.increment(owned.size());
+        try {
+            List<String> batch = owned.stream().map(texts::get).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(batch, options));
+            for (Embedding embedding : response.getResults()) {
+                String key = owned.get(embedding.getIndex());
+                store(key, embedding.getOutput());
+                futures.get(key).complete(embedding.getOutput());
+            }
+            // 对已完成的 future 无效果，只作用于模型漏返回的文本
+            owned.forEach(key -> futures.get(key).completeExceptionally(
+                    new IllegalStateException("向量模型未返回该文本的结果")));
+        } catch (RuntimeException e) {
+            owned.forEach(key -> futures.get(key).completeExceptionally(e));
+            throw e;
+        } finally {
+            // 已写入缓存后再移除，之后的请求直接命中缓存
+            owned.forEach(inflight::remove);
+        }
+    }
+
+    private float[] lookup(String key) {
+        synchronized (memory) {
+            float[] vector = memory.get(key);
+            if (vector != null) {
+                return vector;
+            }
+        }
+        if (disk == null) {
+            return null;
+        }
+        float[] vector = disk.read(key);
+        if (vector != null) {
+            synchronized (memory) {
+                memory.put(key, vector);
+            }
+        }
+        return vector;
+    }
+
+    private void store(String key, float[] vector) {
+        synchronized (memory) {
+            memory.put(key, vector);
+        }
+        if (disk != null) {
+            disk.write(key, vector);
+        }
+    }
+
+    private static float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    static String cacheKey(String text, EmbeddingOptions options) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+        String prefix = options == null ? "" : options.getModel() + ":" + options.getDimensions();
+        return DigestUtil.sha256Hex(prefix + "\u0000" + normalized);
+    }
+
+    /**
+     * 磁盘层：按代轮换的追加写文件 embeddings-<代号>.bin，记录为 [32字节键][维度 int][float 向量]，
+     * 内存只保存键到偏移的映射。当前代写满 maxEntries 条后转为上一代并新开一代，更早的一代被删除，
+     * 磁盘占用和偏移表都不超过 2 * maxEntries 条；上一代命中的向量重新写入当前代，常用向量不会随轮换丢失
+     */
+    private static class DiskTier {
+        private static final Pattern GENERATION_FILE = Pattern.compile("embeddings-(\\d+)\\.bin");
+
+        private final File dir;
+        private final int maxEntries;
+        private volatile Generation current;
+        private volatile Generation previous;
+
+        private DiskTier(File dir, int maxEntries) {
+            this.dir = dir;
+            this.maxEntries = maxEntries;
+        }
+
+        private static DiskTier open(File dir, int maxEntries) {
+            dir.mkdirs();
+            DiskTier tier = new DiskTier(dir, maxEntries);
+            // 旧版本的单文件缓存没有上限，直接删除
+            FileUtil.del(new File(dir, "embeddings.bin"));
+            List<Long> generations = new ArrayList<>();
+            String[] names = dir.list();
+            for (String name : names == null ? new String[0] : names) {
+                Matcher matcher = GENERATION_FILE.matcher(name);
+                if (matcher.matches()) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+            generations.sort(null);
+            // 只保留最新的两代
+            for (int i = 0; i < generations.size() - 2; i++) {
+                FileUtil.del(tier.fileOf(generations.get(i)));
+            }
+            int count = generations.size();
+            if (count >= 2) {
+                tier.previous = Generation.open(tier.fileOf(generations.get(count - 2)), generations.get(count - 2));
+            }
+            long latest = count >= 1 ? generations.get(count - 1) : 0;
+            tier.current = Generation.open(tier.fileOf(latest), latest);
+            return tier;
+        }
+
+        private File fileOf(long generation) {
+            return new File(dir, "embeddings-" + generation + ".bin");
+        }
+
+        private float[] read(String key) {
+            float[] vector = current.read(key);
+            if (vector != null) {
+                return vector;
+            }
+            Generation older = previous;
+            vector = older == null ? null : older.read(key);
+            if (vector != null) {
+                write(key, vector);
+            }
+            return vector;
+        }
+
+        private synchronized void write(String key, float[] vector) {
+            if (current.offsets.containsKey(key)) {
+                return;
+            }
+            if (current.offsets.size() >= maxEntries) {
+                rotate();
+            }
+            current.append(key, vector);
+        }
+
+        /**
+         * 当前代转为上一代并新开一代，删除原来的上一代，调用方持有锁
+         */
+        private void rotate() {
+            Generation dropped = previous;
+            Generation next = Generation.open(fileOf(current.generation + 1), current.generation + 1);
+            previous = current;
+            current = next;
+            if (dropped != null) {
+                dropped.close();
+                FileUtil.del(dropped.file);
+            }
+            log.info("向量缓存轮换到第 {} 代", next.generation);
+        }
+
+        private synchronized int size() {
+            return current.offsets.size() + (previous == null ? 0 : previous.offsets.size());
+        }
+
+        private synchronized void close() {
+            current.close();
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    /**
+     * 磁盘层的一代缓存文件
+     */
+    private static class Generation {
+        private static final int KEY_BYTES = 32;
+        private static final int HEADER_BYTES = KEY_BYTES + Integer.BYTES;
+
+        private final File file;
+        private final long generation;
+        private final FileChannel channel;
+        private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+        private long size;
+
+        private Generation(File file, long generation, FileChannel channel) {
+            this.file = file;
+            this.generation = generation;
+            this.channel = channel;
+        }
+
+        private static Generation open(File file, long generation) {
+            try {
+                Generation opened = new Generation(file, generation, FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                opened.scan();
+                return opened;
+            } catch (IOException e) {
+                throw new IllegalStateException("打开向量缓存文件失败: " + file, e);
+            }
+        }
+
+        /**
+         * 扫描已有记录建立偏移表，截断末尾不完整的记录
+         */
+        private void scan() throws IOException {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long position = 0;
+            while (position + HEADER_BYTES <= fileSize) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                byte[] key = new byte[KEY_BYTES];
+                header.get(key);
+                long next = position + HEADER_BYTES + (long) header.getInt() * Float.BYTES;
+                if (next > fileSize) {
+                    break;
+                }
+                offsets.put(HexUtil.encodeHexStr(key), position);
+                position = next;
+            }
+            if (position < fileSize) {
+                log.warn("向量缓存文件末尾存在不完整记录，已截断");
+                channel.truncate(position);
+            }
+            size = position;
+        }
+
+        private float[] read(String key) {
+            Long offset = offsets.get(key);
+            if (offset == null) {
+                return null;
+            }
+            try {
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                channel.read(header, offset + KEY_BYTES);
+                header.flip();
+                ByteBuffer data = ByteBuffer.allocate(header.getInt() * Float.BYTES);
+                while (data.hasRemaining()) {
+                    if (channel.read(data, offset + HEADER_BYTES + data.position()) < 0) {
+                        return null;
+                    }
+                }
+                data.flip();
+                float[] vector = new float[data.remaining() / Float.BYTES];
+                data.asFloatBuffer().get(vector);
+                return vector;
+            } catch (ClosedChannelException e) {
+                // 读取期间这一代已被轮换删除
+                return null;
+            } catch (IOException e) {
+                log.warn("读取向量缓存失败，按未命中处理", e);
+                return null;
+            }
+        }
+
+        private void append(String key, float[] vector) {
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + vector.length * Float.BYTES);
+            record.put(HexUtil.decodeHex(key)).putInt(vector.length);
+            record.asFloatBuffer().put(vector);
+            record.position(record.capacity()).flip();
+            try {
+                long position = size;
+                while (record.hasRemaining()) {
+                    channel.write(record, position + record.position());
+                }
+                size += record.capacity();
+                offsets.put(key, position);
+            } catch (IOException e) {
+                log.warn("写入向量缓存失败", e);
+            }
+        }
+
+        private void close() {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                log.error("关闭向量缓存文件失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.lenyan.lenaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 分阶段并行的文档入库流水线
+ * 读取 -> 切分 -> 筛选 -> 关键词增强 -> 批量向量化，各阶段之间是有界队列，每个阶段有独立的并行度；
+ * 增强和向量化按批次合并请求，并分别按各自上游模型的令牌桶限流（按请求计）；
+ * 增强器在一批内可能发起多次请求时，应由增强器自行限流，不设置 enrichRateLimiter。
+ * 单个文档或批次失败只记入失败数，不影响其它文档
+ */
+@Slf4j
+public class DocumentIngestionPipeline {
+
+    /**
+     * 入库结果
+     *
+     * @param sources       处理的数据源数
+     * @param stored        写入的文档数
+     * @param failed        失败的文档数
+     * @param elapsedMillis 耗时
+     */
+    public record IngestionResult(int sources, int stored, int failed, long elapsedMillis) {
+    }
+
+    // 队列结束标记
+    private static final Object END = new Object();
+    // 批次未满时等待后续文档的时间
+    private static final long BATCH_LINGER_MILLIS = 50;
+
+    private final EmbeddingModel embeddingModel;
+    private final UnaryOperator<List<Document>> splitter;
+    private final UnaryOperator<List<Document>> enricher;
+    private final TokenBucketRateLimiter enrichRateLimiter;
+    private final TokenBucketRateLimiter embedRateLimiter;
+    private final int readParallelism;
+    private final int splitParallelism;
+    private final int enrichParallelism;
+    private final int embedParallelism;
+    private final int queueCapacity;
+    private final int enrichBatchSize;
+    private final int embedBatchSize;
+
+    private DocumentIngestionPipeline(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.splitter = builder.splitter;
+        this.enricher = builder.enricher;
+        this.enrichRateLimiter = builder.enrichRateLimiter;
+        this.embedRateLimiter = builder.embedRateLimiter;
+        this.readParallelism = builder.readParallelism;
+        this.splitParallelism = builder.splitParallelism;
+        this.enrichParallelism = builder.enrichParallelism;
+        this.embedParallelism = builder.embedParallelism;
+        this.queueCapacity = builder.queueCapacity;
+        this.enrichBatchSize = builder.enrichBatchSize;
+        this.embedBatchSize = builder.embedBatchSize;
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    /**
+     * 执行一次入库，阻塞直到全部阶段结束
+     *
+     * @param sources  数据源，如 Markdown 资源
+     * @param reader   将数据源读取为文档
+     * @param selector 切分后对每个文档的筛选和改写，返回 null 表示跳过（如内容未变化）
+     * @param sink     接收向量化完成的文档和对应向量，可能被多个线程同时调用
+     */
+    public <S> IngestionResult ingest(List<S> sources, Function<S, List<Document>> reader,
+                                      UnaryOperator<Document> selector, BiConsumer<List<Document>, List<float[]>> sink) {
+        long start = System.currentTimeMillis();
+        AtomicInteger stored = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        BlockingQueue<Object> sourceQueue = new ArrayBlockingQueue<>(sources.size() + readParallelism);
+        BlockingQueue<Object> splitQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> enrichQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> embedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        sourceQueue.addAll(sources);
+        for (int i = 0; i < readParallelism; i++) {
+            sourceQueue.add(END);
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        this.<S>startStage("read", readParallelism, sourceQueue, splitQueue, splitParallelism, workers, failed,
+                (source, emit) -> emit.accept(reader.apply(source)));
+        this.<List<Document>>startStage("split", splitParallelism, splitQueue, enrichQueue, enrichParallelism, workers,
+                failed, (documents, emit) -> {
+                    for (Document document : splitter.apply(documents)) {
+                        Document selected = selector.apply(document);
+                        if (selected != null) {
+                            emit.accept(selected);
+                        }
+                    }
+                });
+        startBatchStage("enrich", enrichParallelism, enrichBatchSize, enrichQueue, embedQueue, embedParallelism,
+                workers, failed, (batch, emit) -> {
+                    acquire(enrichRateLimiter);
+                    enricher.apply(batch).forEach(emit);
+                });
+        startBatchStage("embed", embedParallelism, embedBatchSize, embedQueue, null, 0, workers, failed,
+                (batch, emit) -> {
+                    acquire(embedRateLimiter);
+                    // 与 embed(Document) 一致，按 EMBED 模式拼接元信息
+                    List<String> texts = batch.stream()
+                            .map(document -> document.getFormattedContent(MetadataMode.EMBED))
+                            .toList();
+                    sink.accept(batch, embeddingModel.embed(texts));
+                    stored.addAndGet(batch.size());
+                });
+
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("文档入库被中断");
+        }
+        IngestionResult result = new IngestionResult(sources.size(), stored.get(), failed.get(),
+                System.currentTimeMillis() - start);
+        log.info("文档入库完成: {}", result);
+        return result;
+    }
+
+    /**
+     * 启动一个阶段的工作线程，最后一个线程退出时向下游发送结束标记
+     */
+    @SuppressWarnings("unchecked")
+    private <I> void startStage(String name, int parallelism, BlockingQueue<Object> input, BlockingQueue<Object> output,
+                                int downstreamParallelism, List<Thread> workers, AtomicInteger failed,
+                                BiConsumer<I, Consumer<Object>> work) {
+        AtomicInteger running = new AtomicInteger(parallelism);
+        Consumer<Object> emit = item -> put(output, item);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(Thread.ofVirtual().name("ingest-" + name + "-" + i).start(() -> {
+                try {
+                    Object item;
+                    while ((item = input.take()) != END) {
+                        try {
+                            work.accept((I) item, emit);
+                        } catch (CancellationException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            log.warn("文档入库 {} 阶段处理失败", name, e);
+                        }
+                    }
+                } catch (InterruptedException | CancellationException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        // 下游队列可能已满，需阻塞写入结束标记
+                        for (int j = 0; j < downstreamParallelism; j++) {
+                            put(output, END);
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * 启动按批处理的阶段：攒够一批或短暂等待无新文档时处理一次，一批算作一次上游请求
+     *
+     * @param output 下游队列，为 null 表示最后一个阶段
+     */
+    private void startBatchStage(String name, int parallelism, int batchSize, BlockingQueue<Object> input,
+                                 BlockingQueue<Object> output, int downstreamParallelism, List<Thread> workers,
+                                 AtomicInteger failed, BiConsumer<List<Document>, Consumer<Object>> work) {
+        AtomicInteger running = new AtomicInteger(parallelism);
+        Consumer<Object> emit = item -> put(output, item);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(Thread.ofVirtual().name("ingest-" + name + "-" + i).start(() -> {
+                List<Document> batch = new ArrayList<>();
+                try {
+                    boolean done = false;
+                    while (!done) {
+                        Object item = batch.isEmpty() ? input.take() : input.poll(BATCH_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                        if (item == END) {
+                            done = true;
+                        } else if (item != null) {
+                            batch.add((Document) item);
+                        }
+                        if (!batch.isEmpty() && (done || item == null || batch.size() >= batchSize)) {
+                            try {
+                                work.accept(batch, emit);
+                            } catch (CancellationException e) {
+                                throw e;
+                            } catch (Exception e) {
+                                failed.addAndGet(batch.size());
+                                log.warn("文档入库 {} 阶段处理失败，共 {} 个文档", name, batch.size(), e);
+                            }
+                            batch = new ArrayList<>();
+                        }
+                    }
+                } catch (InterruptedException | CancellationException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0 && output != null) {
+                        for (int j = 0; j < downstreamParallelism; j++) {
+                            put(output, END);
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    private static void acquire(TokenBucketRateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            rateLimiter.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("等待限流时被中断");
+        }
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("写入入库队列时被中断");
+        }
+    }
+
+    public static final class Builder {
+
+        private final EmbeddingModel embeddingModel;
+        private UnaryOperator<List<Document>> splitter = UnaryOperator.identity();
+        private UnaryOperator<List<Document>> enricher = UnaryOperator.identity();
+        private TokenBucketRateLimiter enrichRateLimiter;
+        private TokenBucketRateLimiter embedRateLimiter;
+        private int readParallelism = 4;
+        private int splitParallelism = 2;
+        private int enrichParallelism = 8;
+        private int embedParallelism = 2;
+        private int queueCapacity = 256;
+        // 增强器按批调用时单次请求的文档数
+        private int enrichBatchSize = 1;
+        // DashScope 文本向量接口单次最多 25 条
+        private int embedBatchSize = 25;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+        }
+
+        public Builder splitter(UnaryOperator<List<Document>> splitter) {
+            this.splitter = splitter;
+            return this;
+        }
+
+        public Builder enricher(UnaryOperator<List<Document>> enricher) {
+            this.enricher = enricher;
+            return this;
+        }
+
+        public Builder enrichRateLimiter(TokenBucketRateLimiter enrichRateLimiter) {
+            this.enrichRateLimiter = enrichRateLimiter;
+            return this;
+        }
+
+        public Builder embedRateLimiter(TokenBucketRateLimiter embedRateLimiter) {
+            this.embedRateLimiter = embedRateLimiter;
+            return this;
+        }
+
+        public Builder readParallelism(int readParallelism) {
+            this.readParallelism = readParallelism;
+            return this;
+        }
+
+        public Builder splitParallelism(int splitParallelism) {
+            this.splitParallelism = splitParallelism;
+            return this;
+        }
+
+        public Builder enrichParallelism(int enrichParallelism) {
+            this.enrichParallelism = enrichParallelism;
+            return this;
+        }
+
+        public Builder embedParallelism(int embedParallelism) {
+            this.embedParallelism = embedParallelism;
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder enrichBatchSize(int enrichBatchSize) {
+            this.enrichBatchSize = enrichBatchSize;
+            return this;
+        }
+
+        public Builder embedBatchSize(int embedBatchSize) {
+            this.embedBatchSize = embedBatchSize;
+            return this;
+        }
+
+        public DocumentIngestionPipeline build() {
+            if (readParallelism <= 0 || splitParallelism <= 0 || enrichParallelism <= 0 || embedParallelism <= 0) {
+                throw new IllegalArgumentException("各阶段并行度必须大于0");
+            }
+            return new DocumentIngestionPipeline(this);
+        }
+    }
+}
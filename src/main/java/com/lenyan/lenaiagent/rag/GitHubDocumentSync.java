@@ -0,0 +1,186 @@
+package com.lenyan.lenaiagent.rag;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.lenyan.lenaiagent.constant.FileConstant;
+import com.lenyan.lenaiagent.rag.documentreader.GitHubDocumentLoader;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GitHub 文档定时增量同步
+ * 开启 rag.github-sync.enabled 后，定期把仓库指定目录下的文本文档切分、补充关键词后同步到恋爱大师的向量库和关键词索引；
+ * 同步的块连同向量保存在本地文件，启动时先导入再按清单增量同步，重启不会重新下载未变化的文件
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rag.github-sync.enabled", havingValue = "true")
+public class GitHubDocumentSync implements GitHubDocumentLoader.SyncTarget {
+
+    private static final String SYNC_DIR = FileConstant.FILE_SAVE_DIR + "/vector-index/github-sync";
+
+    private final OffHeapVectorStore vectorStore;
+    private final Bm25Index keywordIndex;
+    private final EmbeddingModel embeddingModel;
+    private final MyTokenTextSplitter splitter;
+    private final BatchKeywordMetadataEnricher enricher;
+    // 已同步的块及其向量，随清单一起持久化
+    private final IndexedVectorStore chunkStore;
+    private final File storeFile;
+    private final File manifestFile;
+    private final GitHubDocumentLoader loader;
+    private final String path;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "github-document-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public GitHubDocumentSync(OffHeapVectorStore loveAppVectorStore, Bm25Index loveAppKeywordIndex,
+                              EmbeddingModel cachingEmbeddingModel, MyTokenTextSplitter myTokenTextSplitter,
+                              MyKeywordEnricher myKeywordEnricher,
+                              @Value("${rag.ingest.enrich-rate:5}") double enrichRate,
+                              @Value("${documentreader.token.github:}") String token,
+                              @Value("${rag.github-sync.owner}") String owner,
+                              @Value("${rag.github-sync.repo}") String repo,
+                              @Value("${rag.github-sync.branch:main}") String branch,
+                              @Value("${rag.github-sync.path:}") String path,
+                              @Value("${rag.github-sync.extensions:md,markdown,txt}") Set<String> extensions,
+                              @Value("${rag.github-sync.interval-ms:3600000}") long intervalMillis) {
+        this(loveAppVectorStore, loveAppKeywordIndex, cachingEmbeddingModel, myTokenTextSplitter,
+                myKeywordEnricher.batchEnricher(new TokenBucketRateLimiter(enrichRate, Math.max(1, (int) enrichRate))),
+                GitHubDocumentLoader.builder()
+                        .gitHub(connect(token))
+                        .owner(owner)
+                        .repo(repo)
+                        .branch(branch)
+                        .syncExtensions(extensions)
+                        .build(),
+                path, intervalMillis, new File(SYNC_DIR));
+    }
+
+    GitHubDocumentSync(OffHeapVectorStore vectorStore, Bm25Index keywordIndex, EmbeddingModel embeddingModel,
+                       MyTokenTextSplitter splitter, BatchKeywordMetadataEnricher enricher,
+                       GitHubDocumentLoader loader, String path, long intervalMillis, File dir) {
+        this.vectorStore = vectorStore;
+        this.keywordIndex = keywordIndex;
+        this.embeddingModel = embeddingModel;
+        this.splitter = splitter;
+        this.enricher = enricher;
+        this.chunkStore = new IndexedVectorStore(embeddingModel);
+        this.storeFile = new File(dir, "chunks.json");
+        this.manifestFile = new File(dir, "manifest.json");
+        this.loader = loader;
+        this.path = path;
+        this.intervalMillis = intervalMillis;
+    }
+
+    private static GitHub connect(String token) {
+        try {
+            return StrUtil.isBlank(token) ? GitHub.connectAnonymously()
+                    : new GitHubBuilder().withOAuthToken(token).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建 GitHub 客户端失败", e);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        restore();
+        scheduler.scheduleWithFixedDelay(this::sync, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 导入上次同步保存的块；块文件缺失或损坏时删除清单，下次同步全量下载
+     */
+    void restore() {
+        if (storeFile.exists()) {
+            try {
+                chunkStore.load(storeFile);
+                List<Document> documents = new ArrayList<>();
+                List<float[]> embeddings = new ArrayList<>();
+                chunkStore.forEach((document, embedding) -> {
+                    documents.add(document);
+                    embeddings.add(embedding);
+                });
+                vectorStore.addEmbedded(documents, embeddings);
+                keywordIndex.add(documents);
+                log.info("导入已同步的 GitHub 文档块 {} 个", documents.size());
+                return;
+            } catch (Exception e) {
+                log.warn("GitHub 同步块文件损坏，将全量同步: {}", storeFile, e);
+            }
+        }
+        FileUtil.del(manifestFile);
+    }
+
+    /**
+     * 执行一次同步，失败时等待下个周期重试
+     */
+    void sync() {
+        try {
+            loader.syncTo(this, path, manifestFile);
+        } catch (Exception e) {
+            log.warn("GitHub 文档同步失败，下个周期重试", e);
+        }
+    }
+
+    @Override
+    public List<Document> split(Document document) {
+        return enricher.apply(splitter.splitCustomized(List.of(document)));
+    }
+
+    @Override
+    public void upsert(List<Document> chunks) {
+        // 先算好一个文件的全部向量，失败时不会只写入部分块
+        List<float[]> embeddings = chunks.stream().map(embeddingModel::embed).toList();
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkStore.put(chunks.get(i), embeddings.get(i));
+        }
+        vectorStore.addEmbedded(chunks, embeddings);
+        keywordIndex.add(chunks);
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        chunkStore.delete(ids);
+        vectorStore.delete(ids);
+        keywordIndex.delete(ids);
+    }
+
+    /**
+     * 先保存块文件再由加载器写清单，清单记录的文件一定能从块文件恢复
+     */
+    @Override
+    public void commit() {
+        FileUtil.mkParentDirs(storeFile);
+        File tmpFile = new File(storeFile.getPath() + ".tmp");
+        FileUtil.del(tmpFile);
+        chunkStore.save(tmpFile);
+        FileUtil.rename(tmpFile, storeFile.getName(), true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,163 @@
+package com.lenyan.lenaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 关键词与向量混合检索器
+ * 先查 BM25 倒排索引，最佳结果足够可信时直接返回，省去一次查询向量化；
+ * 否则再做向量检索，两路结果按倒数排名融合（RRF）后取前 topK
+ */
+@Slf4j
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    private final VectorStore vectorStore;
+    private final Bm25Index keywordIndex;
+    private final Filter.Expression filterExpression;
+    private final Predicate<Map<String, Object>> filterPredicate;
+    private final double similarityThreshold;
+    private final int topK;
+    private final int candidateK;
+    private final int rrfK;
+    private final double lexicalConfidence;
+
+    private HybridDocumentRetriever(Builder builder) {
+        this.vectorStore = builder.vectorStore;
+        this.keywordIndex = builder.keywordIndex;
+        this.filterExpression = builder.filterExpression;
+        this.filterPredicate = builder.filterExpression == null ? null : MetadataFilter.toPredicate(builder.filterExpression);
+        this.similarityThreshold = builder.similarityThreshold;
+        this.topK = builder.topK;
+        this.candidateK = Math.max(builder.candidateK, builder.topK);
+        this.rrfK = builder.rrfK;
+        this.lexicalConfidence = builder.lexicalConfidence;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        List<Bm25Index.Hit> lexical = keywordIndex.search(query.text(), candidateK, filterPredicate);
+        if (!lexical.isEmpty() && lexical.get(0).confidence() >= lexicalConfidence) {
+            log.debug("关键词检索置信度 {}，跳过向量检索", lexical.get(0).confidence());
+            return lexical.stream()
+                    .limit(topK)
+                    .map(hit -> hit.document().mutate().score(hit.score()).build())
+                    .toList();
+        }
+
+        SearchRequest.Builder request = SearchRequest.builder()
+                .query(query.text())
+                .topK(candidateK)
+                .similarityThreshold(similarityThreshold);
+        if (filterExpression != null) {
+            request.filterExpression(filterExpression);
+        }
+        List<Document> semantic = vectorStore.similaritySearch(request.build());
+        return fuse(lexical.stream().map(Bm25Index.Hit::document).toList(), semantic);
+    }
+
+    /**
+     * 倒数排名融合：每路结果按 1 / (rrfK + 名次) 计分后相加
+     */
+    private List<Document> fuse(List<Document> lexical, List<Document> semantic) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Document> ranking : List.of(lexical, semantic)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documents.size());
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(topK)
+                .forEach(entry -> fused.add(documents.get(entry.getKey()).mutate().score(entry.getValue()).build()));
+        return fused;
+    }
+
+    public static final class Builder {
+
+        private VectorStore vectorStore;
+        private Bm25Index keywordIndex;
+        private Filter.Expression filterExpression;
+        private double similarityThreshold = SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL;
+        private int topK = SearchRequest.DEFAULT_TOP_K;
+        // 每路参与融合的候选数
+        private int candidateK = 20;
+        private int rrfK = 60;
+        private double lexicalConfidence = 0.75;
+
+        private Builder() {
+        }
+
+        public Builder vectorStore(VectorStore vectorStore) {
+            this.vectorStore = vectorStore;
+            return this;
+        }
+
+        public Builder keywordIndex(Bm25Index keywordIndex) {
+            this.keywordIndex = keywordIndex;
+            return this;
+        }
+
+        public Builder filterExpression(Filter.Expression filterExpression) {
+            this.filterExpression = filterExpression;
+            return this;
+        }
+
+        public Builder similarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+            return this;
+        }
+
+        public Builder topK(int topK) {
+            this.topK = topK;
+            return this;
+        }
+
+        public Builder candidateK(int candidateK) {
+            this.candidateK = candidateK;
+            return this;
+        }
+
+        public Builder rrfK(int rrfK) {
+            this.rrfK = rrfK;
+            return this;
+        }
+
+        /**
+         * 关键词检索最佳结果的置信度达到该值时跳过向量检索，大于 1 表示总是做向量检索
+         */
+        public Builder lexicalConfidence(double lexicalConfidence) {
+            this.lexicalConfidence = lexicalConfidence;
+            return this;
+        }
+
+        public HybridDocumentRetriever build() {
+            if (vectorStore == null || keywordIndex == null) {
+                throw new IllegalArgumentException("vectorStore 和 keywordIndex 不能为空");
+            }
+            if (topK <= 0) {
+                throw new IllegalArgumentException("topK 必须大于0");
+            }
+            return new HybridDocumentRetriever(this);
+        }
+    }
+}
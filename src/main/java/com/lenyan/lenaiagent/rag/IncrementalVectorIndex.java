@@ -0,0 +1,235 @@
+package com.lenyan.lenaiagent.rag;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 持久化的增量向量索引
+ * 以文档内容哈希作为文档 ID，向量库（JSON）和已索引哈希清单保存在本地目录；
+ * 启动时加载已有索引，只对哈希发生变化的文档做增强和向量化，并移除已不存在的文档；
+ * 清单同时记录每个哈希所属的数据源，数据源读取失败时保留它原有的文档
+ */
+@Slf4j
+public class IncrementalVectorIndex {
+
+    private static final String STORE_FILE = "vector-store.json";
+    private static final String MANIFEST_FILE = "vector-store.manifest";
+    // 读取阶段临时附加在文档上的数据源标识，计算哈希和入库前移除
+    private static final String SOURCE_KEY = "__ingest_source";
+
+    private final EmbeddingModel embeddingModel;
+    private final File storeFile;
+    private final File manifestFile;
+
+    public IncrementalVectorIndex(EmbeddingModel embeddingModel, String dir) {
+        this.embeddingModel = embeddingModel;
+        this.storeFile = new File(dir, STORE_FILE);
+        this.manifestFile = new File(dir, MANIFEST_FILE);
+    }
+
+    /**
+     * 加载索引并与当前文档同步
+     *
+     * @param documents 当前的全部文档（未增强）
+     * @param enricher  对新增文档做的增强处理，如补充关键词
+     * @return 与当前文档一致的向量库
+     */
+    public SimpleVectorStore load(List<Document> documents, UnaryOperator<List<Document>> enricher) {
+        long start = System.currentTimeMillis();
+        Map<String, String> indexed = new HashMap<>();
+        IndexedVectorStore vectorStore = restore(indexed);
+
+        // 内容相同的文档只保留一份
+        Map<String, Document> current = new LinkedHashMap<>();
+        for (Document document : documents) {
+            String hash = contentHash(document);
+            current.putIfAbsent(hash, withId(hash, document));
+        }
+
+        List<String> removed = indexed.keySet().stream().filter(hash -> !current.containsKey(hash)).toList();
+        List<Document> added = new ArrayList<>();
+        current.forEach((hash, document) -> {
+            if (!indexed.containsKey(hash)) {
+                added.add(document);
+            }
+        });
+
+        if (!removed.isEmpty()) {
+            vectorStore.delete(removed);
+        }
+        if (!added.isEmpty()) {
+            vectorStore.add(enricher.apply(added));
+        }
+        if (!removed.isEmpty() || !added.isEmpty() || !manifestFile.exists()) {
+            Map<String, String> hashes = new LinkedHashMap<>();
+            current.keySet().forEach(hash -> hashes.put(hash, null));
+            save(vectorStore, hashes);
+        }
+        log.info("向量索引加载完成，共 {} 篇文档，新增 {}，移除 {}，耗时 {}ms",
+                current.size(), added.size(), removed.size(), System.currentTimeMillis() - start);
+        return vectorStore;
+    }
+
+    /**
+     * 通过入库流水线加载索引并与数据源同步
+     * 切分后的文档在流水线中按哈希筛选，只有新增文档进入增强和向量化阶段；
+     * 处理失败的文档不写入清单，下次启动时重试。只移除读取成功或已不存在的数据源中消失的文档，
+     * 读取失败的数据源保留原有文档。数据源以 toString 区分
+     *
+     * @param sources  当前的全部数据源
+     * @param reader   将数据源读取为文档
+     * @param pipeline 入库流水线
+     * @return 与当前文档一致的向量库
+     */
+    public <S> SimpleVectorStore load(List<S> sources, Function<S, List<Document>> reader,
+                                      DocumentIngestionPipeline pipeline) {
+        Map<String, String> indexed = new HashMap<>();
+        IndexedVectorStore vectorStore = restore(indexed);
+        Set<String> sourceKeys = new HashSet<>();
+        sources.forEach(source -> sourceKeys.add(String.valueOf(source)));
+        Set<String> readSources = ConcurrentHashMap.newKeySet();
+        Map<String, String> current = new ConcurrentHashMap<>();
+        Set<String> added = ConcurrentHashMap.newKeySet();
+
+        DocumentIngestionPipeline.IngestionResult result = pipeline.ingest(sources, source -> {
+            String sourceKey = String.valueOf(source);
+            List<Document> documents = reader.apply(source).stream().map(document -> {
+                Map<String, Object> metadata = new LinkedHashMap<>(document.getMetadata());
+                metadata.put(SOURCE_KEY, sourceKey);
+                return Document.builder().id(document.getId()).text(document.getText()).metadata(metadata).build();
+            }).toList();
+            readSources.add(sourceKey);
+            return documents;
+        }, document -> {
+            Map<String, Object> metadata = new LinkedHashMap<>(document.getMetadata());
+            String sourceKey = Objects.toString(metadata.remove(SOURCE_KEY), "");
+            Document stripped = Document.builder().text(document.getText()).metadata(metadata).build();
+            String hash = contentHash(stripped);
+            // 内容相同的文档只保留一份，已索引的文档跳过
+            if (current.putIfAbsent(hash, sourceKey) != null || indexed.containsKey(hash)) {
+                return null;
+            }
+            return withId(hash, stripped);
+        }, (documents, embeddings) -> {
+            for (int i = 0; i < documents.size(); i++) {
+                vectorStore.put(documents.get(i), embeddings.get(i));
+                added.add(documents.get(i).getId());
+            }
+        });
+
+        // 未记录数据源的旧清单条目只在全部数据源读取成功时移除
+        boolean allRead = readSources.size() == sourceKeys.size();
+        Map<String, String> kept = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        indexed.forEach((hash, sourceKey) -> {
+            boolean unread = sourceKey == null ? !allRead
+                    : sourceKeys.contains(sourceKey) && !readSources.contains(sourceKey);
+            if (current.containsKey(hash) || unread) {
+                kept.put(hash, current.getOrDefault(hash, sourceKey));
+            } else {
+                removed.add(hash);
+            }
+        });
+        if (!removed.isEmpty()) {
+            vectorStore.delete(removed);
+        }
+        if (!removed.isEmpty() || !added.isEmpty() || !manifestFile.exists()) {
+            added.forEach(hash -> kept.put(hash, current.get(hash)));
+            save(vectorStore, kept);
+        }
+        log.info("向量索引加载完成，共 {} 篇文档，新增 {}，移除 {}，失败 {}，读取失败的数据源 {}",
+                current.size(), added.size(), removed.size(), result.failed(), sourceKeys.size() - readSources.size());
+        return vectorStore;
+    }
+
+    /**
+     * 将已加载的文档和向量导入另一个向量库，不调用向量模型，也不重新读取索引文件
+     *
+     * @param loaded load 返回的向量库
+     */
+    public void copyTo(SimpleVectorStore loaded, OffHeapVectorStore target) {
+        if (!(loaded instanceof IndexedVectorStore indexedVectorStore)) {
+            throw new IllegalArgumentException("只能导入 load 返回的向量库");
+        }
+        List<Document> documents = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        indexedVectorStore.forEach((document, embedding) -> {
+            documents.add(document);
+            embeddings.add(embedding);
+        });
+        target.addEmbedded(documents, embeddings);
+    }
+
+    /**
+     * 文档内容哈希：正文加排序后的元信息
+     */
+    static String contentHash(Document document) {
+        return DigestUtil.sha256Hex(document.getText() + "\u0000" + new TreeMap<>(document.getMetadata()));
+    }
+
+    /**
+     * 恢复已持久化的向量库和已索引哈希及其数据源，文件损坏时返回空库
+     */
+    private IndexedVectorStore restore(Map<String, String> indexed) {
+        IndexedVectorStore vectorStore = new IndexedVectorStore(embeddingModel);
+        if (storeFile.exists() && manifestFile.exists()) {
+            try {
+                vectorStore.load(storeFile);
+                for (String line : FileUtil.readLines(manifestFile, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    int tab = line.indexOf('\t');
+                    indexed.put(tab < 0 ? line : line.substring(0, tab), tab < 0 ? null : line.substring(tab + 1));
+                }
+            } catch (Exception e) {
+                log.warn("向量索引文件损坏，将重新构建: {}", storeFile, e);
+                vectorStore = new IndexedVectorStore(embeddingModel);
+                indexed.clear();
+            }
+        }
+        return vectorStore;
+    }
+
+    private static Document withId(String hash, Document document) {
+        return Document.builder()
+                .id(hash)
+                .text(document.getText())
+                .metadata(new LinkedHashMap<>(document.getMetadata()))
+                .build();
+    }
+
+    /**
+     * 先写向量库再写清单，中途失败时下次启动最多重复向量化部分文档
+     * 清单每行为 哈希 或 哈希\t数据源
+     */
+    private void save(SimpleVectorStore vectorStore, Map<String, String> hashes) {
+        FileUtil.mkParentDirs(storeFile);
+        File tmpFile = new File(storeFile.getPath() + ".tmp");
+        FileUtil.del(tmpFile);
+        vectorStore.save(tmpFile);
+        FileUtil.rename(tmpFile, storeFile.getName(), true);
+        List<String> lines = new ArrayList<>(hashes.size());
+        hashes.forEach((hash, sourceKey) -> lines.add(sourceKey == null ? hash : hash + "\t" + sourceKey));
+        FileUtil.writeLines(lines, manifestFile, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+
+import java.io.File;
+import java.util.function.BiConsumer;
+
+/**
+ * 支持直接写入已算好向量的 SimpleVectorStore，用于持久化文档和向量
+ */
+class IndexedVectorStore extends SimpleVectorStore {
+
+    IndexedVectorStore(EmbeddingModel embeddingModel) {
+        super(SimpleVectorStore.builder(embeddingModel));
+    }
+
+    synchronized void put(Document document, float[] embedding) {
+        store.put(document.getId(), new SimpleVectorStoreContent(document.getId(), document.getText(),
+                document.getMetadata(), embedding));
+    }
+
+    @Override
+    public synchronized void save(File file) {
+        super.save(file);
+    }
+
+    synchronized void forEach(BiConsumer<Document, float[]> consumer) {
+        store.forEach((id, content) -> consumer.accept(
+                Document.builder().id(id).text(content.getText()).metadata(content.getMetadata()).build(),
+                content.getEmbedding()));
+    }
+}
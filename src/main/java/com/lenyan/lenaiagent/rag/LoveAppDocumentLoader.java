@@ -9,6 +9,7 @@ import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,25 +29,39 @@ public class LoveAppDocumentLoader {
      */
     public List<Document> loadMarkdowns() {
         List<Document> allDocuments = new ArrayList<>();
+        for (Resource resource : getMarkdownResources()) {
+            allDocuments.addAll(readMarkdown(resource));
+        }
+        return allDocuments;
+    }
+
+    /**
+     * 获取全部 Markdown 文档资源
+     * 列举失败时抛出异常，而不是返回空列表，避免增量索引把全部文档当作已删除
+     */
+    public List<Resource> getMarkdownResources() {
         try {
-            Resource[] resources = resourcePatternResolver.getResources("classpath:document/*.md");
-            for (Resource resource : resources) {
-                String filename = resource.getFilename();
-                // 提取文档倒数第 3 和第 2 个字作为标签
-                String status = filename.substring(filename.length() - 6, filename.length() - 4);
-                MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
-                        .withHorizontalRuleCreateDocument(true)
-                        .withIncludeCodeBlock(false)
-                        .withIncludeBlockquote(false)
-                        .withAdditionalMetadata("filename", filename)
-                        .withAdditionalMetadata("status", status)
-                        .build();
-                MarkdownDocumentReader markdownDocumentReader = new MarkdownDocumentReader(resource, config);
-                allDocuments.addAll(markdownDocumentReader.get());
-            }
+            return List.of(resourcePatternResolver.getResources("classpath:document/*.md"));
         } catch (IOException e) {
-            log.error("Markdown 文档加载失败", e);
+            throw new UncheckedIOException("Markdown 文档列举失败", e);
         }
-        return allDocuments;
+    }
+
+    /**
+     * 读取单篇 Markdown 文档
+     */
+    public List<Document> readMarkdown(Resource resource) {
+        String filename = resource.getFilename();
+        // 提取文档倒数第 3 和第 2 个字作为标签
+        String status = filename.substring(filename.length() - 6, filename.length() - 4);
+        MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
+                .withHorizontalRuleCreateDocument(true)
+                .withIncludeCodeBlock(false)
+                .withIncludeBlockquote(false)
+                .withAdditionalMetadata("filename", filename)
+                .withAdditionalMetadata("status", status)
+                .build();
+        MarkdownDocumentReader markdownDocumentReader = new MarkdownDocumentReader(resource, config);
+        return markdownDocumentReader.get();
     }
 }
@@ -2,6 +2,7 @@ package com.lenyan.lenaiagent.rag;
 
 import org.springframework.ai.chat.client.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
 import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.vectorstore.VectorStore;
@@ -38,4 +39,25 @@ public class LoveAppRagCustomAdvisorFactory {
                 .queryAugmenter(LoveAppContextualQueryAugmenterFactory.createInstance())
                 .build();
     }
+
+    /**
+     * 创建关键词与向量混合检索的 RAG 检索增强顾问
+     *
+     * @param vectorStore  向量存储
+     * @param keywordIndex 关键词倒排索引
+     * @return 混合检索的 RAG 检索增强顾问
+     */
+    public static Advisor createLoveAppHybridRagAdvisor(VectorStore vectorStore, Bm25Index keywordIndex) {
+        DocumentRetriever documentRetriever = HybridDocumentRetriever.builder()
+                .vectorStore(vectorStore)
+                .keywordIndex(keywordIndex)
+                .topK(4) // 返回文档数量，与 QuestionAnswerAdvisor 默认一致
+                .build();
+
+        return RetrievalAugmentationAdvisor.builder()
+                .documentRetriever(documentRetriever)
+                // 与 QuestionAnswerAdvisor 一致，没有检索到文档时照常回答
+                .queryAugmenter(ContextualQueryAugmenter.builder().allowEmptyContext(true).build())
+                .build();
+    }
 }
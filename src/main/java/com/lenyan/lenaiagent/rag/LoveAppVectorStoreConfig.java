@@ -1,17 +1,16 @@
 package com.lenyan.lenaiagent.rag;
 
+import cn.hutool.core.util.StrUtil;
+import com.lenyan.lenaiagent.constant.FileConstant;
 import jakarta.annotation.Resource;
-import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.List;
-
 /**
- * 恋爱大师向量数据库配置（初始化基于内存的向量数据库 Bean）
+ * 恋爱大师向量数据库配置（初始化基于堆外内存的向量数据库 Bean）
  */
 @Configuration
 public class LoveAppVectorStoreConfig {
@@ -25,17 +24,77 @@ public class LoveAppVectorStoreConfig {
     @Resource
     private MyKeywordEnricher myKeywordEnricher;
 
+    // 为空时使用 FILE_SAVE_DIR 下的默认目录
+    @Value("${rag.vector-index.dir:}")
+    private String vectorIndexDir;
+
+    @Value("${rag.vector-store.brute-force-threshold:10000}")
+    private int bruteForceThreshold;
+
+    @Value("${rag.ingest.read-parallelism:4}")
+    private int readParallelism;
+
+    @Value("${rag.ingest.enrich-parallelism:8}")
+    private int enrichParallelism;
+
+    @Value("${rag.ingest.embed-parallelism:2}")
+    private int embedParallelism;
+
+    @Value("${rag.ingest.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${rag.ingest.embed-batch-size:25}")
+    private int embedBatchSize;
+
+    @Value("${rag.ingest.enrich-rate:5}")
+    private double enrichRate;
+
+    @Value("${rag.ingest.embed-rate:10}")
+    private double embedRate;
+
     @Bean
-    VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(dashscopeEmbeddingModel).build();
-        // 加载文档
-        List<Document> documentList = loveAppDocumentLoader.loadMarkdowns();
-        // 自主切分文档
-//        List<Document> splitDocuments = myTokenTextSplitter.splitCustomized(documentList);
-        // 自动补充关键词元信息
-        List<Document> enrichedDocuments = myKeywordEnricher.enrichDocuments(documentList);
-        //todo 这里是存入 内存中的向量数据库
-        simpleVectorStore.add(enrichedDocuments);
-        return simpleVectorStore;
+    OffHeapVectorStore loveAppVectorStore(EmbeddingModel cachingEmbeddingModel) {
+        // 并行读取文档，补充关键词元信息并批量向量化，增强和向量化分别限流
+        // 批量增强失败时会退回逐个调用，由增强器按实际调用次数获取令牌
+        BatchKeywordMetadataEnricher enricher = myKeywordEnricher.batchEnricher(
+                new TokenBucketRateLimiter(enrichRate, Math.max(1, (int) enrichRate)));
+        DocumentIngestionPipeline pipeline = DocumentIngestionPipeline.builder(cachingEmbeddingModel)
+                // 自主切分文档
+//                .splitter(myTokenTextSplitter::splitCustomized)
+                // 多个文档合并为一次关键词提取请求
+                .enricher(enricher::apply)
+                .enrichBatchSize(myKeywordEnricher.getBatchSize())
+                .readParallelism(readParallelism)
+                .enrichParallelism(enrichParallelism)
+                .embedParallelism(embedParallelism)
+                .queueCapacity(queueCapacity)
+                .embedBatchSize(embedBatchSize)
+                .embedRateLimiter(new TokenBucketRateLimiter(embedRate, Math.max(1, (int) embedRate)))
+                .build();
+        // 从本地索引恢复，只对内容变化的文档做增强和向量化
+        IncrementalVectorIndex vectorIndex = vectorIndex(cachingEmbeddingModel);
+        SimpleVectorStore loaded = vectorIndex.load(loveAppDocumentLoader.getMarkdownResources(),
+                loveAppDocumentLoader::readMarkdown, pipeline);
+        // 检索使用堆外向量库，向量直接从已加载的索引导入
+        OffHeapVectorStore vectorStore = OffHeapVectorStore.builder(cachingEmbeddingModel)
+                .bruteForceThreshold(bruteForceThreshold)
+                .build();
+        vectorIndex.copyTo(loaded, vectorStore);
+        return vectorStore;
+    }
+
+    /**
+     * 与向量库同源的关键词倒排索引，直接使用堆外向量库中的文档
+     */
+    @Bean
+    Bm25Index loveAppKeywordIndex(OffHeapVectorStore loveAppVectorStore) {
+        Bm25Index keywordIndex = new Bm25Index();
+        keywordIndex.add(loveAppVectorStore.documents());
+        return keywordIndex;
+    }
+
+    private IncrementalVectorIndex vectorIndex(EmbeddingModel embeddingModel) {
+        return new IncrementalVectorIndex(embeddingModel,
+                StrUtil.blankToDefault(vectorIndexDir, FileConstant.FILE_SAVE_DIR + "/vector-index/love-app"));
     }
 }
@@ -0,0 +1,104 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 低基数元信息字段的位图索引
+ * 对指定字段的每个取值维护一个行号位图，检索前把过滤表达式解析为候选行集合，
+ * 只对候选行计算相似度。只索引字符串取值，其它情况交由逐行判断
+ */
+public class MetadataBitmapIndex {
+
+    /**
+     * 候选行集合
+     *
+     * @param rows  候选行
+     * @param exact 为 true 时候选行与过滤条件完全一致，无需再逐行判断
+     */
+    public record Candidates(BitSet rows, boolean exact) {
+    }
+
+    private final Set<String> fields;
+    private final Map<String, Map<String, BitSet>> bitmaps = new HashMap<>();
+
+    public MetadataBitmapIndex(Set<String> fields) {
+        this.fields = fields;
+        fields.forEach(field -> bitmaps.put(field, new HashMap<>()));
+    }
+
+    public void add(int row, Map<String, Object> metadata) {
+        for (String field : fields) {
+            if (metadata.get(field) instanceof String value) {
+                bitmaps.get(field).computeIfAbsent(value, v -> new BitSet()).set(row);
+            }
+        }
+    }
+
+    /**
+     * 将过滤表达式解析为候选行
+     *
+     * @return 候选行（可能是过滤结果的超集），表达式无法利用索引时返回 null
+     */
+    public Candidates resolve(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case EQ -> lookup(expression, List.of(((Filter.Value) expression.right()).value()));
+            case IN -> expression.right() instanceof Filter.Value value && value.value() instanceof Collection<?> values
+                    ? lookup(expression, values)
+                    : null;
+            case AND -> and(resolve(expression.left()), resolve(expression.right()));
+            case OR -> or(resolve(expression.left()), resolve(expression.right()));
+            // 否定条件的语义涉及缺失字段和非字符串取值，不走索引
+            default -> null;
+        };
+    }
+
+    private Candidates resolve(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return resolve(group.content());
+        }
+        return operand instanceof Filter.Expression expression ? resolve(expression) : null;
+    }
+
+    private Candidates lookup(Filter.Expression expression, Collection<?> values) {
+        Map<String, BitSet> index = bitmaps.get(MetadataFilter.key(expression.left()));
+        if (index == null) {
+            return null;
+        }
+        BitSet rows = new BitSet();
+        for (Object value : values) {
+            if (!(value instanceof String text)) {
+                return null;
+            }
+            BitSet matched = index.get(text);
+            if (matched != null) {
+                rows.or(matched);
+            }
+        }
+        return new Candidates(rows, true);
+    }
+
+    private static Candidates and(Candidates left, Candidates right) {
+        if (left == null || right == null) {
+            // 只有一侧可用时作为超集使用
+            Candidates one = left != null ? left : right;
+            return one == null ? null : new Candidates(one.rows(), false);
+        }
+        left.rows().and(right.rows());
+        return new Candidates(left.rows(), left.exact() && right.exact());
+    }
+
+    private static Candidates or(Candidates left, Candidates right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        left.rows().or(right.rows());
+        return new Candidates(left.rows(), left.exact() && right.exact());
+    }
+}
@@ -0,0 +1,108 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 将 Spring AI 的过滤表达式转换为元信息判断条件
+ * 支持 ==、!=、>、>=、<、<=、in、nin、and、or、not，数值按 double 比较
+ */
+public class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    public static Predicate<Map<String, Object>> toPredicate(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case AND -> toPredicate(expression.left()).and(toPredicate(expression.right()));
+            case OR -> toPredicate(expression.left()).or(toPredicate(expression.right()));
+            case NOT -> toPredicate(expression.left()).negate();
+            case EQ -> compare(expression, c -> c == 0);
+            case NE -> compare(expression, c -> c != 0);
+            case GT -> compare(expression, c -> c > 0);
+            case GTE -> compare(expression, c -> c >= 0);
+            case LT -> compare(expression, c -> c < 0);
+            case LTE -> compare(expression, c -> c <= 0);
+            case IN -> in(expression);
+            case NIN -> in(expression).negate();
+        };
+    }
+
+    /**
+     * 表达式中的键名，去掉可能存在的引号
+     */
+    public static String key(Filter.Operand operand) {
+        String key = ((Filter.Key) operand).key();
+        if (key.length() >= 2 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'"))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static Predicate<Map<String, Object>> toPredicate(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return toPredicate(group.content());
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return toPredicate(expression);
+        }
+        throw new IllegalArgumentException("不支持的过滤条件: " + operand);
+    }
+
+    private static Predicate<Map<String, Object>> compare(Filter.Expression expression, IntPredicate test) {
+        String key = key(expression.left());
+        Object expected = ((Filter.Value) expression.right()).value();
+        return metadata -> {
+            Object actual = metadata.get(key);
+            if (actual == null) {
+                // 缺失的字段只满足 !=
+                return expression.type() == Filter.ExpressionType.NE;
+            }
+            Integer result = compareValues(actual, expected);
+            if (result == null) {
+                return expression.type() == Filter.ExpressionType.NE;
+            }
+            return test.test(result);
+        };
+    }
+
+    private static Predicate<Map<String, Object>> in(Filter.Expression expression) {
+        String key = key(expression.left());
+        Object value = ((Filter.Value) expression.right()).value();
+        Collection<?> candidates = value instanceof Collection<?> collection ? collection : List.of(value);
+        return metadata -> {
+            Object actual = metadata.get(key);
+            if (actual == null) {
+                return false;
+            }
+            for (Object candidate : candidates) {
+                Integer result = compareValues(actual, candidate);
+                if (result != null && result == 0) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * 比较两个值，类型不可比较时返回 null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Integer compareValues(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        if (actual instanceof Comparable comparable && actual.getClass() == expected.getClass()) {
+            return comparable.compareTo(expected);
+        }
+        // 类型不同时退化为字符串相等判断
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected)) ? 0 : null;
+    }
+}
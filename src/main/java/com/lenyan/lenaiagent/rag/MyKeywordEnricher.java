@@ -4,6 +4,7 @@ import jakarta.annotation.Resource;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.transformer.KeywordMetadataEnricher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -17,6 +18,9 @@ public class MyKeywordEnricher {
     @Resource
     private ChatModel dashscopeChatModel;
 
+    @Value("${rag.keyword-enricher.batch-size:10}")
+    private int batchSize;
+
     /**
      * 为文档列表添加关键词元信息，提升可搜索性
      *
@@ -29,4 +33,28 @@ public class MyKeywordEnricher {
         // 执行文档增强操作
         return keywordMetadataEnricher.apply(documents);
     }
+
+    /**
+     * 为文档列表添加关键词元信息，多个文档合并为一次模型调用
+     * 批量结果解析失败时退回逐个文档调用
+     *
+     * @param documents 待增强的文档列表
+     * @return 增强后的文档列表
+     */
+    public List<Document> enrichDocumentsInBatches(List<Document> documents) {
+        return batchEnricher(null).apply(documents);
+    }
+
+    /**
+     * 批量关键词增强器，每次模型调用（包括退回后的逐个调用）各获取一个限流令牌
+     *
+     * @param rateLimiter 模型调用限流，为 null 时不限流
+     */
+    public BatchKeywordMetadataEnricher batchEnricher(TokenBucketRateLimiter rateLimiter) {
+        return new BatchKeywordMetadataEnricher(dashscopeChatModel, 5, batchSize, rateLimiter);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
 }
@@ -8,13 +8,24 @@ import java.util.List;
 
 @Component
 class MyTokenTextSplitter {
+
+    private final TokenTextSplitter defaultSplitter = new TokenTextSplitter();
+
+    // 流式切分，相邻块重叠 20 个 token
+    private final StreamingTokenTextSplitter customizedSplitter = StreamingTokenTextSplitter.builder()
+            .chunkSize(200)
+            .chunkOverlap(20)
+            .minChunkSizeChars(100)
+            .minChunkLengthToEmbed(10)
+            .maxNumChunks(5000)
+            .keepSeparator(true)
+            .build();
+
     public List<Document> splitDocuments(List<Document> documents) {
-        TokenTextSplitter splitter = new TokenTextSplitter();
-        return splitter.apply(documents);
+        return defaultSplitter.apply(documents);
     }
 
     public List<Document> splitCustomized(List<Document> documents) {
-        TokenTextSplitter splitter = new TokenTextSplitter(200, 100, 10, 5000, true);
-        return splitter.apply(documents);
+        return customizedSplitter.apply(documents);
     }
 }
@@ -0,0 +1,704 @@
+package com.lenyan.lenaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.observation.conventions.VectorStoreProvider;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 堆外存储的内存向量库
+ * 向量归一化后按行连续存放在直接内存的 float 块中，余弦相似度即点积；
+ * 文档数小于阈值时暴力扫描，达到阈值后构建 HNSW 图做近似检索。
+ * 支持 Spring AI 过滤表达式：可走位图索引的条件先解析为候选行，候选较少时只对候选行暴力扫描，
+ * 否则在 HNSW 检索中按候选位图过滤，过滤后不足 topK 时回退到暴力扫描
+ */
+@Slf4j
+public class OffHeapVectorStore extends AbstractObservationVectorStore {
+
+    public static final int DEFAULT_BRUTE_FORCE_THRESHOLD = 10000;
+    public static final Set<String> DEFAULT_INDEXED_FIELDS = Set.of("status", "filename");
+
+    // 每个直接内存块存放的向量行数
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    // 带过滤条件时扩大 HNSW 候选集
+    private static final int FILTER_EF_FACTOR = 4;
+
+    private final int bruteForceThreshold;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final List<Map<String, Object>> metadata = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final MetadataBitmapIndex bitmapIndex;
+    private int dimensions;
+    private int rows;
+    private int live;
+
+    // HNSW 图：graph[row][level] 的第 0 位为邻居数，未入图的行为 null
+    private final List<int[][]> graph = new ArrayList<>();
+    private boolean graphBuilt;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    protected OffHeapVectorStore(OffHeapVectorStoreBuilder builder) {
+        super(builder);
+        this.bruteForceThreshold = builder.bruteForceThreshold;
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+        this.bitmapIndex = new MetadataBitmapIndex(builder.indexedFields);
+    }
+
+    public static OffHeapVectorStoreBuilder builder(EmbeddingModel embeddingModel) {
+        return new OffHeapVectorStoreBuilder(embeddingModel);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        // 与 SimpleVectorStore 一致，逐个文档调用 embed(Document)
+        List<float[]> embeddings = documents.stream().map(embeddingModel::embed).toList();
+        addEmbedded(documents, embeddings);
+    }
+
+    /**
+     * 添加已有向量的文档，不再调用向量模型；ID 已存在时覆盖
+     */
+    public void addEmbedded(List<Document> documents, List<float[]> embeddings) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                Integer previous = rowById.get(document.getId());
+                if (previous != null) {
+                    deleted.set(previous);
+                    live--;
+                }
+                float[] vector = normalize(embeddings.get(i));
+                int row = appendRow(document, vector);
+                rowById.put(document.getId(), row);
+                live++;
+                if (graphBuilt) {
+                    insert(row, vector);
+                } else if (live >= bruteForceThreshold) {
+                    buildGraph();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer row = rowById.remove(id);
+                if (row != null) {
+                    // 图中的节点保留用于遍历，只是不再出现在结果中
+                    deleted.set(row);
+                    live--;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = MetadataFilter.toPredicate(filterExpression);
+        List<String> matched = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (!deleted.get(row) && filter.test(metadata.get(row))) {
+                    matched.add(ids.get(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        doDelete(matched);
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        lock.readLock().lock();
+        try {
+            if (live == 0) {
+                return new ArrayList<>();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("查询向量维度 " + query.length + " 与向量库维度 " + dimensions + " 不一致");
+            }
+            RowFilter filter = request.hasFilterExpression() ? new RowFilter(request.getFilterExpression()) : null;
+            // 候选行不多时直接对候选暴力扫描，代价与过滤后的规模成正比
+            boolean narrow = filter != null && filter.candidates != null
+                    && filter.candidates.cardinality() < bruteForceThreshold;
+            ScoredHeap top = graphBuilt && !narrow ? searchGraph(query, request.getTopK(), filter) : null;
+            if (top == null) {
+                top = bruteForce(query, request.getTopK(), filter);
+            }
+            return toDocuments(top, request.getSimilarityThreshold());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder(VectorStoreProvider.SIMPLE.value(), operationName)
+                .dimensions(dimensions)
+                .collectionName("off-heap")
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    /**
+     * 当前有效的文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前有效的全部文档（不含向量），用于构建同源的其它索引
+     */
+    public List<Document> documents() {
+        lock.readLock().lock();
+        try {
+            List<Document> documents = new ArrayList<>(live);
+            for (int row = 0; row < rows; row++) {
+                if (!deleted.get(row)) {
+                    documents.add(Document.builder()
+                            .id(ids.get(row))
+                            .text(texts.get(row))
+                            .metadata(new HashMap<>(metadata.get(row)))
+                            .build());
+                }
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 是否已切换到 HNSW 检索
+     */
+    public boolean isGraphBuilt() {
+        lock.readLock().lock();
+        try {
+            return graphBuilt;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int appendRow(Document document, float[] vector) {
+        if (dimensions == 0) {
+            dimensions = vector.length;
+        } else if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度 " + vector.length + " 与向量库维度 " + dimensions + " 不一致");
+        }
+        int row = rows++;
+        if ((row & CHUNK_MASK) == 0) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_ROWS * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer());
+        }
+        chunks.get(row >>> CHUNK_SHIFT).put((row & CHUNK_MASK) * dimensions, vector);
+        ids.add(document.getId());
+        texts.add(document.getText());
+        metadata.add(new HashMap<>(document.getMetadata()));
+        bitmapIndex.add(row, document.getMetadata());
+        return row;
+    }
+
+    // ---------------- 相似度计算 ----------------
+
+    /**
+     * 查询向量与某行的点积，四路累加便于 JIT 向量化
+     */
+    private float dot(float[] query, int row) {
+        FloatBuffer chunk = chunks.get(row >>> CHUNK_SHIFT);
+        int base = (row & CHUNK_MASK) * dimensions;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += query[i] * chunk.get(base + i);
+            s1 += query[i + 1] * chunk.get(base + i + 1);
+            s2 += query[i + 2] * chunk.get(base + i + 2);
+            s3 += query[i + 3] * chunk.get(base + i + 3);
+        }
+        for (; i < dimensions; i++) {
+            s0 += query[i] * chunk.get(base + i);
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    private float[] vector(int row) {
+        float[] vector = new float[dimensions];
+        chunks.get(row >>> CHUNK_SHIFT).get((row & CHUNK_MASK) * dimensions, vector);
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    // ---------------- 暴力扫描 ----------------
+
+    private ScoredHeap bruteForce(float[] query, int topK, RowFilter filter) {
+        ScoredHeap top = new ScoredHeap(topK + 1, false);
+        if (filter != null && filter.candidates != null) {
+            BitSet candidates = filter.candidates;
+            for (int row = candidates.nextSetBit(0); row >= 0 && row < rows; row = candidates.nextSetBit(row + 1)) {
+                if (!deleted.get(row) && (filter.exact || filter.predicate.test(metadata.get(row)))) {
+                    offer(top, row, dot(query, row), topK);
+                }
+            }
+            return top;
+        }
+        for (int row = 0; row < rows; row++) {
+            if (deleted.get(row) || filter != null && !filter.test(row)) {
+                continue;
+            }
+            offer(top, row, dot(query, row), topK);
+        }
+        return top;
+    }
+
+    private static void offer(ScoredHeap top, int row, float score, int topK) {
+        if (top.size() < topK) {
+            top.push(row, score);
+        } else if (score > top.peekScore()) {
+            top.pop();
+            top.push(row, score);
+        }
+    }
+
+    private List<Document> toDocuments(ScoredHeap top, double similarityThreshold) {
+        int size = top.size();
+        int[] resultRows = new int[size];
+        float[] scores = new float[size];
+        top.drainDescending(resultRows, scores);
+        List<Document> documents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (scores[i] < similarityThreshold) {
+                break;
+            }
+            Map<String, Object> documentMetadata = new HashMap<>(metadata.get(resultRows[i]));
+            documentMetadata.put(DocumentMetadata.DISTANCE.value(), 1.0 - scores[i]);
+            documents.add(Document.builder()
+                    .id(ids.get(resultRows[i]))
+                    .text(texts.get(resultRows[i]))
+                    .metadata(documentMetadata)
+                    .score((double) scores[i])
+                    .build());
+        }
+        return documents;
+    }
+
+    // ---------------- HNSW ----------------
+
+    private void buildGraph() {
+        long start = System.currentTimeMillis();
+        graphBuilt = true;
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                insert(row, vector(row));
+            }
+        }
+        log.info("向量库文档数达到 {}，已构建 HNSW 图，耗时 {}ms", live, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 在图上检索，过滤后不足 topK 时返回 null 交由暴力扫描
+     */
+    private ScoredHeap searchGraph(float[] query, int topK, RowFilter filter) {
+        int ef = Math.max(efSearch, topK) * (filter == null ? 1 : FILTER_EF_FACTOR);
+        int entry = entryPoint;
+        for (int level = maxLevel; level > 0; level--) {
+            entry = greedy(query, entry, level);
+        }
+        ScoredHeap candidates = searchLayer(query, entry, ef, 0);
+        ScoredHeap top = new ScoredHeap(topK + 1, false);
+        while (candidates.size() > 0) {
+            float score = candidates.peekScore();
+            int row = candidates.pop();
+            if (deleted.get(row) || filter != null && !filter.test(row)) {
+                continue;
+            }
+            offer(top, row, score, topK);
+        }
+        return top.size() < Math.min(topK, live) ? null : top;
+    }
+
+    private void insert(int row, float[] vector) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxLinks(l) + 1];
+        }
+        while (graph.size() <= row) {
+            graph.add(null);
+        }
+        graph.set(row, nodeLinks);
+        if (entryPoint < 0) {
+            entryPoint = row;
+            maxLevel = level;
+            return;
+        }
+
+        int entry = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedy(vector, entry, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoredHeap found = searchLayer(vector, entry, efConstruction, l);
+            int[] candidates = new int[found.size()];
+            float[] scores = new float[found.size()];
+            found.drainDescending(candidates, scores);
+            entry = candidates[0];
+            int[] selected = selectNeighbors(candidates, scores, m);
+            System.arraycopy(selected, 0, nodeLinks[l], 1, selected.length);
+            nodeLinks[l][0] = selected.length;
+            for (int neighbor : selected) {
+                connect(neighbor, row, l);
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = row;
+        }
+    }
+
+    /**
+     * 为已有节点添加一条边，超出上限时按启发式重新挑选邻居
+     */
+    private void connect(int node, int neighbor, int level) {
+        int[] nodeLinks = graph.get(node)[level];
+        int count = nodeLinks[0];
+        if (count < nodeLinks.length - 1) {
+            nodeLinks[count + 1] = neighbor;
+            nodeLinks[0] = count + 1;
+            return;
+        }
+        float[] nodeVector = vector(node);
+        ScoredHeap heap = new ScoredHeap(count + 1, false);
+        for (int i = 1; i <= count; i++) {
+            heap.push(nodeLinks[i], dot(nodeVector, nodeLinks[i]));
+        }
+        heap.push(neighbor, dot(nodeVector, neighbor));
+        int[] candidates = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        heap.drainDescending(candidates, scores);
+        int[] selected = selectNeighbors(candidates, scores, maxLinks(level));
+        System.arraycopy(selected, 0, nodeLinks, 1, selected.length);
+        nodeLinks[0] = selected.length;
+    }
+
+    /**
+     * 启发式选邻居：优先保留与已选邻居不相近的候选，不足时用被剪掉的候选补齐
+     *
+     * @param candidates 按与基准点相似度降序排列的候选
+     */
+    private int[] selectNeighbors(int[] candidates, float[] scores, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        boolean[] taken = new boolean[candidates.length];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            float[] candidateVector = vector(candidates[i]);
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (dot(candidateVector, selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidates[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = candidates[i];
+            }
+        }
+        return selected;
+    }
+
+    private int greedy(float[] query, int entry, int level) {
+        int current = entry;
+        float currentScore = dot(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = graph.get(current)[level];
+            for (int i = 1; i <= links[0]; i++) {
+                float score = dot(query, links[i]);
+                if (score > currentScore) {
+                    current = links[i];
+                    currentScore = score;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层的 best-first 搜索
+     *
+     * @return 至多 ef 个结果的小顶堆
+     */
+    private ScoredHeap searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(rows);
+        ScoredHeap candidates = new ScoredHeap(ef + 1, true);
+        ScoredHeap results = new ScoredHeap(ef + 1, false);
+        float entryScore = dot(query, entry);
+        visited.set(entry);
+        candidates.push(entry, entryScore);
+        results.push(entry, entryScore);
+        while (candidates.size() > 0) {
+            float score = candidates.peekScore();
+            int current = candidates.pop();
+            if (results.size() >= ef && score < results.peekScore()) {
+                break;
+            }
+            int[] links = graph.get(current)[level];
+            for (int i = 1; i <= links[0]; i++) {
+                int neighbor = links[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float neighborScore = dot(query, neighbor);
+                if (results.size() < ef || neighborScore > results.peekScore()) {
+                    candidates.push(neighbor, neighborScore);
+                    results.push(neighbor, neighborScore);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? m * 2 : m;
+    }
+
+    /**
+     * 单次检索的行过滤器：位图候选 + 逐行判断
+     */
+    private final class RowFilter {
+        private final Predicate<Map<String, Object>> predicate;
+        private final BitSet candidates;
+        private final boolean exact;
+
+        private RowFilter(Filter.Expression expression) {
+            this.predicate = MetadataFilter.toPredicate(expression);
+            MetadataBitmapIndex.Candidates resolved = bitmapIndex.resolve(expression);
+            this.candidates = resolved == null ? null : resolved.rows();
+            this.exact = resolved != null && resolved.exact();
+        }
+
+        private boolean test(int row) {
+            if (candidates != null && !candidates.get(row)) {
+                return false;
+            }
+            return exact || predicate.test(metadata.get(row));
+        }
+    }
+
+    /**
+     * 基于原始数组的二叉堆，避免比较过程中的装箱和对象分配
+     */
+    private static final class ScoredHeap {
+        private final boolean maxHeap;
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        private ScoredHeap(int capacity, boolean maxHeap) {
+            this.maxHeap = maxHeap;
+            this.nodes = new int[Math.max(capacity, 2)];
+            this.scores = new float[nodes.length];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private float peekScore() {
+            return scores[0];
+        }
+
+        private void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            nodes[i] = node;
+            scores[i] = score;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private int pop() {
+            int top = nodes[0];
+            size--;
+            nodes[0] = nodes[size];
+            scores[0] = scores[size];
+            int i = 0;
+            while (true) {
+                int left = i * 2 + 1;
+                if (left >= size) {
+                    break;
+                }
+                int child = left + 1 < size && above(left + 1, left) ? left + 1 : left;
+                if (!above(child, i)) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+            return top;
+        }
+
+        /**
+         * 按分数降序取出全部元素（仅用于小顶堆）
+         */
+        private void drainDescending(int[] outNodes, float[] outScores) {
+            for (int i = size - 1; i >= 0; i--) {
+                outScores[i] = peekScore();
+                outNodes[i] = pop();
+            }
+        }
+
+        private boolean above(int a, int b) {
+            return maxHeap ? scores[a] > scores[b] : scores[a] < scores[b];
+        }
+
+        private void swap(int a, int b) {
+            int node = nodes[a];
+            nodes[a] = nodes[b];
+            nodes[b] = node;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    public static final class OffHeapVectorStoreBuilder extends AbstractVectorStoreBuilder<OffHeapVectorStoreBuilder> {
+
+        private int bruteForceThreshold = DEFAULT_BRUTE_FORCE_THRESHOLD;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private Set<String> indexedFields = DEFAULT_INDEXED_FIELDS;
+
+        private OffHeapVectorStoreBuilder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 文档数达到该值后构建 HNSW 图
+         */
+        public OffHeapVectorStoreBuilder bruteForceThreshold(int bruteForceThreshold) {
+            this.bruteForceThreshold = bruteForceThreshold;
+            return this;
+        }
+
+        /**
+         * 每个节点在上层的最大邻居数，第 0 层为其两倍
+         */
+        public OffHeapVectorStoreBuilder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public OffHeapVectorStoreBuilder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public OffHeapVectorStoreBuilder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 建立位图索引的低基数元信息字段
+         */
+        public OffHeapVectorStoreBuilder indexedFields(Set<String> indexedFields) {
+            this.indexedFields = indexedFields;
+            return this;
+        }
+
+        @Override
+        public OffHeapVectorStore build() {
+            return new OffHeapVectorStore(this);
+        }
+    }
+}
@@ -1,26 +1,108 @@
 package com.lenyan.lenaiagent.rag;
 
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.rag.Query;
 import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
 /**
  * 查询重写器
+ * 重写结果按 LRU 缓存；短小且表述完整的查询跳过重写；
+ * 可与原始查询的检索并行执行，原始查询已能检索到结果时取消重写；等待重写最多 timeoutMillis
  */
+@Slf4j
 @Component
 public class QueryRewriter {
 
+    // 表明查询已是完整问句的疑问词
+    private static final List<String> QUESTION_WORDS = List.of("如何", "怎么", "怎样", "为什么", "为何", "什么",
+            "哪", "是否", "能否", "可以", "应该", "吗", "呢", "?", "？");
+    // 口语填充词、指代词，出现时需要重写
+    private static final List<String> VAGUE_WORDS = List.of("那个", "这个", "就是", "然后", "嗯", "呃", "额",
+            "他们", "她们", "它", "上面", "刚才", "之前说");
+    private static final Pattern REPEATED_PUNCTUATION = Pattern.compile("[!！?？。.,，~]{2,}");
+
     private final QueryTransformer queryTransformer;
+    private final int cacheSize;
+    private final int skipMaxLength;
+    private final long timeoutMillis;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // 访问顺序的 LinkedHashMap，头部为最久未访问的查询
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter cacheHitCounter;
+    private final Counter skippedCounter;
+    private final Counter rawUsedCounter;
+    private final Counter rewrittenCounter;
+    private final Counter failedCounter;
+    private final Counter timeoutCounter;
+    private final Timer rewriteTimer;
+    private final Timer savedTimer;
+    // 重写耗时的指数移动平均，用于估算省下的时间
+    private volatile double averageRewriteNanos;
 
-    public QueryRewriter(ChatModel dashscopeChatModel) {
-        ChatClient.Builder builder = ChatClient.builder(dashscopeChatModel);
+    @Autowired
+    public QueryRewriter(ChatModel dashscopeChatModel, MeterRegistry meterRegistry,
+                         @Value("${rag.query-rewrite.cache-size:1000}") int cacheSize,
+                         @Value("${rag.query-rewrite.skip-max-length:20}") int skipMaxLength,
+                         @Value("${rag.query-rewrite.timeout-ms:3000}") long timeoutMillis) {
         // 创建查询重写转换器
-        queryTransformer = RewriteQueryTransformer.builder()
-                .chatClientBuilder(builder)
-                .build();
+        this(RewriteQueryTransformer.builder()
+                .chatClientBuilder(ChatClient.builder(dashscopeChatModel))
+                .build(), meterRegistry, cacheSize, skipMaxLength, timeoutMillis);
+    }
+
+    QueryRewriter(QueryTransformer queryTransformer, MeterRegistry meterRegistry, int cacheSize, int skipMaxLength) {
+        this(queryTransformer, meterRegistry, cacheSize, skipMaxLength, 3000);
+    }
+
+    QueryRewriter(QueryTransformer queryTransformer, MeterRegistry meterRegistry, int cacheSize, int skipMaxLength,
+                  long timeoutMillis) {
+        this.queryTransformer = queryTransformer;
+        this.cacheSize = cacheSize;
+        this.skipMaxLength = skipMaxLength;
+        this.timeoutMillis = timeoutMillis;
+        this.cacheHitCounter = outcomeCounter(meterRegistry, "cache_hit");
+        this.skippedCounter = outcomeCounter(meterRegistry, "skipped");
+        this.rawUsedCounter = outcomeCounter(meterRegistry, "raw_used");
+        this.rewrittenCounter = outcomeCounter(meterRegistry, "rewritten");
+        this.failedCounter = outcomeCounter(meterRegistry, "failed");
+        this.timeoutCounter = outcomeCounter(meterRegistry, "timeout");
+        this.rewriteTimer = Timer.builder("rag.query.rewrite.latency")
+                .description("查询重写模型调用耗时")
+                .register(meterRegistry);
+        this.savedTimer = Timer.builder("rag.query.rewrite.saved")
+                .description("因缓存、跳过或并行检索省下的重写等待时间（按平均重写耗时估算）")
+                .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.query.rewrite")
+                .description("查询重写请求数，按结果分类")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     /**
@@ -30,10 +112,134 @@ public class QueryRewriter {
      * @return
      */
     public String doQueryRewrite(String prompt) {
-        Query query = new Query(prompt);
-        // 执行查询重写
-        Query transformedQuery = queryTransformer.transform(query);
-        // 输出重写后的查询
-        return transformedQuery.text();
+        return rewriteOrKeep(prompt, null);
+    }
+
+    /**
+     * 执行查询重写，与原始查询的检索并行
+     * 原始查询可用时直接返回原始查询并中断尚未完成的重写，不为用不上的结果继续占用模型调用；
+     * 重写超过 timeoutMillis 时同样中断并使用原始查询
+     *
+     * @param prompt         原始查询
+     * @param rawQueryUsable 判断原始查询能否检索到有用结果，为 null 表示总是等待重写
+     * @return 用于后续检索和对话的查询
+     */
+    public String rewriteOrKeep(String prompt, Predicate<String> rawQueryUsable) {
+        String key = normalize(prompt);
+        if (!shouldRewrite(key)) {
+            skippedCounter.increment();
+            recordSaved();
+            return prompt;
+        }
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            cacheHitCounter.increment();
+            recordSaved();
+            return cached;
+        }
+
+        Future<String> rewrite = executor.submit(() -> rewrite(key));
+        if (rawQueryUsable != null) {
+            boolean usable;
+            try {
+                usable = rawQueryUsable.test(prompt);
+            } catch (Exception e) {
+                log.warn("原始查询检索失败，等待重写结果", e);
+                usable = false;
+            }
+            if (usable && !rewrite.isDone()) {
+                rewrite.cancel(true);
+                rawUsedCounter.increment();
+                recordSaved();
+                return prompt;
+            }
+        }
+        try {
+            String rewritten = rewrite.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (rewritten == null) {
+                return prompt;
+            }
+            rewrittenCounter.increment();
+            return rewritten;
+        } catch (TimeoutException e) {
+            rewrite.cancel(true);
+            timeoutCounter.increment();
+            log.warn("查询重写超过 {}ms，使用原始查询", timeoutMillis);
+            return prompt;
+        } catch (InterruptedException e) {
+            rewrite.cancel(true);
+            Thread.currentThread().interrupt();
+            return prompt;
+        } catch (ExecutionException e) {
+            return prompt;
+        }
+    }
+
+    /**
+     * 调用模型重写并写入缓存，失败或结果为空时返回 null
+     */
+    private String rewrite(String key) {
+        long start = System.nanoTime();
+        String rewritten;
+        try {
+            rewritten = queryTransformer.transform(new Query(key)).text();
+        } catch (Exception e) {
+            // 被取消时不计为失败
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            failedCounter.increment();
+            log.warn("查询重写失败，使用原始查询", e);
+            return null;
+        }
+        long elapsed = System.nanoTime() - start;
+        rewriteTimer.record(Duration.ofNanos(elapsed));
+        double average = averageRewriteNanos;
+        averageRewriteNanos = average == 0 ? elapsed : average * 0.9 + elapsed * 0.1;
+        if (StrUtil.isBlank(rewritten) || Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        synchronized (cache) {
+            cache.put(key, rewritten);
+            if (cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+        return rewritten;
+    }
+
+    private void recordSaved() {
+        if (averageRewriteNanos > 0) {
+            savedTimer.record(Duration.ofNanos((long) averageRewriteNanos));
+        }
+    }
+
+    /**
+     * 启发式判断是否需要重写：短小、带疑问词且没有口语填充词和指代的查询视为表述完整
+     */
+    boolean shouldRewrite(String query) {
+        if (query.isEmpty()) {
+            return false;
+        }
+        if (query.codePointCount(0, query.length()) > skipMaxLength) {
+            return true;
+        }
+        if (REPEATED_PUNCTUATION.matcher(query).find() || VAGUE_WORDS.stream().anyMatch(query::contains)) {
+            return true;
+        }
+        return QUESTION_WORDS.stream().noneMatch(query::contains);
+    }
+
+    private static String normalize(String prompt) {
+        return prompt == null ? "" : prompt.trim().replaceAll("\\s+", " ");
+    }
+
+    public int cacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
     }
 }
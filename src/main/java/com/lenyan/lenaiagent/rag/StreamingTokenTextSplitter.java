@@ -0,0 +1,292 @@
+package com.lenyan.lenaiagent.rag;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentTransformer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 流式按 token 切分文本
+ * 切分规则与 TokenTextSplitter 一致（按 token 数取块，在块内最后一个句末标点处截断），另外支持块之间重叠；
+ * 每次只对当前位置之后的一小段文本编码，块以原文偏移区间表示，需要时才生成字符串，
+ * 内存占用与文档长度无关
+ */
+public class StreamingTokenTextSplitter implements DocumentTransformer {
+
+    // 编码器无状态且线程安全，所有实例和线程共用
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    // 编码窗口末尾可能截断单词，结果离窗口末尾太近时扩大窗口重新编码
+    private static final int WINDOW_MARGIN = 16;
+    private static final String SEPARATORS = ".?!\n。？！";
+
+    private final int chunkSize;
+    private final int chunkOverlap;
+    private final int minChunkSizeChars;
+    private final int minChunkLengthToEmbed;
+    private final int maxNumChunks;
+    private final boolean keepSeparator;
+
+    /**
+     * 文本块，原文 [start, end) 区间的视图
+     */
+    public record TextChunk(String source, int start, int end) implements CharSequence {
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new TextChunk(source, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source.substring(start, end);
+        }
+    }
+
+    /**
+     * 一次编码的结果：编码到的位置和 token 数
+     */
+    private record Span(int end, int tokens) {
+    }
+
+    private StreamingTokenTextSplitter(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.chunkOverlap = builder.chunkOverlap;
+        this.minChunkSizeChars = builder.minChunkSizeChars;
+        this.minChunkLengthToEmbed = builder.minChunkLengthToEmbed;
+        this.maxNumChunks = builder.maxNumChunks;
+        this.keepSeparator = builder.keepSeparator;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Document> apply(List<Document> documents) {
+        List<Document> result = new ArrayList<>();
+        for (Document document : documents) {
+            chunks(document.getText()).forEach(chunk -> {
+                Map<String, Object> metadata = document.getMetadata().entrySet().stream()
+                        .filter(entry -> entry.getKey() != null && entry.getValue() != null)
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                String text = keepSeparator ? chunk.toString() : chunk.toString().replace(System.lineSeparator(), " ");
+                Document split = new Document(text, metadata);
+                split.setContentFormatter(document.getContentFormatter());
+                result.add(split);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 惰性切分文本，每取一个块才编码下一段
+     */
+    public Stream<TextChunk> chunks(String text) {
+        if (text == null || text.isEmpty()) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ChunkIterator(text),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private final class ChunkIterator implements Iterator<TextChunk> {
+
+        private final String text;
+        private int position;
+        private int chunkCount;
+        private TextChunk next;
+
+        private ChunkIterator(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public TextChunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TextChunk chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        private TextChunk computeNext() {
+            while (position < text.length()) {
+                int start = position;
+                int end;
+                if (chunkCount >= maxNumChunks) {
+                    // 超过块数上限，剩余内容作为最后一块
+                    end = text.length();
+                    position = end;
+                } else {
+                    Span span = encode(text, start, chunkSize);
+                    end = cutAtSeparator(start, span.end());
+                    position = nextStart(start, end, end == span.end() ? span.tokens() : -1);
+                }
+                TextChunk chunk = trim(start, end);
+                if (chunk.length() == 0) {
+                    continue;
+                }
+                chunkCount++;
+                if (chunk.length() > minChunkLengthToEmbed) {
+                    return chunk;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 不在文本末尾时，截断到块内最后一个句末标点之后
+         */
+        private int cutAtSeparator(int start, int end) {
+            if (end >= text.length()) {
+                return end;
+            }
+            for (int i = end - 1; i > start + minChunkSizeChars; i--) {
+                if (SEPARATORS.indexOf(text.charAt(i)) >= 0) {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+
+        /**
+         * 下一块的起点：从本块末尾回退 chunkOverlap 个 token
+         *
+         * @param tokens 本块的 token 数，未知时为 -1
+         */
+        private int nextStart(int start, int end, int tokens) {
+            if (chunkOverlap == 0 || end >= text.length()) {
+                return end;
+            }
+            if (tokens < 0) {
+                tokens = ENCODING.countTokensOrdinary(text.substring(start, end));
+            }
+            int advance = tokens - chunkOverlap;
+            if (advance <= 0) {
+                return end;
+            }
+            int next = encode(text, start, advance).end();
+            return Math.min(Math.max(next, start + 1), end);
+        }
+
+        private TextChunk trim(int start, int end) {
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return new TextChunk(text, start, end);
+        }
+    }
+
+    /**
+     * 从 start 开始编码至多 maxTokens 个 token，只复制有限长度的窗口，不足时逐步扩大
+     */
+    private static Span encode(String text, int start, int maxTokens) {
+        int window = Math.max(maxTokens * 4, 64);
+        while (true) {
+            int windowEnd = (int) Math.min(text.length(), (long) start + window);
+            EncodingResult result = ENCODING.encodeOrdinary(text.substring(start, windowEnd), maxTokens);
+            boolean reachedEnd = windowEnd == text.length();
+            if (reachedEnd && !result.isTruncated()) {
+                return new Span(windowEnd, result.getTokens().size());
+            }
+            int end = start + result.getLastProcessedCharacterIndex() + 1;
+            if (reachedEnd || (result.isTruncated() && windowEnd - end > WINDOW_MARGIN)) {
+                // 单个字符就超过 maxTokens 时至少前进一个字符
+                return new Span(Math.max(end, start + Character.charCount(text.codePointAt(start))),
+                        result.getTokens().size());
+            }
+            window *= 2;
+        }
+    }
+
+    public static final class Builder {
+
+        private int chunkSize = 800;
+        private int chunkOverlap = 0;
+        private int minChunkSizeChars = 350;
+        private int minChunkLengthToEmbed = 5;
+        private int maxNumChunks = 10000;
+        private boolean keepSeparator = true;
+
+        private Builder() {
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * 相邻块重叠的 token 数
+         */
+        public Builder chunkOverlap(int chunkOverlap) {
+            this.chunkOverlap = chunkOverlap;
+            return this;
+        }
+
+        public Builder minChunkSizeChars(int minChunkSizeChars) {
+            this.minChunkSizeChars = minChunkSizeChars;
+            return this;
+        }
+
+        public Builder minChunkLengthToEmbed(int minChunkLengthToEmbed) {
+            this.minChunkLengthToEmbed = minChunkLengthToEmbed;
+            return this;
+        }
+
+        public Builder maxNumChunks(int maxNumChunks) {
+            this.maxNumChunks = maxNumChunks;
+            return this;
+        }
+
+        public Builder keepSeparator(boolean keepSeparator) {
+            this.keepSeparator = keepSeparator;
+            return this;
+        }
+
+        public StreamingTokenTextSplitter build() {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("chunkSize 必须大于0");
+            }
+            if (chunkOverlap < 0 || chunkOverlap >= chunkSize) {
+                throw new IllegalArgumentException("chunkOverlap 必须在 [0, chunkSize) 之间");
+            }
+            return new StreamingTokenTextSplitter(this);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.lenyan.lenaiagent.rag;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流器
+ * 按固定速率补充令牌，桶容量决定允许的突发量；令牌不足时阻塞等待
+ */
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private double available;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param burst            桶容量
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("限流速率和桶容量必须大于0");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = burst;
+        this.available = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取令牌，不足时阻塞直到补充足够
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            // 先预支令牌，等待时间由欠下的令牌数决定，保证先到先得
+            available -= Math.min(permits, capacity);
+            waitNanos = available >= 0 ? 0 : (long) (-available / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 尝试获取令牌，不等待
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        refill();
+        if (available >= permits) {
+            available -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
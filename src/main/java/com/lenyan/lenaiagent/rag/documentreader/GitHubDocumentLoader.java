@@ -1,18 +1,38 @@
 package com.lenyan.lenaiagent.rag.documentreader;
 
+import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.lang.Assert;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GHFileNotFoundException;
 import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTree;
+import org.kohsuke.github.GHTreeEntry;
 import org.kohsuke.github.GitHub;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,10 +43,16 @@ import java.util.stream.Stream;
 @Slf4j
 public class GitHubDocumentLoader {
 
+    private static final int DEFAULT_SYNC_CONCURRENCY = 8;
+    // 增量同步默认只处理的文本文件扩展名
+    public static final Set<String> DEFAULT_SYNC_EXTENSIONS = Set.of("md", "markdown", "txt");
+
     private final GitHub gitHub;
     private final String owner;
     private final String repo;
     private final String branch;
+    private final int syncConcurrency;
+    private final Set<String> syncExtensions;
     private String defaultBranch; // 缓存默认分支
 
     /**
@@ -38,13 +64,46 @@ public class GitHubDocumentLoader {
      * @param branch 分支名称
      */
     public GitHubDocumentLoader(GitHub gitHub, String owner, String repo, String branch) {
+        this(gitHub, owner, repo, branch, DEFAULT_SYNC_CONCURRENCY);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param gitHub          GitHub客户端实例
+     * @param owner           仓库所有者
+     * @param repo            仓库名称
+     * @param branch          分支名称
+     * @param syncConcurrency 增量同步时并行下载文件的最大数量
+     */
+    public GitHubDocumentLoader(GitHub gitHub, String owner, String repo, String branch, int syncConcurrency) {
+        this(gitHub, owner, repo, branch, syncConcurrency, DEFAULT_SYNC_EXTENSIONS);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param gitHub          GitHub客户端实例
+     * @param owner           仓库所有者
+     * @param repo            仓库名称
+     * @param branch          分支名称
+     * @param syncConcurrency 增量同步时并行下载文件的最大数量
+     * @param syncExtensions  增量同步处理的文件扩展名（不含点，不区分大小写）
+     */
+    public GitHubDocumentLoader(GitHub gitHub, String owner, String repo, String branch, int syncConcurrency,
+                                Set<String> syncExtensions) {
         Assert.notNull(gitHub, "GitHub实例不能为空");
         Assert.notNull(owner, "仓库所有者不能为空");
         Assert.notNull(repo, "仓库名称不能为空");
+        Assert.isTrue(syncConcurrency > 0, "并行下载数必须大于0");
+        Assert.notEmpty(syncExtensions, "同步的文件扩展名不能为空");
         this.gitHub = gitHub;
         this.owner = owner;
         this.repo = repo;
         this.branch = branch != null ? branch : "main";
+        this.syncConcurrency = syncConcurrency;
+        this.syncExtensions = syncExtensions.stream().map(extension -> extension.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     /**
@@ -104,6 +163,341 @@ public class GitHubDocumentLoader {
         }
     }
 
+    /**
+     * 增量同步目录到向量库，向量库需按文档 ID 覆盖已有文档，每个文件作为一个文档
+     *
+     * @param vectorStore  目标向量库
+     * @param path         目录路径
+     * @param manifestFile 本地清单文件，记录上次同步的树 SHA 和各文件的 blob SHA
+     * @return 同步结果
+     */
+    public SyncResult syncTo(VectorStore vectorStore, String path, File manifestFile) {
+        return syncTo(vectorStore::add, vectorStore::delete, path, manifestFile);
+    }
+
+    /**
+     * 增量同步目录，每个文件作为一个文档
+     *
+     * @param upsert       写入文档，ID 已存在时覆盖
+     * @param delete       按 ID 删除文档，ID 不存在时忽略
+     * @param path         目录路径
+     * @param manifestFile 本地清单文件，记录上次同步的树 SHA 和各文件的 blob SHA
+     * @return 同步结果
+     */
+    public SyncResult syncTo(Consumer<List<Document>> upsert, Consumer<List<String>> delete, String path,
+                             File manifestFile) {
+        return syncTo(new SyncTarget() {
+            @Override
+            public void upsert(List<Document> chunks) {
+                upsert.accept(chunks);
+            }
+
+            @Override
+            public void delete(List<String> ids) {
+                delete.accept(ids);
+            }
+        }, path, manifestFile);
+    }
+
+    /**
+     * 增量同步目录
+     * 只调用一次 Git Tree 接口获取全部文件的 blob SHA，与本地清单比较后并行下载有变化的文件，只处理 syncExtensions 中的扩展名；
+     * 文件经 target 切分为块，块 ID 由仓库、路径和块序号决定，变化的文件按 ID 覆盖并删除多出的旧块，随后移除已删除文件的全部块。
+     * 单个文件写入失败不影响其它文件，清单只记录写入成功的文件，失败的文件下次同步时重试；
+     * target 提交成功后才更新清单，写入和删除都可重复执行
+     *
+     * @param target       同步目标
+     * @param path         目录路径
+     * @param manifestFile 本地清单文件，记录上次同步的树 SHA 和各文件的 blob SHA、块数
+     * @return 同步结果
+     */
+    public SyncResult syncTo(SyncTarget target, String path, File manifestFile) {
+        long start = System.currentTimeMillis();
+        String prefix = normalizePath(path);
+        SyncManifest manifest = SyncManifest.read(manifestFile);
+        GHRepository repository;
+        GHTree tree;
+        try {
+            repository = getRepository();
+            tree = loadTreeWithBranchFallback(repository);
+        } catch (IOException e) {
+            log.error("获取仓库文件树失败: {}/{}", owner, repo);
+            throw new RuntimeException("获取仓库文件树失败: " + owner + "/" + repo, e);
+        }
+        if (tree.getSha().equals(manifest.treeSha) && prefix.equals(manifest.path)) {
+            log.info("仓库 {}/{} 文件树未变化，跳过同步", owner, repo);
+            return new SyncResult(0, 0, 0, manifest.files.size(), 0, System.currentTimeMillis() - start);
+        }
+
+        Map<String, String> current = new LinkedHashMap<>();
+        for (GHTreeEntry entry : tree.getTree()) {
+            if ("blob".equals(entry.getType()) && isUnder(entry.getPath(), prefix) && isSyncable(entry.getPath())) {
+                current.put(entry.getPath(), entry.getSha());
+            }
+        }
+        List<String> changed = current.entrySet().stream()
+                .filter(entry -> manifest.files.get(entry.getKey()) == null
+                        || !entry.getValue().equals(manifest.files.get(entry.getKey()).sha()))
+                .map(Map.Entry::getKey)
+                .toList();
+        // 文件树被截断时无法判断哪些文件已删除
+        List<String> removed = tree.isTruncated() ? List.of() : manifest.files.keySet().stream()
+                .filter(filePath -> !current.containsKey(filePath))
+                .toList();
+        if (tree.isTruncated()) {
+            log.warn("仓库 {}/{} 文件树过大被截断，本次不处理删除", owner, repo);
+        }
+
+        // 下载或写入失败的文件保留旧记录（或不记录），下次同步时重试
+        Map<String, FileEntry> synced = new LinkedHashMap<>(manifest.files);
+        // 写入成功的文件 -> 本次的块数
+        Map<String, Integer> written = new LinkedHashMap<>();
+        List<String> deleteIds = new ArrayList<>();
+        int added = 0;
+        int updated = 0;
+        // 先逐个文件覆盖写入，再删除多出的旧块和已删除的文件
+        for (Document document : downloadAll(repository, changed, current)) {
+            String filePath = (String) document.getMetadata().get("github_file_path");
+            FileEntry previous = manifest.files.get(filePath);
+            List<Document> chunks;
+            try {
+                chunks = chunks(filePath, target.split(document));
+                if (!chunks.isEmpty()) {
+                    target.upsert(chunks);
+                }
+            } catch (RuntimeException e) {
+                log.warn("写入文件失败，下次同步时重试: {}", filePath, e);
+                continue;
+            }
+            int previousChunks = previous == null ? 0 : previous.chunks();
+            deleteIds.addAll(chunkIds(filePath, chunks.size(), previousChunks));
+            written.put(filePath, chunks.size());
+            // 旧块删除成功前按较大的块数记录，文件删除时能一并清理
+            synced.put(filePath, new FileEntry(current.get(filePath), Math.max(chunks.size(), previousChunks)));
+            if (previous == null) {
+                added++;
+            } else {
+                updated++;
+            }
+        }
+        removed.forEach(filePath -> deleteIds.addAll(chunkIds(filePath, 0, manifest.files.get(filePath).chunks())));
+        boolean deletedAll = true;
+        if (!deleteIds.isEmpty()) {
+            try {
+                target.delete(deleteIds);
+            } catch (RuntimeException e) {
+                log.warn("删除旧文档失败，下次同步时重试", e);
+                deletedAll = false;
+            }
+        }
+        if (deletedAll) {
+            removed.forEach(synced::remove);
+            written.forEach((filePath, chunks) -> synced.put(filePath, new FileEntry(current.get(filePath), chunks)));
+        }
+        target.commit();
+
+        int succeeded = added + updated;
+        boolean complete = succeeded == changed.size() && deletedAll && !tree.isTruncated();
+        new SyncManifest(complete ? tree.getSha() : null, prefix, synced).write(manifestFile);
+
+        SyncResult result = new SyncResult(added, updated, deletedAll ? removed.size() : 0,
+                current.size() - changed.size(), changed.size() - succeeded, System.currentTimeMillis() - start);
+        log.info("仓库 {}/{} 增量同步完成: {}", owner, repo, result);
+        return result;
+    }
+
+    /**
+     * 同步目标
+     */
+    public interface SyncTarget {
+
+        /**
+         * 把一个文件切分为若干块，默认整个文件作为一块；块 ID 由加载器重新分配
+         */
+        default List<Document> split(Document document) {
+            return List.of(document);
+        }
+
+        /**
+         * 写入一个文件的全部块，ID 已存在时覆盖；抛出异常时该文件下次同步重试
+         */
+        void upsert(List<Document> chunks);
+
+        /**
+         * 按 ID 删除块，ID 不存在时忽略
+         */
+        void delete(List<String> ids);
+
+        /**
+         * 写入和删除完成后、更新清单前调用，用于持久化目标
+         */
+        default void commit() {
+        }
+    }
+
+    /**
+     * 增量同步结果
+     *
+     * @param added         新增文件数
+     * @param updated       更新文件数
+     * @param deleted       删除文件数
+     * @param unchanged     未变化文件数
+     * @param failed        下载或写入失败、下次重试的文件数
+     * @param elapsedMillis 耗时
+     */
+    public record SyncResult(int added, int updated, int deleted, int unchanged, int failed, long elapsedMillis) {
+    }
+
+    /**
+     * 为切分后的块分配固定 ID 并补充文件元信息
+     */
+    private List<Document> chunks(String filePath, List<Document> split) {
+        List<Document> chunks = new ArrayList<>(split.size());
+        for (int i = 0; i < split.size(); i++) {
+            Map<String, Object> metadata = new LinkedHashMap<>(split.get(i).getMetadata());
+            metadata.put("github_file_path", filePath);
+            metadata.put("github_chunk_index", i);
+            chunks.add(new Document(chunkId(filePath, i), split.get(i).getText(), metadata));
+        }
+        return chunks;
+    }
+
+    private List<String> chunkIds(String filePath, int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(chunkId(filePath, i));
+        }
+        return ids;
+    }
+
+    private GHTree loadTreeWithBranchFallback(GHRepository repository) throws IOException {
+        try {
+            return repository.getTreeRecursive(branch, 1);
+        } catch (GHFileNotFoundException e) {
+            String defaultBranch = getDefaultBranch();
+            if (!branch.equals(defaultBranch)) {
+                return repository.getTreeRecursive(defaultBranch, 1);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 以有限并发下载文件内容，单个文件失败不影响其它文件
+     */
+    private List<Document> downloadAll(GHRepository repository, List<String> paths, Map<String, String> shas) {
+        Semaphore permits = new Semaphore(syncConcurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Document>> futures = new ArrayList<>();
+            for (String filePath : paths) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try (InputStream in = repository.getBlob(shas.get(filePath)).read()) {
+                        return createDocument(repository, filePath, shas.get(filePath),
+                                new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    documents.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.warn("下载文件失败: {}", paths.get(i), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("下载文件被中断", e);
+                }
+            }
+            return documents;
+        }
+    }
+
+    private Document createDocument(GHRepository repository, String filePath, String sha, String text) {
+        String htmlUrl = Optional.ofNullable(repository.getHtmlUrl()).map(Object::toString).orElse("")
+                + "/blob/" + branch + "/" + filePath;
+        return new Document(documentId(filePath), text, Map.of(
+                "github_file_name", filePath.substring(filePath.lastIndexOf('/') + 1),
+                "github_file_path", filePath,
+                "github_file_sha", sha,
+                "github_html_url", htmlUrl
+        ));
+    }
+
+    /**
+     * 文档 ID：由仓库和文件路径决定的 UUID，兼容要求 UUID 主键的向量库
+     */
+    String documentId(String filePath) {
+        return chunkId(filePath, 0);
+    }
+
+    /**
+     * 块 ID：第一块与整文件文档 ID 相同，兼容按文件同步时写入的文档
+     */
+    String chunkId(String filePath, int index) {
+        String key = owner + "/" + repo + ":" + filePath + (index == 0 ? "" : "#" + index);
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private boolean isSyncable(String filePath) {
+        String name = filePath.substring(filePath.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && syncExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isUnder(String filePath, String prefix) {
+        return prefix.isEmpty() || filePath.equals(prefix) || filePath.startsWith(prefix.endsWith("/") ? prefix : prefix + "/");
+    }
+
+    /**
+     * 清单中的文件：blob SHA 及写入的块数
+     */
+    private record FileEntry(String sha, int chunks) {
+    }
+
+    /**
+     * 增量同步清单
+     */
+    private record SyncManifest(String treeSha, String path, Map<String, FileEntry> files) {
+
+        static SyncManifest read(File file) {
+            if (!file.exists()) {
+                return new SyncManifest(null, null, new LinkedHashMap<>());
+            }
+            try {
+                JSONObject json = JSONUtil.parseObj(FileUtil.readUtf8String(file));
+                Map<String, FileEntry> files = new LinkedHashMap<>();
+                JSONObject entries = json.getJSONObject("files");
+                if (entries != null) {
+                    // 旧版本清单只记录 SHA，每个文件一个文档
+                    entries.forEach((filePath, entry) -> files.put(filePath, entry instanceof JSONObject object
+                            ? new FileEntry(object.getStr("sha"), object.getInt("chunks", 1))
+                            : new FileEntry(String.valueOf(entry), 1)));
+                }
+                return new SyncManifest(json.getStr("treeSha"), json.getStr("path"), files);
+            } catch (Exception e) {
+                log.warn("同步清单损坏，将全量同步: {}", file, e);
+                return new SyncManifest(null, null, new LinkedHashMap<>());
+            }
+        }
+
+        void write(File file) {
+            JSONObject json = new JSONObject();
+            json.set("treeSha", treeSha);
+            json.set("path", path);
+            JSONObject entries = new JSONObject();
+            files.forEach((filePath, entry) -> entries.set(filePath,
+                    new JSONObject().set("sha", entry.sha()).set("chunks", entry.chunks())));
+            json.set("files", entries);
+            FileUtil.mkParentDirs(file);
+            File tmpFile = new File(file.getPath() + ".tmp");
+            FileUtil.writeUtf8String(json.toString(), tmpFile);
+            FileUtil.rename(tmpFile, file.getName(), true);
+        }
+    }
+
     private Optional<GHContent> loadContentSafely(String path) {
         try {
             return Optional.of(loadContentWithBranchFallback(path));
@@ -241,6 +635,8 @@ public class GitHubDocumentLoader {
         private String owner;
         private String repo;
         private String branch;
+        private int syncConcurrency = DEFAULT_SYNC_CONCURRENCY;
+        private Set<String> syncExtensions = DEFAULT_SYNC_EXTENSIONS;
 
         /**
          * 设置GitHub客户端实例
@@ -286,13 +682,35 @@ public class GitHubDocumentLoader {
             return this;
         }
 
+        /**
+         * 设置增量同步时并行下载文件的最大数量
+         *
+         * @param syncConcurrency 最大并行数
+         * @return Builder实例
+         */
+        public Builder syncConcurrency(int syncConcurrency) {
+            this.syncConcurrency = syncConcurrency;
+            return this;
+        }
+
+        /**
+         * 设置增量同步处理的文件扩展名
+         *
+         * @param syncExtensions 扩展名（不含点），如 md、txt
+         * @return Builder实例
+         */
+        public Builder syncExtensions(Set<String> syncExtensions) {
+            this.syncExtensions = syncExtensions;
+            return this;
+        }
+
         /**
          * 构建GitHubDocumentLoader实例
          *
          * @return GitHubDocumentLoader实例
          */
         public GitHubDocumentLoader build() {
-            return new GitHubDocumentLoader(gitHub, owner, repo, branch);
+            return new GitHubDocumentLoader(gitHub, owner, repo, branch, syncConcurrency, syncExtensions);
         }
     }
 }
@@ -29,10 +29,45 @@ public interface ChatMemoryService extends IService<ChatMemory> {
     List<Message> getMessages(String conversationId, int lastN);
 
     /**
-     * 清除会话消息（逻辑删除）
+     * 清除会话消息及其摘要（逻辑删除）
      *
      * @param conversationId 会话ID
      */
     void clearMessages(String conversationId);
 
+    /**
+     * 获取会话当前最大消息序号
+     *
+     * @param conversationId 会话ID
+     * @return 最大序号，会话为空时返回0
+     */
+    int getMaxOrder(String conversationId);
+
+    /**
+     * 获取会话最近的消息实体，按消息顺序降序
+     *
+     * @param conversationId 会话ID
+     * @param lastN          获取的消息数量
+     * @return 消息实体列表
+     */
+    List<ChatMemory> getLatestEntities(String conversationId, int lastN);
+
+    /**
+     * 将SpringAI消息转换为实体
+     *
+     * @param conversationId 会话ID
+     * @param messageOrder   消息序号
+     * @param message        消息
+     * @return 实体
+     */
+    ChatMemory toEntity(String conversationId, int messageOrder, Message message);
+
+    /**
+     * 将实体转换为SpringAI消息
+     *
+     * @param entity 实体
+     * @return 消息
+     */
+    Message toMessage(ChatMemory entity);
+
 }
@@ -0,0 +1,34 @@
+package com.lenyan.lenaiagent.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.lenyan.lenaiagent.domain.ChatMemorySummary;
+
+/**
+ * 对话摘要服务接口
+ */
+public interface ChatMemorySummaryService extends IService<ChatMemorySummary> {
+
+    /**
+     * 获取会话摘要
+     *
+     * @param conversationId 会话ID
+     * @return 摘要，没有时返回null
+     */
+    ChatMemorySummary getSummary(String conversationId);
+
+    /**
+     * 保存会话摘要，已存在时覆盖
+     *
+     * @param conversationId 会话ID
+     * @param summary        摘要内容
+     * @param coveredOrder   已并入摘要的最大消息序号
+     */
+    void saveSummary(String conversationId, String summary, int coveredOrder);
+
+    /**
+     * 清除会话摘要（逻辑删除）
+     *
+     * @param conversationId 会话ID
+     */
+    void clearSummary(String conversationId);
+}
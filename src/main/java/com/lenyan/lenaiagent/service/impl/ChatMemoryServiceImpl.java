@@ -5,8 +5,10 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.lenyan.lenaiagent.domain.ChatMemory;
 import com.lenyan.lenaiagent.mapper.ChatMemoryMapper;
 import com.lenyan.lenaiagent.service.ChatMemoryService;
+import com.lenyan.lenaiagent.service.ChatMemorySummaryService;
 import cn.hutool.json.JSONConfig;
 import cn.hutool.json.JSONUtil;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
@@ -28,6 +30,9 @@ public class ChatMemoryServiceImpl extends ServiceImpl<ChatMemoryMapper, ChatMem
 
     private final JSONConfig jsonConfig;
 
+    @Resource
+    private ChatMemorySummaryService chatMemorySummaryService;
+
     public ChatMemoryServiceImpl() {
         this.jsonConfig = new JSONConfig().setIgnoreNullValue(true);
         log.info("初始化Mybatis-Plus聊天记忆服务");
@@ -47,21 +52,7 @@ public class ChatMemoryServiceImpl extends ServiceImpl<ChatMemoryMapper, ChatMem
         // 将SpringAI消息转换为实体
         List<ChatMemory> entities = new ArrayList<>();
         for (int i = 0; i < messages.size(); i++) {
-            Message message = messages.get(i);
-            int order = nextOrder + i;
-
-            ChatMemory entity = ChatMemory.builder()
-                    .conversationId(conversationId)
-                    .messageOrder(order)
-                    .messageType(message.getMessageType().toString())
-                    .content(message.getText())
-                    .messageJson(serializeMessage(message))
-                    .createTime(new Date())
-                    .updateTime(new Date())
-                    .isDelete(false)
-                    .build();
-
-            entities.add(entity);
+            entities.add(toEntity(conversationId, nextOrder + i, messages.get(i)));
         }
 
         // 批量保存
@@ -94,11 +85,43 @@ public class ChatMemoryServiceImpl extends ServiceImpl<ChatMemoryMapper, ChatMem
     @Override
     @Transactional
     public void clearMessages(String conversationId) {
-        // 逻辑删除所有会话消息
+        // 逻辑删除所有会话消息，清空后序号从头开始，摘要一并删除，避免新对话沿用旧摘要
         int count = baseMapper.logicalDeleteByConversationId(conversationId);
+        chatMemorySummaryService.clearSummary(conversationId);
         log.info("已从会话 {} 中逻辑删除 {} 条消息", conversationId, count);
     }
 
+    @Override
+    public int getMaxOrder(String conversationId) {
+        Integer maxOrder = baseMapper.getMaxOrder(conversationId);
+        return maxOrder != null ? maxOrder : 0;
+    }
+
+    @Override
+    public List<ChatMemory> getLatestEntities(String conversationId, int lastN) {
+        return baseMapper.getLatestMessages(conversationId, lastN);
+    }
+
+    @Override
+    public ChatMemory toEntity(String conversationId, int messageOrder, Message message) {
+        Date now = new Date();
+        return ChatMemory.builder()
+                .conversationId(conversationId)
+                .messageOrder(messageOrder)
+                .messageType(message.getMessageType().toString())
+                .content(message.getText())
+                .messageJson(serializeMessage(message))
+                .createTime(now)
+                .updateTime(now)
+                .isDelete(false)
+                .build();
+    }
+
+    @Override
+    public Message toMessage(ChatMemory entity) {
+        return convertToMessage(entity);
+    }
+
     /**
      * 将消息序列化为JSON字符串
      */
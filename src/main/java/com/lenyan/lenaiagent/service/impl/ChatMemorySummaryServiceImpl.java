@@ -0,0 +1,52 @@
+package com.lenyan.lenaiagent.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.lenyan.lenaiagent.domain.ChatMemorySummary;
+import com.lenyan.lenaiagent.mapper.ChatMemorySummaryMapper;
+import com.lenyan.lenaiagent.service.ChatMemorySummaryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+
+/**
+ * 对话摘要服务实现类
+ */
+@Slf4j
+@Service
+public class ChatMemorySummaryServiceImpl extends ServiceImpl<ChatMemorySummaryMapper, ChatMemorySummary>
+        implements ChatMemorySummaryService {
+
+    @Override
+    public ChatMemorySummary getSummary(String conversationId) {
+        return baseMapper.getByConversationId(conversationId);
+    }
+
+    @Override
+    public void saveSummary(String conversationId, String summary, int coveredOrder) {
+        Date now = new Date();
+        ChatMemorySummary existing = getSummary(conversationId);
+        if (existing == null) {
+            save(ChatMemorySummary.builder()
+                    .conversationId(conversationId)
+                    .summary(summary)
+                    .coveredOrder(coveredOrder)
+                    .createTime(now)
+                    .updateTime(now)
+                    .isDelete(false)
+                    .build());
+        } else {
+            existing.setSummary(summary);
+            existing.setCoveredOrder(coveredOrder);
+            existing.setUpdateTime(now);
+            updateById(existing);
+        }
+        log.debug("已保存会话 {} 的摘要，覆盖到消息序号 {}", conversationId, coveredOrder);
+    }
+
+    @Override
+    public void clearSummary(String conversationId) {
+        int count = baseMapper.logicalDeleteByConversationId(conversationId);
+        log.debug("已从会话 {} 中逻辑删除 {} 条摘要", conversationId, count);
+    }
+}
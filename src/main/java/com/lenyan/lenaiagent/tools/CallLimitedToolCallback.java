@@ -0,0 +1,69 @@
+package com.lenyan.lenaiagent.tools;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 限制调用次数的工具
+ * 用于交给 Spring AI 内置工具调用的场景（如 ChatClient.tools），每次请求包装一次，计数随请求结束而丢弃；
+ * 超出次数的调用不执行，返回提示给模型。智能体自行执行工具时由 ParallelToolExecutor 按运行计数
+ */
+public class CallLimitedToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final int limit;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public CallLimitedToolCallback(ToolCallback delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+    }
+
+    /**
+     * 为一次请求包装工具列表，callLimits 中未列出的工具原样返回
+     *
+     * @param callLimits 工具名 -> 单次请求内允许的调用次数
+     */
+    public static ToolCallback[] limit(ToolCallback[] tools, Map<String, Integer> callLimits) {
+        return Arrays.stream(tools)
+                .map(tool -> {
+                    Integer limit = callLimits.get(tool.getToolDefinition().name());
+                    return limit == null ? tool : new CallLimitedToolCallback(tool, limit);
+                })
+                .toArray(ToolCallback[]::new);
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return tryAcquire() ? delegate.call(toolInput) : limitReached();
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return tryAcquire() ? delegate.call(toolInput, toolContext) : limitReached();
+    }
+
+    private boolean tryAcquire() {
+        return calls.incrementAndGet() <= limit;
+    }
+
+    private String limitReached() {
+        return "工具 " + getToolDefinition().name() + " 调用次数已达到限制（" + limit + "次），无法继续使用";
+    }
+}
@@ -16,10 +16,7 @@ public class TerminateTool {
             "When you have finished all the tasks, call this tool to end the work.
             """)
     public String doTerminate() {
-        // 重置WebSearchTool的搜索次数计数器
-        WebSearchTool.resetSearchCallCount();
-        log.info("会话终止，已重置WebSearchTool的搜索次数计数器");
-        
+        log.info("会话终止");
         return "任务结束";
     }
 }
@@ -23,11 +23,11 @@ public class WebSearchTool {
     // SearchAPI搜索接口地址
     private static final String SEARCH_API_URL = "https://www.searchapi.io/api/v1/search";
 
-    // 搜索调用次数限制
-    private static final int MAX_SEARCH_CALLS = 3;
-    
-    // 当前会话中的搜索调用次数
-    private static int searchCallCount = 0;
+    // 工具名称
+    public static final String TOOL_NAME = "searchWeb";
+
+    // 搜索调用次数限制，智能体按单次运行计数，ChatClient 工具调用按单次请求计数
+    public static final int MAX_SEARCH_CALLS = 3;
 
     // API密钥
     private final String apiKey;
@@ -36,34 +36,12 @@ public class WebSearchTool {
         this.apiKey = apiKey;
     }
     
-    /**
-     * 获取剩余的搜索调用次数
-     */
-    public static int getRemainingSearchCalls() {
-        return Math.max(0, MAX_SEARCH_CALLS - searchCallCount);
-    }
-    
-    /**
-     * 重置搜索调用次数计数器
-     */
-    public static void resetSearchCallCount() {
-        searchCallCount = 0;
-        log.info("搜索调用次数计数器已重置");
-    }
-
     /**
      * 通过百度搜索查询信息
      */
-    @Tool(description = "Search for information from Baidu Search Engine (Limited to 3 calls per session)")
+    @Tool(description = "Search for information from Baidu Search Engine (Limited to " + MAX_SEARCH_CALLS + " calls per task)")
     public String searchWeb(@ToolParam(description = "Search query keyword") String query) {
-        // 检查调用次数限制
-        if (searchCallCount >= MAX_SEARCH_CALLS) {
-            return "搜索次数已达到限制（" + MAX_SEARCH_CALLS + "次），无法继续使用搜索工具";
-        }
-        
-        // 增加调用计数
-        searchCallCount++;
-        log.info("执行搜索查询: '{}' (调用 {}/{})", query, searchCallCount, MAX_SEARCH_CALLS);
+        log.info("执行搜索查询: '{}'", query);
         
         // 构建请求参数
         Map<String, Object> paramMap = new HashMap<>();
@@ -111,7 +89,7 @@ public class WebSearchTool {
      */
     private String formatSearchResults(JSONArray results, String query) {
         StringBuilder sb = new StringBuilder();
-        sb.append("搜索 '").append(query).append("' 结果 (剩余调用次数: ").append(MAX_SEARCH_CALLS - searchCallCount).append("):\n\n");
+        sb.append("搜索 '").append(query).append("' 结果:\n\n");
         
         int count = Math.min(results.size(), 5);
         for (int i = 0; i < count; i++) {
@@ -0,0 +1,140 @@
+package com.lenyan.lenaiagent.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class AdvisorProfilerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdvisorProfiler profiler = new AdvisorProfiler(registry, true);
+
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            sleep(100);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("好的"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.just("好", "的")
+                    .delayElements(Duration.ofMillis(50))
+                    .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+        }
+    };
+
+    /**
+     * 请求前耗时固定时长的 Advisor
+     */
+    private record SleepingAdvisor(String name, int order, long millis) implements CallAroundAdvisor, StreamAroundAdvisor {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+
+        @Override
+        public AdvisedResponse aroundCall(AdvisedRequest request, CallAroundAdvisorChain chain) {
+            sleep(millis);
+            return chain.nextAroundCall(request);
+        }
+
+        @Override
+        public Flux<AdvisedResponse> aroundStream(AdvisedRequest request, StreamAroundAdvisorChain chain) {
+            sleep(millis);
+            return chain.nextAroundStream(request);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, AdvisorProfiler.SegmentStats> stats(String mode) {
+        return profiler.snapshot().stream()
+                .filter(stats -> stats.mode().equals(mode))
+                .collect(Collectors.toMap(AdvisorProfiler.SegmentStats::advisor, Function.identity()));
+    }
+
+    @Test
+    void timesEachAdvisorSeparatelyFromModel() {
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(profiler.profile(List.of(new SleepingAdvisor("slow", 1, 40), new SleepingAdvisor("fast", 2, 0))))
+                .build();
+        Assertions.assertEquals("好的", chatClient.prompt().user("你好").call().content());
+
+        Map<String, AdvisorProfiler.SegmentStats> call = stats("call");
+        Assertions.assertEquals(1, call.get("slow").count());
+        Assertions.assertTrue(call.get("slow").maxMs() >= 40 && call.get("slow").maxMs() < 90, call.toString());
+        Assertions.assertTrue(call.get("fast").maxMs() < 20, call.toString());
+        Assertions.assertTrue(call.get(AdvisorProfiler.MODEL_SEGMENT).maxMs() >= 100, call.toString());
+        // 端点按 p99 从高到低排列
+        Assertions.assertEquals(AdvisorProfiler.MODEL_SEGMENT, profiler.snapshot().get(0).advisor());
+        Assertions.assertEquals(1, registry.get("chat.advisor.segment").tag("advisor", "slow").timer().count());
+    }
+
+    @Test
+    void timesStreamingAdvisors() {
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(profiler.profile(List.of(new SleepingAdvisor("slow", 1, 40))))
+                .build();
+        String content = chatClient.prompt().user("你好").stream().content().collectList()
+                .map(parts -> String.join("", parts)).block();
+        Assertions.assertEquals("好的", content);
+
+        Map<String, AdvisorProfiler.SegmentStats> stream = stats("stream");
+        Assertions.assertTrue(stream.get("slow").maxMs() >= 40 && stream.get("slow").maxMs() < 90, stream.toString());
+        Assertions.assertTrue(stream.get(AdvisorProfiler.MODEL_SEGMENT).maxMs() >= 100, stream.toString());
+    }
+
+    @Test
+    void modelSegmentReplacesObservabilityModelProbe() {
+        ObservabilityAdvisor observabilityAdvisor = new ObservabilityAdvisor(registry, 0, 20);
+        List<Advisor> profiled = profiler.profile(List.of(observabilityAdvisor, observabilityAdvisor.modelProbe()));
+        // 最内层只有一个模型调用段
+        Assertions.assertEquals(1, profiled.stream()
+                .filter(advisor -> advisor.getOrder() == Ordered.LOWEST_PRECEDENCE - 1).count());
+
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultAdvisors(profiled).build();
+        Assertions.assertEquals("好的", chatClient.prompt().user("你好").call().content());
+        double model = registry.get("chat.client.model.latency").timer().totalTime(TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(model >= 100, String.valueOf(model));
+        Assertions.assertEquals(1, stats("call").get(AdvisorProfiler.MODEL_SEGMENT).count());
+    }
+
+    @Test
+    void disabledProfilerLeavesAdvisorsUntouched() {
+        List<Advisor> advisors = List.of(new SleepingAdvisor("slow", 1, 0));
+        Assertions.assertSame(advisors, new AdvisorProfiler(registry, false).profile(advisors));
+        Advisor profiled = profiler.profile(advisors.get(0));
+        Assertions.assertEquals("slow", profiled.getName());
+        Assertions.assertEquals(1, profiled.getOrder());
+        Assertions.assertSame(profiled, profiler.profile(profiled));
+    }
+}
@@ -0,0 +1,224 @@
+package com.lenyan.lenaiagent.advisor;
+
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
+import com.lenyan.lenaiagent.chatmemory.TokenCounter;
+import com.lenyan.lenaiagent.domain.ChatMemorySummary;
+import com.lenyan.lenaiagent.service.ChatMemorySummaryService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
+
+class CompactingChatMemoryAdvisorTest {
+
+    private static final String SYSTEM_PROMPT = "你是恋爱顾问";
+
+    private final MemoryStore memory = new MemoryStore();
+    private final Map<String, ChatMemorySummary> savedSummaries = new ConcurrentHashMap<>();
+    // 摘要内容 -> 覆盖到的消息序号，异步压缩可能在断言前再次更新摘要，按内容对应
+    private final Map<String, Integer> coveredOrders = new ConcurrentHashMap<>();
+    private final ChatMemorySummaryService summaryService = mock(ChatMemorySummaryService.class);
+    private final List<Prompt> prompts = new CopyOnWriteArrayList<>();
+
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("建议你们多沟通，" + "互相理解。".repeat(8)))));
+        }
+    };
+
+    /**
+     * 按会话保存消息的记忆，消息条数即最大序号；与数据库记忆一样，清空会话时一并删除摘要
+     */
+    private class MemoryStore implements ChatMemory {
+
+        private final Map<String, List<Message>> conversations = new HashMap<>();
+
+        @Override
+        public synchronized void add(String conversationId, List<Message> messages) {
+            conversations.computeIfAbsent(conversationId, id -> new ArrayList<>()).addAll(messages);
+        }
+
+        @Override
+        public synchronized List<Message> get(String conversationId, int lastN) {
+            List<Message> messages = conversations.getOrDefault(conversationId, List.of());
+            return new ArrayList<>(messages.subList(Math.max(0, messages.size() - lastN), messages.size()));
+        }
+
+        @Override
+        public synchronized void clear(String conversationId) {
+            conversations.remove(conversationId);
+            savedSummaries.remove(conversationId);
+        }
+
+        private synchronized int lastOrder(String conversationId) {
+            return conversations.getOrDefault(conversationId, List.of()).size();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(summaryService.getSummary(anyString())).thenAnswer(invocation -> savedSummaries.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> {
+            String conversationId = invocation.getArgument(0);
+            coveredOrders.put(invocation.getArgument(1), invocation.getArgument(2));
+            savedSummaries.put(conversationId, ChatMemorySummary.builder()
+                    .conversationId(conversationId)
+                    .summary(invocation.getArgument(1))
+                    .coveredOrder(invocation.getArgument(2))
+                    .build());
+            return null;
+        }).when(summaryService).saveSummary(anyString(), anyString(), anyInt());
+    }
+
+    private CompactingChatMemoryAdvisor advisor(List<Integer> foldedCounts) {
+        ConversationCompactor compactor = new ConversationCompactor((previousSummary, messages) -> {
+            foldedCounts.add(messages.size());
+            return previousSummary + "[" + messages.size() + "条]";
+        }, 300, 150);
+        return new CompactingChatMemoryAdvisor(memory, memory::lastOrder, summaryService, compactor, 100);
+    }
+
+    private static String chat(ChatClient chatClient, String message) {
+        return chatClient.prompt()
+                .user(message)
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, "c1")
+                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .call()
+                .content();
+    }
+
+    /**
+     * 发给模型的历史消息；ChatClient 把系统提示词和本轮用户输入依次放在历史消息之后
+     */
+    private static List<Message> history(Prompt prompt) {
+        List<Message> instructions = prompt.getInstructions();
+        return instructions.subList(0, instructions.size() - 2);
+    }
+
+    private static String systemText(Prompt prompt) {
+        List<Message> instructions = prompt.getInstructions();
+        return instructions.get(instructions.size() - 2).getText();
+    }
+
+    @Test
+    void keepsHistoryWithinBudgetAndFoldsOlderTurns() {
+        List<Integer> foldedCounts = new CopyOnWriteArrayList<>();
+        CompactingChatMemoryAdvisor advisor = advisor(foldedCounts);
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultSystem(SYSTEM_PROMPT).defaultAdvisors(advisor).build();
+
+        for (int turn = 1; turn <= 12; turn++) {
+            chat(chatClient, "第" + turn + "个问题：" + "我和对象经常吵架怎么办？".repeat(3));
+        }
+        // 每轮的历史消息都在预算以内
+        for (Prompt prompt : prompts) {
+            Assertions.assertTrue(TokenCounter.count(history(prompt)) <= 300, prompt.toString());
+        }
+        verify(summaryService, timeout(5000).atLeastOnce()).saveSummary(eq("c1"), anyString(), anyInt());
+
+        Assertions.assertEquals(24, memory.lastOrder("c1"));
+        chat(chatClient, "总结一下我们聊了什么");
+        Prompt last = prompts.get(prompts.size() - 1);
+        // 摘要拼接在系统提示词之后，被摘要覆盖的消息不再发送
+        String systemText = systemText(last);
+        Assertions.assertTrue(systemText.startsWith(SYSTEM_PROMPT + "\n\n" + ConversationCompactor.SUMMARY_PREFIX), systemText);
+        int coveredOrder = coveredOrders.get(systemText.substring(
+                (SYSTEM_PROMPT + "\n\n" + ConversationCompactor.SUMMARY_PREFIX).length()));
+        Assertions.assertTrue(coveredOrder > 0);
+        Assertions.assertTrue(history(last).size() <= 24 - coveredOrder);
+        Assertions.assertFalse(foldedCounts.isEmpty());
+    }
+
+    @Test
+    void resumesFromPersistedSummaryAndIgnoresItAfterClear() {
+        for (int i = 1; i <= 3; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        savedSummaries.put("c1", ChatMemorySummary.builder().conversationId("c1").summary("用户在异地恋").coveredOrder(4).build());
+
+        CompactingChatMemoryAdvisor advisor = advisor(new ArrayList<>());
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultSystem(SYSTEM_PROMPT).defaultAdvisors(advisor).build();
+        chat(chatClient, "接着说");
+        Prompt prompt = prompts.get(0);
+        Assertions.assertEquals(SYSTEM_PROMPT + "\n\n" + ConversationCompactor.SUMMARY_PREFIX + "用户在异地恋",
+                systemText(prompt));
+        Assertions.assertEquals(List.of("问题3", "回答3"), history(prompt).stream().map(Message::getText).toList());
+
+        // 会话在别处被清空后序号从头开始，旧摘要不再使用
+        memory.clear("c1");
+        chat(chatClient, "重新开始");
+        Assertions.assertEquals(SYSTEM_PROMPT, systemText(prompts.get(1)));
+
+        advisor.clear("c1");
+        verify(summaryService).clearSummary("c1");
+        Assertions.assertEquals(0, memory.lastOrder("c1"));
+    }
+
+    @Test
+    void clearedConversationNeverReusesOldSummary() {
+        for (int i = 1; i <= 3; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        savedSummaries.put("c1", ChatMemorySummary.builder().conversationId("c1").summary("用户在异地恋").coveredOrder(4).build());
+        CompactingChatMemoryAdvisor advisor = advisor(new ArrayList<>());
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultSystem(SYSTEM_PROMPT).defaultAdvisors(advisor).build();
+        chat(chatClient, "接着说");
+        Assertions.assertNotEquals(SYSTEM_PROMPT, systemText(prompts.get(0)));
+
+        // 清空后继续对话，序号超过旧摘要覆盖的 4 之后也不再使用旧摘要
+        memory.clear("c1");
+        for (int turn = 1; turn <= 3; turn++) {
+            chat(chatClient, "新问题" + turn);
+        }
+        Assertions.assertTrue(memory.lastOrder("c1") > 4);
+        for (Prompt prompt : prompts.subList(1, prompts.size())) {
+            Assertions.assertEquals(SYSTEM_PROMPT, systemText(prompt));
+        }
+    }
+
+    @Test
+    void leftoverSummaryOfClearedConversationIsNotResurrected() {
+        for (int i = 1; i <= 3; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        savedSummaries.put("c1", ChatMemorySummary.builder().conversationId("c1").summary("用户在异地恋").coveredOrder(4).build());
+        CompactingChatMemoryAdvisor advisor = advisor(new ArrayList<>());
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultSystem(SYSTEM_PROMPT).defaultAdvisors(advisor).build();
+        chat(chatClient, "接着说");
+
+        // 只删除了消息、摘要仍留在库中的存储
+        synchronized (memory) {
+            memory.conversations.remove("c1");
+        }
+        for (int turn = 1; turn <= 3; turn++) {
+            chat(chatClient, "新问题" + turn);
+        }
+        Assertions.assertTrue(memory.lastOrder("c1") > 4);
+        for (Prompt prompt : prompts.subList(1, prompts.size())) {
+            Assertions.assertEquals(SYSTEM_PROMPT, systemText(prompt));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lenyan.lenaiagent.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class ObservabilityAdvisorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ObservabilityAdvisor advisor = new ObservabilityAdvisor(registry, 1.0, 20);
+    private final ObservabilityAdvisor.ModelProbe probe = advisor.modelProbe();
+
+    private final AdvisedRequest request = AdvisedRequest.builder()
+            .chatModel((ChatModel) prompt -> new ChatResponse(List.of()))
+            .userText("如何维持异地恋")
+            .build();
+
+    private static AdvisedResponse response(String text, int promptTokens, int completionTokens) {
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                .usage(new DefaultUsage(promptTokens, completionTokens))
+                .build();
+        return new AdvisedResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata), Map.of());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void recordsLatencyTokensAndChainOverheadForCalls() {
+        advisor.aroundCall(request, outer -> {
+            // 模拟其它 Advisor 的耗时
+            sleep(30);
+            return probe.aroundCall(outer, inner -> {
+                sleep(50);
+                return response("多沟通", 120, 30);
+            });
+        });
+
+        Assertions.assertEquals(1, registry.get("chat.client.latency").tag("mode", "call").tag("outcome", "success")
+                .timer().count());
+        double model = registry.get("chat.client.model.latency").timer().totalTime(TimeUnit.MILLISECONDS);
+        double overhead = registry.get("chat.client.advisor.overhead").timer().totalTime(TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(model >= 50, "model " + model);
+        Assertions.assertTrue(overhead >= 30 && overhead < model, "overhead " + overhead);
+        Assertions.assertEquals(120, registry.get("chat.client.tokens").tag("type", "prompt").summary().totalAmount());
+        Assertions.assertEquals(30, registry.get("chat.client.tokens").tag("type", "completion").summary().totalAmount());
+    }
+
+    @Test
+    void recordsTimeToFirstTokenAndUsageForStreams() {
+        Flux<AdvisedResponse> chunks = Flux.concat(
+                Flux.just(response("", 0, 0)),
+                Flux.just(response("先", 0, 0)).delayElements(Duration.ofMillis(40)),
+                Flux.just(response("倾听", 0, 0), response("。", 80, 12)).delayElements(Duration.ofMillis(40)));
+        List<AdvisedResponse> output = advisor.aroundStream(request, outer -> probe.aroundStream(outer, inner -> chunks))
+                .collectList().block();
+
+        Assertions.assertEquals(4, output.size());
+        Assertions.assertEquals(1, registry.get("chat.client.latency").tag("mode", "stream").tag("outcome", "success")
+                .timer().count());
+        double firstToken = registry.get("chat.client.time.to.first.token").timer().totalTime(TimeUnit.MILLISECONDS);
+        double total = registry.get("chat.client.latency").tag("mode", "stream").timer().totalTime(TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(firstToken >= 40 && firstToken < total, "first token " + firstToken);
+        Assertions.assertEquals(80, registry.get("chat.client.tokens").tag("type", "prompt").summary().totalAmount());
+        Assertions.assertEquals(12, registry.get("chat.client.tokens").tag("type", "completion").summary().totalAmount());
+    }
+
+    @Test
+    void recordsFailuresAndCancellations() {
+        Assertions.assertThrows(IllegalStateException.class, () -> advisor.aroundCall(request, next -> {
+            throw new IllegalStateException("模型不可用");
+        }));
+        Assertions.assertEquals(1, registry.get("chat.client.latency").tag("mode", "call").tag("outcome", "error")
+                .timer().count());
+
+        advisor.aroundStream(request, next -> Flux.just(response("a", 0, 0), response("b", 0, 0)))
+                .take(1).blockLast();
+        Assertions.assertEquals(1, registry.get("chat.client.latency").tag("mode", "stream").tag("outcome", "cancelled")
+                .timer().count());
+    }
+}
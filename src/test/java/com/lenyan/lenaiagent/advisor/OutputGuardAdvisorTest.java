@@ -0,0 +1,95 @@
+package com.lenyan.lenaiagent.advisor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+class OutputGuardAdvisorTest {
+
+    private static final String REPLACEMENT = "【已停止】";
+
+    private final OutputGuardAdvisor advisor = new OutputGuardAdvisor(
+            List.of(new ProhibitedWordMatcher(List.of("违禁内容", "赌博"))), REPLACEMENT);
+
+    private final AdvisedRequest request = AdvisedRequest.builder()
+            .chatModel((ChatModel) prompt -> new ChatResponse(List.of()))
+            .userText("你好")
+            .build();
+
+    private static AdvisedResponse chunk(String text, String finishReason) {
+        ChatGenerationMetadata metadata = ChatGenerationMetadata.builder().finishReason(finishReason).build();
+        return new AdvisedResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(text), metadata))), Map.of());
+    }
+
+    private static List<String> texts(List<AdvisedResponse> responses) {
+        return responses.stream().map(response -> response.response().getResult().getOutput().getText()).toList();
+    }
+
+    @Test
+    void passesCleanStreamThroughWithBoundedDelay() {
+        List<String> chunks = List.of("恋爱中", "要多", "沟通，", "互相", "理解。");
+        List<AdvisedResponse> responses = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            responses.add(chunk(chunks.get(i), i == chunks.size() - 1 ? "STOP" : "NULL"));
+        }
+        List<AdvisedResponse> output = advisor.aroundStream(request, next -> Flux.fromIterable(responses))
+                .collectList().block();
+        Assertions.assertEquals(String.join("", chunks), String.join("", texts(output)));
+        // 最后一个片段保留结束原因
+        Assertions.assertEquals("STOP", output.get(output.size() - 1).response().getResult().getMetadata().getFinishReason());
+        // 除最后一个片段外，每次最多暂缓 最长违禁词长度 - 1 个字符
+        int emitted = 0;
+        int received = 0;
+        for (int i = 0; i < output.size() - 1; i++) {
+            emitted += texts(output).get(i).length();
+            received += chunks.get(i).length();
+            Assertions.assertTrue(received - emitted <= 3);
+        }
+    }
+
+    @Test
+    void cutsStreamWhenMatchSpansChunks() {
+        AtomicInteger produced = new AtomicInteger();
+        Flux<AdvisedResponse> upstream = Flux.just("第一句正常。这是", "违禁", "内容，后面", "还有很多", "内容")
+                .map(text -> chunk(text, "NULL"))
+                .doOnNext(response -> produced.incrementAndGet());
+        List<AdvisedResponse> output = advisor.aroundStream(request, next -> upstream).collectList().block();
+        String text = String.join("", texts(output));
+        Assertions.assertEquals("第一句正常。这是" + REPLACEMENT, text);
+        AdvisedResponse last = output.get(output.size() - 1);
+        Assertions.assertEquals("CONTENT_FILTER", last.response().getResult().getMetadata().getFinishReason());
+        Assertions.assertEquals(true, last.adviseContext().get(OutputGuardAdvisor.OUTPUT_BLOCKED_KEY));
+        // 命中后不再消费上游
+        Assertions.assertEquals(3, produced.get());
+    }
+
+    @Test
+    void truncatesCallResponse() {
+        AdvisedResponse response = advisor.aroundCall(request, next -> chunk("可以去ＳＨ赌博吗", "STOP"));
+        Assertions.assertEquals("可以去ＳＨ" + REPLACEMENT, response.response().getResult().getOutput().getText());
+
+        AdvisedResponse clean = chunk("多陪伴对方", "STOP");
+        Assertions.assertSame(clean, advisor.aroundCall(request, next -> clean));
+    }
+
+    @Test
+    void flushesHeldTextWhenStreamEndsWithoutFinishReason() {
+        List<AdvisedResponse> output = advisor.aroundStream(request,
+                        next -> Flux.just(chunk("你好", ""), chunk("呀", "")))
+                .collectList().block();
+        Assertions.assertEquals("你好呀", texts(output).stream().collect(Collectors.joining()));
+    }
+}
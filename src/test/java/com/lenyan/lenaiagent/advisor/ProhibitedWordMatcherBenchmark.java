@@ -0,0 +1,73 @@
+package com.lenyan.lenaiagent.advisor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 违禁词匹配微基准：逐词 contains 与 Aho–Corasick 自动机在 50、5千、5万个词下的单次检查耗时
+ * 不作为单元测试执行，在 IDE 中直接运行 main，或先 mvn test-compile 后执行：
+ * java -cp target/test-classes:target/classes com.lenyan.lenaiagent.advisor.ProhibitedWordMatcherBenchmark
+ */
+public class ProhibitedWordMatcherBenchmark {
+
+    private static final String ALPHABET = "恋爱分手赌博毒品约会表白abcXYZ";
+    private static final int TEXTS = 1_000;
+    private static final int TEXT_LENGTH = 200;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        List<String> texts = new ArrayList<>(TEXTS);
+        for (int i = 0; i < TEXTS; i++) {
+            texts.add(ProhibitedWordMatcherTest.randomText(random, ALPHABET, TEXT_LENGTH));
+        }
+        System.out.printf("%-8s %-14s %-14s %-10s %s%n", "词数", "contains(us)", "自动机(us)", "加速比", "构建(ms)");
+        for (int size : new int[]{50, 5_000, 50_000}) {
+            List<String> words = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                // 词比随机文本中常见的片段长，多数文本不命中，反映逐词扫描的完整开销
+                words.add(ProhibitedWordMatcherTest.randomText(random, ALPHABET, 6 + random.nextInt(4)));
+            }
+            long buildStart = System.nanoTime();
+            ProhibitedWordMatcher matcher = new ProhibitedWordMatcher(words);
+            double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+
+            // 逐词扫描随词数线性变慢，词多时只取部分文本，避免运行过久
+            List<String> naiveTexts = texts.subList(0, Math.max(20, TEXTS * 50 / size));
+            double naive = measure(naiveTexts, text -> ProhibitedWordMatcherTest.naiveContains(words, text));
+            double automaton = measure(texts, text -> matcher.find(text) != null);
+            System.out.printf("%-8d %-14.2f %-14.2f %-10.1f %.1f%n", size, naive, automaton, naive / automaton, buildMillis);
+        }
+    }
+
+    /**
+     * 预热后取多轮中最快一轮的平均单次耗时（微秒）
+     */
+    private static double measure(List<String> texts, Check check) {
+        int hits = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (String text : texts) {
+                hits += check.test(text) ? 1 : 0;
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String text : texts) {
+                hits += check.test(text) ? 1 : 0;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // 使用结果，避免被优化掉
+        if (hits < 0) {
+            System.out.println(hits);
+        }
+        return best / 1e3 / texts.size();
+    }
+
+    private interface Check {
+        boolean test(String text);
+    }
+}
@@ -0,0 +1,117 @@
+package com.lenyan.lenaiagent.advisor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+class ProhibitedWordMatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 原实现：逐个违禁词转小写后 contains
+     */
+    static boolean naiveContains(List<String> words, String text) {
+        for (String word : words) {
+            if (text.toLowerCase().contains(word.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String randomText(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void agreesWithNaiveMatchingForLargeWordLists() {
+        // 字母表较小，使随机文本经常包含违禁词
+        String alphabet = "恋爱分手赌博毒品abcXYZ";
+        Random random = new Random(42);
+        for (int size : new int[]{50, 5_000, 50_000}) {
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                words.add(randomText(random, alphabet, 3 + random.nextInt(4)));
+            }
+            ProhibitedWordMatcher matcher = new ProhibitedWordMatcher(words);
+            for (int i = 0; i < 200; i++) {
+                String text = randomText(random, alphabet, 1 + random.nextInt(40));
+                String found = matcher.find(text);
+                Assertions.assertEquals(naiveContains(words, text), found != null, text);
+                if (found != null) {
+                    Assertions.assertTrue(text.toLowerCase().contains(found.toLowerCase()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void foldsCaseAndFullWidth() {
+        ProhibitedWordMatcher matcher = new ProhibitedWordMatcher(List.of("赌博", "ABC", "he is"));
+        Assertions.assertEquals("ABC", matcher.find("一起学ａｂｃ吧"));
+        Assertions.assertEquals("he is", matcher.find("ｓｈｅ　ｉｓ here"));
+        Assertions.assertEquals("赌博", matcher.find("不要赌博"));
+        Assertions.assertNull(matcher.find("恋爱技巧"));
+        // 后缀词经失败链命中
+        Assertions.assertEquals("ABC", new ProhibitedWordMatcher(List.of("xabd", "ABC")).find("xabc"));
+    }
+
+    @Test
+    void matchesAcrossChunksWithCarriedState() {
+        ProhibitedWordMatcher matcher = new ProhibitedWordMatcher(List.of("违禁内容"));
+        int state = ProhibitedWordMatcher.ROOT;
+        String found = null;
+        for (String chunk : List.of("这是一段违", "禁", "内容。")) {
+            for (int i = 0; i < chunk.length() && found == null; i++) {
+                state = matcher.next(state, chunk.charAt(i));
+                found = matcher.matchAt(state);
+            }
+        }
+        Assertions.assertEquals("违禁内容", found);
+    }
+
+    @Test
+    void reloadsModifiedWordFile() throws IOException, InterruptedException {
+        Path file = tempDir.resolve("words.txt");
+        Files.writeString(file, "赌博\n", StandardCharsets.UTF_8);
+        ProhibitedWordAdvisor advisor = new ProhibitedWordAdvisor("file:" + file, 1);
+        ChatModel chatModel = prompt -> new ChatResponse(List.of());
+        AdvisedRequest request = AdvisedRequest.builder().chatModel(chatModel).userText("聊聊毒品").build();
+        AdvisedResponse ok = advisor.aroundCall(request, next -> new AdvisedResponse(null, Map.of()));
+        Assertions.assertNotNull(ok);
+
+        Files.writeString(file, "赌博\n毒品\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (advisor.getMatcher().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThrows(ProhibitedWordAdvisor.ProhibitedWordException.class,
+                () -> advisor.aroundCall(request, next -> new AdvisedResponse(null, Map.of())));
+
+        // 加载失败时保留原词表
+        Files.delete(file);
+        advisor.reload();
+        Assertions.assertEquals(2, advisor.getMatcher().size());
+    }
+}
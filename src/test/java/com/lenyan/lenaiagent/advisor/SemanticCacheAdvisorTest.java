@@ -0,0 +1,157 @@
+package com.lenyan.lenaiagent.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SemanticCacheAdvisorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    /**
+     * 含“表白”的问题向量相近，其它问题按长度各不相同
+     */
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                String text = request.getInstructions().get(i);
+                float[] vector = new float[16];
+                if (text.contains("表白")) {
+                    vector[0] = 1;
+                    vector[1] = text.length() * 0.01f;
+                } else {
+                    vector[text.length()] = 1;
+                }
+                embeddings.add(new Embedding(vector, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private AdvisedRequest request(String userText, String systemText) {
+        return AdvisedRequest.builder()
+                .chatModel(prompt -> null)
+                .userText(userText)
+                .systemText(systemText)
+                .advisorParams(Map.of("chat_memory_conversation_id", userText))
+                .build();
+    }
+
+    private AdvisedResponse answer(AdvisedRequest request) {
+        modelCalls.incrementAndGet();
+        return new AdvisedResponse(new ChatResponse(List.of(new Generation(new AssistantMessage("回答：" + request.userText())))),
+                request.adviseContext());
+    }
+
+    private static String text(AdvisedResponse response) {
+        return response.response().getResult().getOutput().getText();
+    }
+
+    @Test
+    void similarQuestionReturnsCachedAnswer() {
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, 0.95, 10, 60_000, meterRegistry);
+
+        Assertions.assertEquals("回答：如何表白", text(advisor.aroundCall(request("如何表白", "恋爱大师"), this::answer)));
+        AdvisedResponse cached = advisor.aroundCall(request("应该怎样表白", "恋爱大师"), this::answer);
+        Assertions.assertEquals("回答：如何表白", text(cached));
+        Assertions.assertEquals(true, cached.adviseContext().get(SemanticCacheAdvisor.CACHE_HIT_KEY));
+        Assertions.assertEquals(1, modelCalls.get());
+
+        // 不相似的问题和不同系统提示词都不命中
+        advisor.aroundCall(request("异地恋怎么办", "恋爱大师"), this::answer);
+        advisor.aroundCall(request("如何表白", "婚姻顾问"), this::answer);
+        Assertions.assertEquals(3, modelCalls.get());
+        Assertions.assertEquals(1.0, meterRegistry.counter("chat.response.cache.hit").count());
+        Assertions.assertEquals(3.0, meterRegistry.counter("chat.response.cache.miss").count());
+    }
+
+    @Test
+    void requestWithHistoryBypassesCache() {
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, 0.95, 10, 60_000, meterRegistry);
+        advisor.aroundCall(request("如何表白", "恋爱大师"), this::answer);
+        AdvisedRequest withHistory = AdvisedRequest.from(request("如何表白", "恋爱大师"))
+                .messages(List.of(new UserMessage("我喜欢同桌")))
+                .build();
+        advisor.aroundCall(withHistory, this::answer);
+        Assertions.assertEquals(2, modelCalls.get());
+    }
+
+    @Test
+    void cacheHitSkipsQueryRewrite() {
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, 0.95, 10, 60_000, meterRegistry);
+        AtomicInteger rewrites = new AtomicInteger();
+        QueryRewriteAdvisor rewriteAdvisor = new QueryRewriteAdvisor(query -> {
+            rewrites.incrementAndGet();
+            return query + "（重写）";
+        });
+        Assertions.assertTrue(advisor.getOrder() < rewriteAdvisor.getOrder());
+
+        // 缓存按原始问题查找，模型收到的是重写后的问题
+        Assertions.assertEquals("回答：如何表白（重写）",
+                text(advisor.aroundCall(request("如何表白", "恋爱大师"), request -> rewriteAdvisor.aroundCall(request, this::answer))));
+        advisor.aroundCall(request("应该怎样表白", "恋爱大师"), request -> rewriteAdvisor.aroundCall(request, this::answer));
+        Assertions.assertEquals(1, rewrites.get());
+        Assertions.assertEquals(1, modelCalls.get());
+    }
+
+    @Test
+    void ttlAndCapacityEvictEntries() throws InterruptedException {
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, 0.95, 2, 100, meterRegistry);
+        advisor.aroundCall(request("如何表白", "恋爱大师"), this::answer);
+        advisor.aroundCall(request("异地恋怎么办", "恋爱大师"), this::answer);
+        advisor.aroundCall(request("婆媳矛盾怎么处理", "恋爱大师"), this::answer);
+        Assertions.assertEquals(2, advisor.size());
+        // 最久未访问的“表白”已被淘汰
+        advisor.aroundCall(request("如何表白", "恋爱大师"), this::answer);
+        Assertions.assertEquals(4, modelCalls.get());
+
+        Thread.sleep(150);
+        advisor.aroundCall(request("如何表白", "恋爱大师"), this::answer);
+        Assertions.assertEquals(5, modelCalls.get());
+    }
+
+    @Test
+    void streamReplaysCachedAnswerInChunks() {
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, 0.95, 10, 60_000, meterRegistry);
+        String longAnswer = "先观察对方的反应，再选择合适的时机和场合，真诚地表达自己的感受，不要给对方太大压力。";
+        List<AdvisedResponse> first = advisor.aroundStream(request("如何表白", "恋爱大师"), request -> {
+            modelCalls.incrementAndGet();
+            return Flux.just(longAnswer.substring(0, 10), longAnswer.substring(10))
+                    .map(text -> new AdvisedResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(text)))),
+                            request.adviseContext()));
+        }).collectList().block();
+        Assertions.assertEquals(2, first.size());
+
+        List<AdvisedResponse> replayed = advisor.aroundStream(request("应该怎样表白", "恋爱大师"),
+                request -> Flux.error(new IllegalStateException("不应调用模型"))).collectList().block();
+        Assertions.assertEquals(1, modelCalls.get());
+        Assertions.assertTrue(replayed.size() > 1);
+        Assertions.assertEquals(longAnswer, String.join("", replayed.stream().map(SemanticCacheAdvisorTest::text).toList()));
+        Assertions.assertEquals("STOP", replayed.get(replayed.size() - 1).response().getResult().getMetadata().getFinishReason());
+    }
+}
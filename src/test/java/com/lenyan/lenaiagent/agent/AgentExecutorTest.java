@@ -0,0 +1,51 @@
+package com.lenyan.lenaiagent.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentExecutorTest {
+
+    @Test
+    void limitsConcurrency() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AgentExecutor executor = new AgentExecutor(2, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxSeen = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.execute(() -> {
+                maxSeen.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }));
+        }
+
+        // 等待任务进入执行或排队
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getQueuedCount() != 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(2, executor.getActiveCount());
+        Assertions.assertEquals(8.0, registry.get("agent.executor.queued").gauge().value());
+
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, maxSeen.get());
+        Assertions.assertEquals(0, executor.getQueuedCount());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,38 @@
+package com.lenyan.lenaiagent.agent;
+
+import com.lenyan.lenaiagent.agent.model.AgentSession;
+import com.lenyan.lenaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+
+class AgentSessionPoolTest {
+
+    @Test
+    void acquireAndReuse() {
+        AgentSessionPool pool = new AgentSessionPool(2, 10);
+        AgentSession session = pool.acquire("next");
+        Assertions.assertEquals("next", session.getNextStepPrompt());
+        session.setState(AgentState.RUNNING);
+        session.getMessageList().add(new UserMessage("hi"));
+        Assertions.assertEquals(1, pool.getActiveCount());
+
+        pool.release(session);
+        // 重复归还不应多释放许可
+        pool.release(session);
+        Assertions.assertEquals(0, pool.getActiveCount());
+        Assertions.assertEquals(1, pool.getIdleCount());
+
+        AgentSession reused = pool.acquire(null);
+        Assertions.assertSame(session, reused);
+        Assertions.assertEquals(AgentState.IDLE, reused.getState());
+        Assertions.assertTrue(reused.getMessageList().isEmpty());
+    }
+
+    @Test
+    void acquireBeyondLimit() {
+        AgentSessionPool pool = new AgentSessionPool(1, 10);
+        pool.acquire(null);
+        Assertions.assertThrows(RuntimeException.class, () -> pool.acquire(null));
+    }
+}
@@ -0,0 +1,164 @@
+package com.lenyan.lenaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelToolExecutorTest {
+
+    private static ToolCallback sleepingTool(String name, long sleepMillis) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return name + ":" + toolInput;
+            }
+        };
+    }
+
+    @Test
+    void executesInParallelAndKeepsOrder() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{
+                sleepingTool("slow", 400), sleepingTool("fast", 50), sleepingTool("medium", 200)});
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "slow", "a"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "b"),
+                new AssistantMessage.ToolCall("3", "function", "medium", "c")));
+        List<Message> history = List.of(new UserMessage("hi"));
+
+        long start = System.currentTimeMillis();
+        ToolExecutionResult result = executor.execute(history, assistantMessage, 5000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assertions.assertTrue(elapsed < 600, "耗时应接近最慢的工具: " + elapsed);
+        List<Message> conversation = result.conversationHistory();
+        Assertions.assertEquals(3, conversation.size());
+        ToolResponseMessage response = (ToolResponseMessage) conversation.get(2);
+        Assertions.assertEquals(List.of("slow:a", "fast:b", "medium:c"),
+                response.getResponses().stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+        Assertions.assertEquals(List.of("1", "2", "3"),
+                response.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList());
+    }
+
+    @Test
+    void timesOutSlowTool() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{
+                sleepingTool("slow", 2000), sleepingTool("fast", 10)});
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "slow", "a"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "b")));
+
+        ToolExecutionResult result = executor.execute(List.of(), assistantMessage, 100);
+        ToolResponseMessage response = (ToolResponseMessage) result.conversationHistory().get(1);
+        Assertions.assertTrue(response.getResponses().get(0).responseData().contains("超时"));
+        Assertions.assertEquals("fast:b", response.getResponses().get(1).responseData());
+    }
+
+    @Test
+    void limitsCallsPerRun() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{
+                sleepingTool("search", 10), sleepingTool("fast", 10)}, Map.of("search", 2));
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "search", "a"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "b"),
+                new AssistantMessage.ToolCall("3", "function", "search", "c")));
+
+        // 每次运行独立计数，互不影响
+        Map<String, Integer> firstRun = new HashMap<>();
+        Map<String, Integer> secondRun = new HashMap<>();
+        executor.execute(List.of(), assistantMessage, 1000, firstRun);
+        ToolResponseMessage response = (ToolResponseMessage) executor.execute(List.of(), assistantMessage, 1000, firstRun)
+                .conversationHistory().get(1);
+        Assertions.assertTrue(response.getResponses().get(0).responseData().contains("限制"));
+        Assertions.assertEquals("fast:b", response.getResponses().get(1).responseData());
+        Assertions.assertTrue(response.getResponses().get(2).responseData().contains("限制"));
+
+        response = (ToolResponseMessage) executor.execute(List.of(), assistantMessage, 1000, secondRun)
+                .conversationHistory().get(1);
+        Assertions.assertEquals("search:a", response.getResponses().get(0).responseData());
+        Assertions.assertEquals("search:c", response.getResponses().get(2).responseData());
+        Assertions.assertEquals(4, firstRun.get("search"));
+    }
+
+    @Test
+    void interruptsTimedOutToolAndValidatesNamesFirst() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        ToolCallback blocking = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name("download").description("download").inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                started.incrementAndGet();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "done";
+            }
+        };
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{blocking});
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "download", "a")));
+        ToolResponseMessage response = (ToolResponseMessage) executor.execute(List.of(), assistantMessage, 100)
+                .conversationHistory().get(1);
+        Assertions.assertTrue(response.getResponses().get(0).responseData().contains("超时"));
+        // 超时后工具线程被中断，不再继续运行
+        Assertions.assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+
+        // 包含未知工具时，其余工具都不启动
+        AssistantMessage withUnknown = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "download", "a"),
+                new AssistantMessage.ToolCall("2", "function", "missing", "b")));
+        Assertions.assertThrows(IllegalStateException.class, () -> executor.execute(List.of(), withUnknown, 100));
+        Assertions.assertEquals(1, started.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void batchStartsToolCallsBeforeFinish() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{
+                sleepingTool("slow", 300), sleepingTool("fast", 10)});
+        AssistantMessage.ToolCall first = new AssistantMessage.ToolCall("1", "function", "slow", "a");
+        AssistantMessage.ToolCall second = new AssistantMessage.ToolCall("2", "function", "fast", "b");
+
+        long start = System.currentTimeMillis();
+        ParallelToolExecutor.ToolCallBatch batch = executor.begin(new HashMap<>());
+        batch.submit(first);
+        // 模拟模型仍在输出后续内容
+        sleepingTool("stream", 250).call("");
+        ToolExecutionResult result = batch.finish(List.of(), new AssistantMessage("", Map.of(), List.of(first, second)), 5000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assertions.assertTrue(elapsed < 500, "工具应与流式输出重叠执行: " + elapsed);
+        ToolResponseMessage response = (ToolResponseMessage) result.conversationHistory().get(1);
+        Assertions.assertEquals(List.of("slow:a", "fast:b"),
+                response.getResponses().stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+    }
+}
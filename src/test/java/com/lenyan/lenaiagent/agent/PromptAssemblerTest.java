@@ -0,0 +1,101 @@
+package com.lenyan.lenaiagent.agent;
+
+import com.lenyan.lenaiagent.chatmemory.ConversationCompactor;
+import com.lenyan.lenaiagent.chatmemory.TokenCounter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class PromptAssemblerTest {
+
+    private static final String SYSTEM_PROMPT = "You are LenManus, an all-capable AI assistant.";
+    private static final String NEXT_STEP_PROMPT = "Based on user needs, proactively select the most appropriate tool.";
+    private static final String PAGE = "<html><body>" + "<div class=\"item\">约会地点推荐：公园、咖啡馆、博物馆</div>".repeat(500) + "</body></html>";
+
+    /**
+     * 模拟智能体的一步：下一步提示词、工具调用和工具结果
+     */
+    private static void addStep(List<Message> messages, int step, String result) {
+        messages.add(new UserMessage(NEXT_STEP_PROMPT));
+        messages.add(new AssistantMessage("第" + step + "步", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call" + step, "function", "scrapeWebPage", "{\"url\":\"https://example.com/" + step + "\"}"))));
+        messages.add(new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call" + step, "scrapeWebPage", result))));
+    }
+
+    private static String resultOf(Message message) {
+        return ((ToolResponseMessage) message).getResponses().get(0).responseData();
+    }
+
+    @Test
+    void truncatesOldToolResultsAndDeduplicates() {
+        PromptAssembler assembler = new PromptAssembler(16000, 100, 1000);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我找约会地点")));
+        addStep(messages, 1, PAGE + "1");
+        addStep(messages, 2, "搜索结果：公园");
+        addStep(messages, 3, "搜索结果：公园");
+        addStep(messages, 4, PAGE + "4");
+
+        List<Message> assembled = assembler.assemble(messages, SYSTEM_PROMPT);
+        // 会话中的消息保持原样
+        Assertions.assertEquals(13, messages.size());
+        Assertions.assertEquals(PAGE + "4", resultOf(messages.get(12)));
+
+        // 重复的下一步提示词只保留最近一次
+        Assertions.assertEquals("帮我找约会地点", assembled.get(0).getText());
+        Assertions.assertEquals(1, assembled.stream().filter(m -> NEXT_STEP_PROMPT.equals(m.getText())).count());
+        Assertions.assertEquals(NEXT_STEP_PROMPT, assembled.get(assembled.size() - 3).getText());
+
+        List<ToolResponseMessage> results = assembled.stream()
+                .filter(ToolResponseMessage.class::isInstance).map(ToolResponseMessage.class::cast).toList();
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertTrue(TokenCounter.count(results.get(0)) < 150, resultOf(results.get(0)));
+        Assertions.assertEquals(PromptAssembler.DUPLICATE_NOTICE, resultOf(results.get(1)));
+        Assertions.assertEquals("搜索结果：公园", resultOf(results.get(2)));
+        int latest = TokenCounter.count(results.get(3));
+        Assertions.assertTrue(latest > 1000 && latest < 1050, String.valueOf(latest));
+        // 工具结果仍紧跟发起调用的助手消息
+        for (int i = 0; i < assembled.size(); i++) {
+            if (assembled.get(i) instanceof ToolResponseMessage) {
+                Assertions.assertTrue(((AssistantMessage) assembled.get(i - 1)).hasToolCalls());
+            }
+        }
+    }
+
+    @Test
+    void staysWithinBudgetAsStepsAccumulate() {
+        PromptAssembler assembler = new PromptAssembler(3000, 200, 1000);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我找约会地点"),
+                ConversationCompactor.summaryMessage("已经查过三个网站")));
+        int systemTokens = TokenCounter.count(SYSTEM_PROMPT);
+        for (int step = 1; step <= 30; step++) {
+            addStep(messages, step, PAGE + step);
+            List<Message> assembled = assembler.assemble(messages, SYSTEM_PROMPT);
+            Assertions.assertTrue(systemTokens + TokenCounter.count(assembled) <= 3000, "step " + step);
+            // 任务和摘要始终保留，最近一步的工具结果始终在末尾
+            Assertions.assertEquals("帮我找约会地点", assembled.get(0).getText());
+            Assertions.assertTrue(ConversationCompactor.isSummary(assembled.get(1)));
+            Assertions.assertFalse(assembled.get(2) instanceof ToolResponseMessage);
+            Assertions.assertTrue(resultOf(assembled.get(assembled.size() - 1)).startsWith(PAGE.substring(0, 100)));
+        }
+    }
+
+    @Test
+    void keepsLatestTurnEvenWhenItExceedsBudget() {
+        PromptAssembler assembler = new PromptAssembler(1200, 100, 1000);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我找约会地点")));
+        addStep(messages, 1, PAGE);
+        addStep(messages, 2, PAGE + "2");
+        // 系统提示词占去大部分预算，只剩任务和最近一步的工具调用与结果
+        List<Message> assembled = assembler.assemble(messages, SYSTEM_PROMPT.repeat(30));
+        Assertions.assertEquals(3, assembled.size());
+        Assertions.assertEquals("第2步", assembled.get(1).getText());
+        Assertions.assertEquals(PAGE.substring(0, 100), resultOf(assembled.get(2)).substring(0, 100));
+    }
+}
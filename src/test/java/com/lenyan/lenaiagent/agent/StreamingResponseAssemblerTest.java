@@ -0,0 +1,64 @@
+package com.lenyan.lenaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class StreamingResponseAssemblerTest {
+
+    private static ChatResponse chunk(String text, AssistantMessage.ToolCall... toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text, Map.of(), List.of(toolCalls)))));
+    }
+
+    @Test
+    void forwardsTextAndMergesToolCallFragments() {
+        List<String> deltas = new ArrayList<>();
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(deltas::add);
+
+        assembler.accept(chunk("我先"));
+        assembler.accept(chunk("搜索一下"));
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("c1", "function", "searchWeb", "{\"query\":")));
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("", "", "", "\"广州\"}")));
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("c2", "function", "doTerminate", "{}")));
+
+        Assertions.assertEquals(List.of("我先", "搜索一下"), deltas);
+        ChatResponse response = assembler.toChatResponse();
+        Assertions.assertTrue(response.hasToolCalls());
+        AssistantMessage output = response.getResult().getOutput();
+        Assertions.assertEquals("我先搜索一下", output.getText());
+        Assertions.assertEquals(2, output.getToolCalls().size());
+        Assertions.assertEquals("searchWeb", output.getToolCalls().get(0).name());
+        Assertions.assertEquals("{\"query\":\"广州\"}", output.getToolCalls().get(0).arguments());
+        Assertions.assertEquals("c2", output.getToolCalls().get(1).id());
+    }
+
+    @Test
+    void textOnlyResponseHasNoToolCalls() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(null);
+        assembler.accept(chunk("完成"));
+        Assertions.assertFalse(assembler.toChatResponse().hasToolCalls());
+    }
+
+    @Test
+    void notifiesEachToolCallOnceAssembled() {
+        List<String> completed = new ArrayList<>();
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(null,
+                toolCall -> completed.add(toolCall.name() + toolCall.arguments()));
+
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("c1", "function", "searchWeb", "{\"query\":")));
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("", "", "", "\"广州\"}")));
+        Assertions.assertTrue(completed.isEmpty());
+        // 下一个调用开始时上一个调用已完整
+        assembler.accept(chunk("", new AssistantMessage.ToolCall("c2", "function", "doTerminate", "{}")));
+        Assertions.assertEquals(List.of("searchWeb{\"query\":\"广州\"}"), completed);
+        assembler.complete();
+        assembler.complete();
+        Assertions.assertEquals(List.of("searchWeb{\"query\":\"广州\"}", "doTerminate{}"), completed);
+    }
+}
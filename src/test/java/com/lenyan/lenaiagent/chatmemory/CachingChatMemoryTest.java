@@ -0,0 +1,53 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.Mockito.*;
+
+class CachingChatMemoryTest {
+
+    private static List<Message> messages(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> (Message) new UserMessage("m" + i)).toList();
+    }
+
+    @Test
+    void servesHotConversationFromCache() {
+        ChatMemory delegate = spy(new InMemoryChatMemory());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingChatMemory memory = new CachingChatMemory(delegate, 5, 100, 60000, registry);
+
+        memory.add("c", messages(0, 8));
+        Assertions.assertEquals(List.of("m5", "m6", "m7"), memory.get("c", 3).stream().map(Message::getText).toList());
+        memory.add("c", messages(8, 10));
+        Assertions.assertEquals(List.of("m6", "m7", "m8", "m9"), memory.get("c", 4).stream().map(Message::getText).toList());
+
+        // 只有首次读取访问了被装饰的记忆
+        verify(delegate, times(1)).get("c", 5);
+        Assertions.assertEquals(1.0, registry.get("chat.memory.cache.hit").counter().count());
+        Assertions.assertEquals(1.0, registry.get("chat.memory.cache.miss").counter().count());
+    }
+
+    @Test
+    void clearInvalidatesAndEvictsBySize() {
+        ChatMemory delegate = spy(new InMemoryChatMemory());
+        CachingChatMemory memory = new CachingChatMemory(delegate, 5, 2, 60000, new SimpleMeterRegistry());
+
+        memory.add("a", messages(0, 2));
+        memory.get("a", 2);
+        memory.clear("a");
+        Assertions.assertTrue(memory.get("a", 2).isEmpty());
+
+        memory.get("b", 2);
+        memory.get("c", 2);
+        Assertions.assertEquals(2, memory.size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class ConversationCompactorTest {
+
+    private final List<List<Message>> folded = new ArrayList<>();
+    private final List<String> previousSummaries = new ArrayList<>();
+
+    private final ChatSummarizer summarizer = (previousSummary, messages) -> {
+        previousSummaries.add(previousSummary);
+        folded.add(List.copyOf(messages));
+        return "摘要" + folded.size();
+    };
+
+    /**
+     * 模拟智能体的一步：发起工具调用，得到较长的工具返回
+     */
+    private static void addStep(List<Message> messages, int step) {
+        messages.add(new AssistantMessage("第" + step + "步，调用搜索", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call" + step, "function", "searchWeb", "{\"query\":\"q" + step + "\"}"))));
+        messages.add(new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call" + step, "searchWeb",
+                "搜索结果" + step + "：" + "恋爱中保持沟通很重要。".repeat(10)))));
+    }
+
+    @Test
+    void leavesMessagesWithinBudgetUntouched() {
+        ConversationCompactor compactor = new ConversationCompactor(summarizer, 10000, 5000);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我查一下约会地点")));
+        addStep(messages, 1);
+        Assertions.assertSame(messages, compactor.compact(messages));
+        Assertions.assertTrue(folded.isEmpty());
+    }
+
+    @Test
+    void foldsOlderStepsIntoIncrementalSummary() {
+        ConversationCompactor compactor = new ConversationCompactor(summarizer, 600, 300);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我查一下约会地点")));
+        for (int step = 1; step <= 20; step++) {
+            addStep(messages, step);
+            messages = new ArrayList<>(compactor.compact(messages));
+            // 每一步之后消息总量都回落到预算以内
+            Assertions.assertTrue(TokenCounter.count(messages) <= 600, "step " + step + ": " + TokenCounter.count(messages));
+        }
+
+        Assertions.assertFalse(folded.isEmpty());
+        // 任务始终在首位，摘要紧随其后
+        Assertions.assertEquals("帮我查一下约会地点", messages.get(0).getText());
+        Assertions.assertTrue(ConversationCompactor.isSummary(messages.get(1)));
+        Assertions.assertEquals(ConversationCompactor.SUMMARY_PREFIX + "摘要" + folded.size(), messages.get(1).getText());
+        // 工具返回不会与发起调用的助手消息分开
+        Assertions.assertInstanceOf(AssistantMessage.class, messages.get(2));
+        folded.forEach(batch -> Assertions.assertInstanceOf(ToolResponseMessage.class, batch.get(batch.size() - 1)));
+        // 摘要增量合并：每次只发送新折叠的消息和上一份摘要
+        Assertions.assertEquals("", previousSummaries.get(0));
+        for (int i = 1; i < previousSummaries.size(); i++) {
+            Assertions.assertEquals("摘要" + i, previousSummaries.get(i));
+            Assertions.assertFalse(folded.get(i).stream().anyMatch(ConversationCompactor::isSummary));
+        }
+    }
+
+    @Test
+    void keepsMessagesWhenSummaryFails() {
+        ConversationCompactor compactor = new ConversationCompactor((previousSummary, messages) -> {
+            throw new IllegalStateException("模型不可用");
+        }, 300, 150);
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("帮我查一下约会地点")));
+        for (int step = 1; step <= 5; step++) {
+            addStep(messages, step);
+        }
+        Assertions.assertSame(messages, compactor.compact(messages));
+    }
+}
@@ -0,0 +1,88 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+class MappedFileChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void interleavedConversationsSurviveSegmentRollAndReopen() {
+        // 段很小，保证记录跨多个段，读取超出尾部段时回退到分段日志
+        try (MappedFileChatMemory memory = new MappedFileChatMemory(tempDir.toString(), 4, 4, 8, 60000L)) {
+            for (int i = 0; i < 20; i++) {
+                memory.add("a", List.of(new UserMessage("a" + i)));
+                memory.add("b", List.of(new UserMessage("b" + i), new AssistantMessage("b" + i + "-reply")));
+            }
+            Assertions.assertEquals(List.of("a17", "a18", "a19"), texts(memory.get("a", 3)));
+            Assertions.assertEquals(20, memory.get("a", 0).size());
+            Assertions.assertEquals(List.of("b19", "b19-reply"), texts(memory.get("b", 2)));
+            Assertions.assertInstanceOf(AssistantMessage.class, memory.get("b", 1).get(0));
+            Assertions.assertEquals(40, memory.getLastOrder("b"));
+        }
+
+        try (MappedFileChatMemory reopened = new MappedFileChatMemory(tempDir.toString(), 4, 4, 8, 60000L)) {
+            reopened.add("a", List.of(new UserMessage("a20")));
+            Assertions.assertEquals(List.of("a19", "a20"), texts(reopened.get("a", 2)));
+            Assertions.assertEquals(2, reopened.size());
+            Assertions.assertTrue(reopened.get("missing", 10).isEmpty());
+        }
+    }
+
+    @Test
+    void growsIndexAndKeepsOrderAfterClear() {
+        try (MappedFileChatMemory memory = new MappedFileChatMemory(tempDir.toString(), 4, 1024, 8, 60000L)) {
+            for (int i = 0; i < 500; i++) {
+                memory.add("c" + i, List.of(new UserMessage("m" + i)));
+            }
+            Assertions.assertEquals(500, memory.size());
+            for (int i = 0; i < 500; i += 50) {
+                Assertions.assertEquals(List.of("m" + i), texts(memory.get("c" + i, 10)));
+            }
+
+            File segments = new File(tempDir.toFile(), "segments/c1");
+            Assertions.assertTrue(segments.exists());
+            memory.clear("c1");
+            // 清空删除会话的段文件
+            Assertions.assertFalse(segments.exists());
+            Assertions.assertTrue(memory.get("c1", 10).isEmpty());
+            memory.add("c1", List.of(new UserMessage("again")));
+            Assertions.assertEquals(List.of("again"), texts(memory.get("c1", 10)));
+            // 清空后序号继续递增
+            Assertions.assertEquals(2, memory.getLastOrder("c1"));
+        }
+    }
+
+    @Test
+    void fallsBackWhenTailSegmentIsMerged() {
+        try (MappedFileChatMemory memory = new MappedFileChatMemory(tempDir.toString(), 4, 2, 2, 60000L)) {
+            for (int i = 0; i < 7; i++) {
+                memory.add("a", List.of(new UserMessage("a" + i)));
+            }
+            Assertions.assertTrue(memory.getStore().compact("a"));
+            Assertions.assertEquals(List.of("a5", "a6"), texts(memory.get("a", 2)));
+            Assertions.assertEquals(List.of("a3", "a4", "a5", "a6"), texts(memory.get("a", 4)));
+        }
+    }
+
+    @Test
+    void rejectsOversizedConversationId() {
+        try (MappedFileChatMemory memory = new MappedFileChatMemory(tempDir.toString())) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> memory.get("x".repeat(65), 1));
+        }
+    }
+}
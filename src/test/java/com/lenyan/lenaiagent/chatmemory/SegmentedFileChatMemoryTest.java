@@ -0,0 +1,144 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+class SegmentedFileChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<Message> messages(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> i % 2 == 0 ? (Message) new UserMessage("m" + i) : new AssistantMessage("m" + i))
+                .toList();
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void appendsAcrossSegmentsAndReadsTail() {
+        try (SegmentedFileChatMemory memory = new SegmentedFileChatMemory(tempDir.toString(), 4, 100, 60000)) {
+            memory.add("c", messages(0, 3));
+            memory.add("c", messages(3, 10));
+            Assertions.assertEquals(3, memory.getSegmentCount("c"));
+            Assertions.assertEquals(List.of("m5", "m6", "m7", "m8", "m9"), texts(memory.get("c", 5)));
+            Assertions.assertEquals(10, memory.get("c", 0).size());
+            Assertions.assertInstanceOf(AssistantMessage.class, memory.get("c", 1).get(0));
+        }
+
+        // 重新打开后从磁盘恢复
+        try (SegmentedFileChatMemory reopened = new SegmentedFileChatMemory(tempDir.toString(), 4, 100, 60000)) {
+            reopened.add("c", messages(10, 11));
+            Assertions.assertEquals(List.of("m8", "m9", "m10"), texts(reopened.get("c", 3)));
+        }
+    }
+
+    @Test
+    void compactsSealedSegmentsAndClears() {
+        try (SegmentedFileChatMemory memory = new SegmentedFileChatMemory(tempDir.toString(), 2, 2, 60000)) {
+            memory.add("c", messages(0, 9));
+            Assertions.assertEquals(5, memory.getSegmentCount("c"));
+            Assertions.assertTrue(memory.compact("c"));
+            Assertions.assertEquals(2, memory.getSegmentCount("c"));
+            Assertions.assertEquals(texts(messages(0, 9)), texts(memory.get("c", 0)));
+            Assertions.assertEquals(List.of("m6", "m7", "m8"), texts(memory.get("c", 3)));
+
+            memory.clear("c");
+            Assertions.assertTrue(memory.get("c", 10).isEmpty());
+        }
+    }
+
+    @Test
+    void mergesOnlySmallSegmentsAndSurvivesClearWithStaleLog() throws Exception {
+        try (SegmentedFileChatMemory memory = new SegmentedFileChatMemory(tempDir.toString(), 2, 2, 60000)) {
+            memory.add("c", messages(0, 5));
+            Assertions.assertTrue(memory.compact("c"));
+            Path merged = tempDir.resolve("c").resolve(String.format("%020d", 0) + ".log");
+            Object mergedKey = Files.readAttributes(merged, BasicFileAttributes.class).fileKey();
+            Assertions.assertEquals(2, memory.getSegmentCount("c"));
+
+            // 再次合并只处理新封存的小段，已合并的大段不会被重写
+            memory.add("c", messages(5, 9));
+            Assertions.assertTrue(memory.compact("c"));
+            Assertions.assertEquals(3, memory.getSegmentCount("c"));
+            Assertions.assertEquals(mergedKey, Files.readAttributes(merged, BasicFileAttributes.class).fileKey());
+            Assertions.assertFalse(memory.compact("c"));
+            Assertions.assertEquals(texts(messages(0, 9)), texts(memory.get("c", 0)));
+
+            // 并发清空与写入：写入要么在清空前完成被清除，要么写入新的日志
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                futures.add(executor.submit(() -> {
+                    if (n % 10 == 0) {
+                        memory.clear("c");
+                    } else {
+                        memory.add("c", messages(n, n + 1));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            List<Message> remaining = memory.get("c", 0);
+            try (SegmentedFileChatMemory reopened = new SegmentedFileChatMemory(tempDir.toString(), 2, 2, 60000)) {
+                Assertions.assertEquals(texts(remaining), texts(reopened.get("c", 0)));
+            }
+        }
+    }
+
+    @Test
+    void evictsIdleLogsAndReloadsFromDisk() throws Exception {
+        try (SegmentedFileChatMemory memory = new SegmentedFileChatMemory(tempDir.toString(), 4, 100, 50)) {
+            memory.add("a", messages(0, 6));
+            Assertions.assertEquals(1, memory.getOpenLogCount());
+            // 空闲超过一个合并周期后移出内存，再次读取时从段文件重新加载
+            for (int i = 0; i < 100 && memory.getOpenLogCount() > 0; i++) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(0, memory.getOpenLogCount());
+            Assertions.assertEquals(List.of("m4", "m5"), texts(memory.get("a", 2)));
+            memory.add("a", messages(6, 7));
+            Assertions.assertEquals(7, memory.get("a", 0).size());
+        }
+    }
+
+    @Test
+    void keepsUnsafeConversationIdsInsideStore() throws Exception {
+        Path store = Files.createDirectories(tempDir.resolve("store"));
+        Path outside = Files.createDirectories(tempDir.resolve("outside"));
+        Files.writeString(outside.resolve("keep.txt"), "keep");
+        try (SegmentedFileChatMemory memory = new SegmentedFileChatMemory(store.toString(), 4, 100, 60000)) {
+            for (String id : List.of("..", "../outside", "a/b", "用户1")) {
+                memory.add(id, messages(0, 2));
+                Assertions.assertEquals(store.toFile(), memory.conversationDir(id).getParentFile());
+                Assertions.assertEquals(List.of("m0", "m1"), texts(memory.get(id, 0)));
+                memory.clear(id);
+            }
+            Assertions.assertEquals(store.resolve("c-1").toFile(), memory.conversationDir("c-1"));
+        }
+        Assertions.assertTrue(Files.exists(outside.resolve("keep.txt")));
+        try (var files = Files.list(tempDir)) {
+            Assertions.assertEquals(2, files.count());
+        }
+    }
+}
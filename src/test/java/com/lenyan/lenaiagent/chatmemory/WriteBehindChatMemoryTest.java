@@ -0,0 +1,106 @@
+package com.lenyan.lenaiagent.chatmemory;
+
+import com.lenyan.lenaiagent.domain.ChatMemory;
+import com.lenyan.lenaiagent.service.impl.ChatMemoryServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class WriteBehindChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ChatMemoryServiceImpl chatMemoryService;
+
+    @BeforeEach
+    void setUp() {
+        chatMemoryService = spy(new ChatMemoryServiceImpl());
+        doReturn(5).when(chatMemoryService).getMaxOrder("a");
+        doReturn(0).when(chatMemoryService).getMaxOrder("b");
+        doReturn(new ArrayList<ChatMemory>()).when(chatMemoryService).getLatestEntities(anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void buffersAndFlushesAcrossConversations() {
+        doReturn(true).when(chatMemoryService).saveBatch(anyCollection(), anyInt());
+        WriteBehindChatMemory memory = new WriteBehindChatMemory(chatMemoryService, 100, 60000,
+                tempDir.resolve("fallback.jsonl").toString());
+
+        memory.add("a", List.of(new UserMessage("你好"), new AssistantMessage("你好呀")));
+        memory.add("b", List.of(new UserMessage("在吗")));
+
+        // 尚未落库的消息也能读到，按时间正序
+        List<Message> messages = memory.get("a", 10);
+        Assertions.assertEquals(List.of("你好", "你好呀"), messages.stream().map(Message::getText).toList());
+        verify(chatMemoryService, never()).saveBatch(anyCollection(), anyInt());
+
+        Assertions.assertEquals(3, memory.flush());
+        ArgumentCaptor<Collection<ChatMemory>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(chatMemoryService, times(1)).saveBatch(captor.capture(), anyInt());
+        List<Integer> orders = captor.getValue().stream()
+                .filter(entity -> entity.getConversationId().equals("a"))
+                .map(ChatMemory::getMessageOrder)
+                .toList();
+        Assertions.assertEquals(List.of(6, 7), orders);
+        Assertions.assertEquals(0, memory.getPendingCount());
+        // 计数器只在首次访问会话时查询数据库
+        verify(chatMemoryService, times(1)).getMaxOrder("a");
+    }
+
+    @Test
+    void spillsToFallbackOnShutdownFailureAndRecovers() {
+        String fallback = tempDir.resolve("fallback.jsonl").toString();
+        doThrow(new RuntimeException("db down")).when(chatMemoryService).saveBatch(anyCollection(), anyInt());
+        WriteBehindChatMemory memory = new WriteBehindChatMemory(chatMemoryService, 100, 60000, fallback);
+        memory.add("b", List.of(new UserMessage("第一条"), new UserMessage("第二条")));
+        memory.shutdown();
+
+        WriteBehindChatMemory recovered = new WriteBehindChatMemory(chatMemoryService, 100, 60000, fallback);
+        recovered.start();
+        Assertions.assertEquals(2, recovered.getPendingCount());
+        recovered.add("b", List.of(new UserMessage("第三条")));
+        List<Message> messages = recovered.get("b", 10);
+        Assertions.assertEquals(List.of("第一条", "第二条", "第三条"), messages.stream().map(Message::getText).toList());
+        recovered.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictsFlushedBuffersAndReseedsOrder() {
+        doReturn(true).when(chatMemoryService).saveBatch(anyCollection(), anyInt());
+        WriteBehindChatMemory memory = new WriteBehindChatMemory(chatMemoryService, 100, 60000, 0,
+                tempDir.resolve("fallback.jsonl").toString());
+
+        memory.add("a", List.of(new UserMessage("你好")));
+        Assertions.assertEquals(1, memory.flush());
+        // 已全部落库的空闲缓冲被移除
+        Assertions.assertEquals(0, memory.getBufferCount());
+
+        // 其他写入方在此期间写入了序号 7、8
+        doReturn(8).when(chatMemoryService).getMaxOrder("a");
+        Assertions.assertEquals(8, memory.lastOrder("a"));
+        memory.add("a", List.of(new UserMessage("又来了")));
+        memory.flush();
+        ArgumentCaptor<Collection<ChatMemory>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(chatMemoryService, times(2)).saveBatch(captor.capture(), anyInt());
+        Assertions.assertEquals(List.of(6), captor.getAllValues().get(0).stream().map(ChatMemory::getMessageOrder).toList());
+        Assertions.assertEquals(List.of(9), captor.getAllValues().get(1).stream().map(ChatMemory::getMessageOrder).toList());
+    }
+}
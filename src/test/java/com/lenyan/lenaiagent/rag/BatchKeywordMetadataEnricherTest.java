@@ -0,0 +1,80 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+class BatchKeywordMetadataEnricherTest {
+
+    private final List<String> prompts = new ArrayList<>();
+
+    private ChatModel chatModel(Function<String, String> reply) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                prompts.add(prompt.getContents());
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(reply.apply(prompt.getContents())))));
+            }
+        };
+    }
+
+    private static List<Document> documents(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document("如何表白" + i)).toList();
+    }
+
+    @Test
+    void packsDocumentsIntoOneCallPerBatch() {
+        ChatModel chatModel = chatModel(prompt -> {
+            long count = prompt.lines().filter(line -> line.matches("\\[\\d+]")).count();
+            StringBuilder json = new StringBuilder("```json\n[");
+            for (int i = 1; i <= count; i++) {
+                json.append(i > 1 ? "," : "").append("[\"表白\", \"关键词").append(i).append("\"]");
+            }
+            return json.append("]\n```").toString();
+        });
+        List<Document> documents = documents(25);
+
+        new BatchKeywordMetadataEnricher(chatModel, 5, 10).apply(documents);
+
+        Assertions.assertEquals(3, prompts.size());
+        Assertions.assertEquals("表白, 关键词1", documents.get(0).getMetadata().get("excerpt_keywords"));
+        Assertions.assertEquals("表白, 关键词10", documents.get(9).getMetadata().get("excerpt_keywords"));
+        Assertions.assertEquals("表白, 关键词5", documents.get(24).getMetadata().get("excerpt_keywords"));
+    }
+
+    @Test
+    void fallsBackToPerDocumentCallsWhenCountMismatches() {
+        ChatModel chatModel = chatModel(prompt -> prompt.contains("[1]") ? "[[\"表白\"]]" : "表白, 约会");
+        List<Document> documents = documents(3);
+
+        // 几乎不补充令牌，剩余令牌数即为获取次数
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(0.001, 10);
+
+        new BatchKeywordMetadataEnricher(chatModel, 5, 10, rateLimiter).apply(documents);
+
+        Assertions.assertEquals(4, prompts.size());
+        documents.forEach(document -> Assertions.assertEquals("表白, 约会", document.getMetadata().get("excerpt_keywords")));
+        // 批量调用和逐个调用各获取一个令牌
+        Assertions.assertTrue(rateLimiter.tryAcquire(6));
+        Assertions.assertFalse(rateLimiter.tryAcquire(1));
+    }
+
+    @Test
+    void parseKeywordsRejectsMalformedOutput() {
+        Assertions.assertEquals(List.of("a, b", "c"), BatchKeywordMetadataEnricher.parseKeywords("结果：[[\"a\",\"b\"],[\"c\"]]", 2));
+        Assertions.assertNull(BatchKeywordMetadataEnricher.parseKeywords("[[\"a\"],[]]", 2));
+        Assertions.assertNull(BatchKeywordMetadataEnricher.parseKeywords("[\"a\",\"b\"]", 2));
+        Assertions.assertNull(BatchKeywordMetadataEnricher.parseKeywords("a, b", 1));
+        Assertions.assertNull(BatchKeywordMetadataEnricher.parseKeywords("[[\"a\"", 1));
+    }
+}
@@ -0,0 +1,119 @@
+package com.lenyan.lenaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger embeddedTexts = new AtomicInteger();
+    private volatile CountDownLatch gate;
+
+    private final EmbeddingModel delegate = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            embeddedTexts.addAndGet(request.getInstructions().size());
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                String text = request.getInstructions().get(i);
+                embeddings.add(new Embedding(new float[]{text.length(), text.charAt(0), 0.5f}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    @Test
+    void repeatedAndNormalizedTextsHitMemoryThenDisk() {
+        String diskDir = tempDir.toString();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 100, diskDir, new SimpleMeterRegistry())) {
+            float[] first = model.embed("如何 表白");
+            Assertions.assertArrayEquals(first, model.embed("  如何   表白 "));
+            List<float[]> batch = model.embed(List.of("如何 表白", "怎么约会", "怎么约会"));
+            Assertions.assertEquals(3, batch.size());
+            Assertions.assertArrayEquals(batch.get(1), batch.get(2));
+            Assertions.assertEquals(2, calls.get());
+            Assertions.assertEquals(2, embeddedTexts.get());
+        }
+
+        // 新实例从磁盘层恢复，不再调用模型
+        try (CachingEmbeddingModel reopened = new CachingEmbeddingModel(delegate, 100, diskDir, new SimpleMeterRegistry())) {
+            Assertions.assertArrayEquals(new float[]{4, '怎', 0.5f}, reopened.embed("怎么约会"));
+            Assertions.assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    void diskTierRotatesAndKeepsRecentlyUsedVectors() {
+        String diskDir = tempDir.toString();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 1, diskDir, 3, new SimpleMeterRegistry())) {
+            for (int i = 0; i < 10; i++) {
+                model.embed("问题" + i);
+            }
+            // 每代最多 3 条，只保留两代
+            Assertions.assertTrue(model.getDiskEntryCount() <= 6, String.valueOf(model.getDiskEntryCount()));
+            Assertions.assertTrue(tempDir.toFile().list().length <= 2);
+            Assertions.assertEquals(10, calls.get());
+
+            // 上一代命中的向量写回当前代，再轮换一次仍能命中
+            model.embed("问题6");
+            model.embed("其他1");
+            model.embed("其他2");
+            model.embed("问题6");
+            Assertions.assertEquals(12, calls.get());
+        }
+
+        try (CachingEmbeddingModel reopened = new CachingEmbeddingModel(delegate, 1, diskDir, 3, new SimpleMeterRegistry())) {
+            reopened.embed("问题6");
+            reopened.embed("问题0");
+            Assertions.assertEquals(13, calls.get());
+        }
+    }
+
+    @Test
+    void concurrentRequestsForSameTextAreCoalesced() throws Exception {
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 100, null, new SimpleMeterRegistry())) {
+            gate = new CountDownLatch(1);
+            List<CompletableFuture<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> model.embed("异地恋怎么办")));
+            }
+            Thread.sleep(200);
+            gate.countDown();
+            for (CompletableFuture<float[]> future : futures) {
+                Assertions.assertEquals(6, future.get(5, TimeUnit.SECONDS)[0]);
+            }
+            Assertions.assertEquals(1, calls.get());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+class DocumentIngestionPipelineTest {
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            batchSizes.add(request.getInstructions().size());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                if (request.getInstructions().get(i).contains("坏")) {
+                    throw new IllegalStateException("向量化失败");
+                }
+                embeddings.add(new Embedding(new float[]{request.getInstructions().get(i).length()}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private static List<Document> read(Integer source) {
+        return IntStream.range(0, 10).mapToObj(i -> new Document("文档" + source + "-" + i, Map.of("source", source))).toList();
+    }
+
+    @Test
+    void ingestsAllDocumentsInBatches() {
+        Map<String, float[]> stored = new ConcurrentHashMap<>();
+        AtomicInteger enriched = new AtomicInteger();
+        DocumentIngestionPipeline pipeline = DocumentIngestionPipeline.builder(embeddingModel)
+                .enricher(documents -> {
+                    enriched.addAndGet(documents.size());
+                    documents.forEach(document -> document.getMetadata().put("excerpt_keywords", "恋爱"));
+                    return documents;
+                })
+                .queueCapacity(4)
+                .embedBatchSize(8)
+                .build();
+        List<Integer> sources = IntStream.range(0, 20).boxed().toList();
+
+        DocumentIngestionPipeline.IngestionResult result = pipeline.ingest(sources, DocumentIngestionPipelineTest::read,
+                // 跳过每个数据源的第一个文档
+                document -> document.getText().endsWith("-0") ? null : document,
+                (documents, embeddings) -> {
+                    Assertions.assertEquals(documents.size(), embeddings.size());
+                    for (int i = 0; i < documents.size(); i++) {
+                        Assertions.assertEquals("恋爱", documents.get(i).getMetadata().get("excerpt_keywords"));
+                        stored.put(documents.get(i).getText(), embeddings.get(i));
+                    }
+                });
+
+        Assertions.assertEquals(new DocumentIngestionPipeline.IngestionResult(20, 180, 0, result.elapsedMillis()), result);
+        Assertions.assertEquals(180, stored.size());
+        Assertions.assertEquals(180, enriched.get());
+        Assertions.assertTrue(batchSizes.stream().allMatch(size -> size <= 8));
+        Assertions.assertTrue(batchSizes.size() < 180);
+    }
+
+    @Test
+    void failuresAreCountedWithoutStoppingPipeline() {
+        List<String> stored = new CopyOnWriteArrayList<>();
+        DocumentIngestionPipeline pipeline = DocumentIngestionPipeline.builder(embeddingModel)
+                .enricher(documents -> {
+                    if (documents.get(0).getText().equals("增强失败")) {
+                        throw new IllegalStateException("增强失败");
+                    }
+                    return documents;
+                })
+                .embedBatchSize(1)
+                .build();
+        List<String> sources = List.of("正常", "增强失败", "坏", "读取失败");
+
+        DocumentIngestionPipeline.IngestionResult result = pipeline.ingest(sources, source -> {
+            if (source.equals("读取失败")) {
+                throw new IllegalStateException("读取失败");
+            }
+            return List.of(new Document(source));
+        }, document -> document, (documents, embeddings) -> documents.forEach(document -> stored.add(document.getText())));
+
+        Assertions.assertEquals(List.of("正常"), stored);
+        Assertions.assertEquals(1, result.stored());
+        Assertions.assertEquals(3, result.failed());
+    }
+
+    @Test
+    void rateLimiterSpacesRequests() throws InterruptedException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(20, 2);
+        Assertions.assertTrue(rateLimiter.tryAcquire(2));
+        Assertions.assertFalse(rateLimiter.tryAcquire(1));
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.acquire(1);
+        }
+        // 桶已空，4 个令牌按每秒 20 个补充约需 200ms
+        Assertions.assertTrue(System.nanoTime() - start >= 150_000_000L);
+    }
+}
@@ -0,0 +1,108 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class HybridDocumentRetrieverTest {
+
+    private static final List<Document> DOCUMENTS = List.of(
+            new Document("faq-0", "如何向喜欢的人表白？先了解对方的心意，选择轻松的场合。", Map.of("status", "单身")),
+            new Document("faq-1", "第一次约会聊什么话题？可以聊兴趣爱好和旅行经历。", Map.of("status", "单身")),
+            new Document("faq-2", "婚后如何处理婆媳矛盾？丈夫要做好沟通的桥梁。", Map.of("status", "已婚")),
+            new Document("faq-3", "异地恋怎么维持感情？固定视频时间，规划见面。", Map.of("status", "恋爱")));
+
+    private final AtomicInteger queryEmbeddings = new AtomicInteger();
+
+    /**
+     * 文档向量为独热向量，查询文本里出现“外地”时与异地恋文档最相近
+     */
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                queryEmbeddings.incrementAndGet();
+                embeddings.add(new Embedding(request.getInstructions().get(i).contains("外地")
+                        ? new float[]{0.1f, 0, 0.1f, 1} : new float[]{1, 1, 1, 1}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private HybridDocumentRetriever.Builder retriever() {
+        OffHeapVectorStore vectorStore = OffHeapVectorStore.builder(embeddingModel).build();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS.size(); i++) {
+            float[] vector = new float[DOCUMENTS.size()];
+            vector[i] = 1;
+            embeddings.add(vector);
+        }
+        vectorStore.addEmbedded(DOCUMENTS, embeddings);
+        Bm25Index keywordIndex = new Bm25Index();
+        keywordIndex.add(DOCUMENTS);
+        return HybridDocumentRetriever.builder().vectorStore(vectorStore).keywordIndex(keywordIndex).topK(2);
+    }
+
+    @Test
+    void confidentKeywordMatchSkipsEmbedding() {
+        List<Document> results = retriever().build().retrieve(new Query("怎么向喜欢的人表白"));
+        Assertions.assertEquals(0, queryEmbeddings.get());
+        Assertions.assertEquals("faq-0", results.get(0).getId());
+        Assertions.assertNotNull(results.get(0).getScore());
+    }
+
+    @Test
+    void weakKeywordMatchIsFusedWithVectorResults() {
+        List<Document> results = retriever().build().retrieve(new Query("对象去外地工作了，感情还能维持吗"));
+        Assertions.assertEquals(1, queryEmbeddings.get());
+        Assertions.assertEquals(2, results.size());
+        // 两路都排第一的文档融合后得分最高
+        Assertions.assertEquals("faq-3", results.get(0).getId());
+    }
+
+    @Test
+    void filterAppliesToBothRetrievers() {
+        List<Document> results = retriever()
+                .filterExpression(new FilterExpressionBuilder().eq("status", "已婚").build())
+                .lexicalConfidence(2)
+                .build()
+                .retrieve(new Query("如何表白"));
+        Assertions.assertEquals(List.of("faq-2"), results.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void bm25RanksExactTermsAndHandlesDeletes() {
+        Bm25Index index = new Bm25Index();
+        index.add(DOCUMENTS);
+        List<Bm25Index.Hit> hits = index.search("婆媳矛盾", 3, null);
+        Assertions.assertEquals("faq-2", hits.get(0).document().getId());
+        Assertions.assertEquals(1.0, hits.get(0).confidence(), 1e-9);
+
+        index.delete(List.of("faq-2"));
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertTrue(index.search("婆媳矛盾", 3, null).isEmpty());
+    }
+
+    @Test
+    void tokenizeSplitsChineseIntoUnigramsAndBigrams() {
+        List<String> tokens = Bm25Index.tokenize("我的ＡＢＣ表白 123");
+        Assertions.assertEquals(List.of("我的", "abc", "表", "表白", "白", "123"), tokens);
+    }
+}
@@ -0,0 +1,162 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+class IncrementalVectorIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final List<Integer> enrichedBatches = new CopyOnWriteArrayList<>();
+
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            embedded.incrementAndGet();
+            return vector(document.getText());
+        }
+    };
+
+    private final UnaryOperator<List<Document>> enricher = documents -> {
+        enrichedBatches.add(documents.size());
+        documents.forEach(document -> document.getMetadata().put("excerpt_keywords", "恋爱"));
+        return documents;
+    };
+
+    private static float[] vector(String text) {
+        return new float[]{text.length(), text.hashCode() % 7, 1};
+    }
+
+    private static Document doc(String text, String filename) {
+        return new Document(text, Map.of("filename", filename, "status", "单身"));
+    }
+
+    @Test
+    void onlyChangedDocumentsAreEnrichedAndEmbedded() {
+        String dir = tempDir.toString();
+        List<Document> documents = List.of(doc("如何表白", "a.md"), doc("如何约会", "a.md"), doc("如何相处", "b.md"));
+        SimpleVectorStore first = new IncrementalVectorIndex(embeddingModel, dir).load(documents, enricher);
+        Assertions.assertEquals(3, embedded.get());
+        Assertions.assertEquals(List.of(3), enrichedBatches);
+        Assertions.assertEquals(3, first.similaritySearch(SearchRequest.builder().query("如何").topK(10).build()).size());
+
+        // 内容不变：不做任何增强和向量化，增强结果从磁盘恢复
+        SimpleVectorStore unchanged = new IncrementalVectorIndex(embeddingModel, dir).load(documents, enricher);
+        Assertions.assertEquals(3, embedded.get());
+        Assertions.assertEquals(List.of(3), enrichedBatches);
+        List<Document> results = unchanged.similaritySearch(SearchRequest.builder().query("如何").topK(10).build());
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals("恋爱", results.get(0).getMetadata().get("excerpt_keywords"));
+
+        // 导入堆外向量库时直接复用已持久化的向量
+        IncrementalVectorIndex index = new IncrementalVectorIndex(embeddingModel, dir);
+        SimpleVectorStore loaded = index.load(documents, enricher);
+        OffHeapVectorStore offHeap = OffHeapVectorStore.builder(embeddingModel).build();
+        index.copyTo(loaded, offHeap);
+        Assertions.assertEquals(3, offHeap.size());
+        Assertions.assertEquals("恋爱", offHeap.documents().get(0).getMetadata().get("excerpt_keywords"));
+        Assertions.assertEquals(3, embedded.get());
+
+        // 修改一篇、删除一篇
+        List<Document> changed = List.of(doc("如何表白", "a.md"), doc("如何约会才不尴尬", "a.md"));
+        SimpleVectorStore updated = new IncrementalVectorIndex(embeddingModel, dir).load(changed, enricher);
+        Assertions.assertEquals(4, embedded.get());
+        Assertions.assertEquals(List.of(3, 1), enrichedBatches);
+        List<String> texts = updated.similaritySearch(SearchRequest.builder().query("如何").topK(10).build())
+                .stream().map(Document::getText).sorted().toList();
+        Assertions.assertEquals(List.of("如何约会才不尴尬", "如何表白").stream().sorted().toList(), texts);
+    }
+
+    @Test
+    void pipelineOnlyIngestsChangedDocuments() {
+        String dir = tempDir.toString();
+        AtomicInteger batchEmbedded = new AtomicInteger();
+        EmbeddingModel countingModel = new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                // 忽略向量库探测维度的请求
+                batchEmbedded.addAndGet((int) request.getInstructions().stream().filter(text -> text.contains("如何")).count());
+                return embeddingModel.call(request);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embeddingModel.embed(document);
+            }
+        };
+        DocumentIngestionPipeline pipeline = DocumentIngestionPipeline.builder(countingModel).enricher(enricher).build();
+        Map<String, List<Document>> sources = Map.of(
+                "a.md", List.of(doc("如何表白", "a.md"), doc("如何约会", "a.md")),
+                "b.md", List.of(doc("如何相处", "b.md")));
+
+        SimpleVectorStore first = new IncrementalVectorIndex(countingModel, dir)
+                .load(List.of("a.md", "b.md"), sources::get, pipeline);
+        Assertions.assertEquals(3, batchEmbedded.get());
+        Assertions.assertEquals(3, first.similaritySearch(SearchRequest.builder().query("如何").topK(10).build()).size());
+
+        // 删除 b.md：不做任何向量化，只移除旧文档
+        batchEmbedded.set(0);
+        SimpleVectorStore updated = new IncrementalVectorIndex(countingModel, dir)
+                .load(List.of("a.md"), sources::get, pipeline);
+        Assertions.assertEquals(0, batchEmbedded.get());
+        Assertions.assertEquals(List.of(1, 1, 1), enrichedBatches);
+        List<Document> results = updated.similaritySearch(SearchRequest.builder().query("如何").topK(10).build());
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals("恋爱", results.get(0).getMetadata().get("excerpt_keywords"));
+    }
+
+    @Test
+    void keepsDocumentsOfSourcesThatFailToRead() {
+        String dir = tempDir.toString();
+        DocumentIngestionPipeline pipeline = DocumentIngestionPipeline.builder(embeddingModel).enricher(enricher).build();
+        Map<String, List<Document>> sources = Map.of(
+                "a.md", List.of(doc("如何表白", "a.md"), doc("如何约会", "a.md")),
+                "b.md", List.of(doc("如何相处", "b.md")));
+        new IncrementalVectorIndex(embeddingModel, dir).load(List.of("a.md", "b.md"), sources::get, pipeline);
+        Assertions.assertEquals(3, enrichedBatches.size());
+
+        // b.md 读取失败：不当作删除，原有文档保留
+        SimpleVectorStore failed = new IncrementalVectorIndex(embeddingModel, dir).load(List.of("a.md", "b.md"), source -> {
+            if (source.equals("b.md")) {
+                throw new IllegalStateException("读取失败");
+            }
+            return sources.get(source);
+        }, pipeline);
+        Assertions.assertEquals(3, failed.similaritySearch(SearchRequest.builder().query("如何").topK(10).build()).size());
+
+        // 恢复后不需要重新增强和向量化
+        new IncrementalVectorIndex(embeddingModel, dir).load(List.of("a.md", "b.md"), sources::get, pipeline);
+        Assertions.assertEquals(3, enrichedBatches.size());
+
+        // 数据源被删除时移除其文档
+        SimpleVectorStore removed = new IncrementalVectorIndex(embeddingModel, dir).load(List.of("a.md"), sources::get, pipeline);
+        Assertions.assertEquals(2, removed.similaritySearch(SearchRequest.builder().query("如何").topK(10).build()).size());
+    }
+}
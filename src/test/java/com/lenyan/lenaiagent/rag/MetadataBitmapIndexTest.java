@@ -0,0 +1,37 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+class MetadataBitmapIndexTest {
+
+    @Test
+    void resolvesIndexedConditionsToCandidateRows() {
+        MetadataBitmapIndex index = new MetadataBitmapIndex(Set.of("status", "filename"));
+        index.add(0, Map.of("status", "单身", "filename", "a-单身.md"));
+        index.add(1, Map.of("status", "已婚", "filename", "b-已婚.md"));
+        index.add(2, Map.of("status", "单身", "filename", "c-单身.md", "author", "len"));
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+
+        MetadataBitmapIndex.Candidates single = index.resolve(b.eq("status", "单身").build());
+        Assertions.assertEquals(BitSet.valueOf(new long[]{0b101}), single.rows());
+        Assertions.assertTrue(single.exact());
+
+        MetadataBitmapIndex.Candidates and = index.resolve(b.and(b.eq("status", "单身"), b.in("filename", "c-单身.md", "b-已婚.md")).build());
+        Assertions.assertEquals(BitSet.valueOf(new long[]{0b100}), and.rows());
+        Assertions.assertTrue(and.exact());
+
+        // 未索引字段只能得到超集
+        MetadataBitmapIndex.Candidates partial = index.resolve(b.and(b.eq("status", "单身"), b.eq("author", "len")).build());
+        Assertions.assertEquals(BitSet.valueOf(new long[]{0b101}), partial.rows());
+        Assertions.assertFalse(partial.exact());
+
+        Assertions.assertNull(index.resolve(b.ne("status", "单身").build()));
+        Assertions.assertNull(index.resolve(b.or(b.eq("status", "单身"), b.eq("author", "len")).build()));
+    }
+}
@@ -0,0 +1,140 @@
+package com.lenyan.lenaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+class OffHeapVectorStoreTest {
+
+    private static final int DIMENSIONS = 32;
+
+    /**
+     * 按文本哈希生成确定的随机向量
+     */
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(randomVector(request.getInstructions().get(i).hashCode()), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private static float[] randomVector(long seed) {
+        Random random = new Random(seed);
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static void fill(OffHeapVectorStore store, int count) {
+        List<Document> documents = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("doc-" + i, "文档" + i, Map.of("status", "s" + (i % 10))));
+            embeddings.add(randomVector(1000L + i));
+        }
+        store.addEmbedded(documents, embeddings);
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    @Test
+    void bruteForceSearchWithFilterAndDelete() {
+        OffHeapVectorStore store = OffHeapVectorStore.builder(embeddingModel).build();
+        store.add(List.of(
+                new Document("a", "如何表白", Map.of("status", "单身")),
+                new Document("b", "婚后相处", Map.of("status", "已婚")),
+                new Document("c", "异地恋", Map.of("status", "恋爱"))));
+
+        List<Document> exact = store.similaritySearch(SearchRequest.builder().query("如何表白").topK(1).build());
+        Assertions.assertEquals("a", exact.get(0).getId());
+        Assertions.assertEquals(1.0, exact.get(0).getScore(), 1e-5);
+
+        List<Document> filtered = store.similaritySearch(SearchRequest.builder()
+                .query("婚后相处")
+                .topK(3)
+                .filterExpression(new FilterExpressionBuilder().eq("status", "单身").build())
+                .build());
+        Assertions.assertEquals(List.of("a"), ids(filtered));
+        Assertions.assertEquals(1, store.similaritySearch(SearchRequest.builder()
+                .query("婚后相处").topK(3).filterExpression("status == '已婚'").build()).size());
+
+        store.delete(List.of("a"));
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertFalse(ids(store.similaritySearch(SearchRequest.builder().query("如何表白").topK(3).build()))
+                .contains("a"));
+        Assertions.assertFalse(store.isGraphBuilt());
+    }
+
+    @Test
+    void hnswRecallMatchesBruteForce() {
+        OffHeapVectorStore exact = OffHeapVectorStore.builder(embeddingModel).bruteForceThreshold(Integer.MAX_VALUE).build();
+        OffHeapVectorStore hnsw = OffHeapVectorStore.builder(embeddingModel).bruteForceThreshold(500).build();
+        fill(exact, 3000);
+        fill(hnsw, 3000);
+        Assertions.assertTrue(hnsw.isGraphBuilt());
+
+        int hits = 0;
+        int total = 0;
+        for (int q = 0; q < 50; q++) {
+            SearchRequest request = SearchRequest.builder().query("query-" + q).topK(10).build();
+            Set<String> expected = new HashSet<>(ids(exact.similaritySearch(request)));
+            for (String id : ids(hnsw.similaritySearch(request))) {
+                if (expected.contains(id)) {
+                    hits++;
+                }
+            }
+            total += expected.size();
+        }
+        Assertions.assertTrue(hits >= total * 0.9, "recall " + hits + "/" + total);
+
+        // 带过滤条件时结果全部满足条件且数量充足
+        List<Document> filtered = hnsw.similaritySearch(SearchRequest.builder()
+                .query("query-x")
+                .topK(10)
+                .filterExpression(new FilterExpressionBuilder().eq("status", "s3").build())
+                .build());
+        Assertions.assertEquals(10, filtered.size());
+        Assertions.assertTrue(filtered.stream().allMatch(d -> "s3".equals(d.getMetadata().get("status"))));
+    }
+
+    @Test
+    void narrowIndexedFilterMatchesExactFilteredSearch() {
+        OffHeapVectorStore exact = OffHeapVectorStore.builder(embeddingModel).bruteForceThreshold(Integer.MAX_VALUE)
+                .indexedFields(Set.of()).build();
+        OffHeapVectorStore indexed = OffHeapVectorStore.builder(embeddingModel).bruteForceThreshold(500).build();
+        fill(exact, 3000);
+        fill(indexed, 3000);
+
+        // 单个取值约 300 行，低于阈值，只对候选行扫描
+        for (String filter : List.of("status == 's3'", "status in ['s1', 's2'] && status != 's2'", "filename == 'x.md'")) {
+            SearchRequest request = SearchRequest.builder().query("query-y").topK(5).filterExpression(filter).build();
+            Assertions.assertEquals(ids(exact.similaritySearch(request)), ids(indexed.similaritySearch(request)), filter);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.lenyan.lenaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class QueryRewriterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger rewrites = new AtomicInteger();
+
+    private final QueryTransformer transformer = query -> {
+        rewrites.incrementAndGet();
+        return new Query("重写：" + query.text());
+    };
+
+    private double outcome(String outcome) {
+        return meterRegistry.counter("rag.query.rewrite", "outcome", outcome).count();
+    }
+
+    @Test
+    void wellFormedShortQueryIsNotRewritten() {
+        QueryRewriter rewriter = new QueryRewriter(transformer, meterRegistry, 10, 20);
+        Assertions.assertEquals("如何表白？", rewriter.doQueryRewrite("如何表白？"));
+        Assertions.assertEquals(0, rewrites.get());
+        Assertions.assertEquals(1.0, outcome("skipped"));
+
+        Assertions.assertTrue(rewriter.shouldRewrite("那个，就是他一直不回我消息"));
+        Assertions.assertTrue(rewriter.shouldRewrite("表白"));
+        Assertions.assertTrue(rewriter.shouldRewrite("怎么办！！！"));
+        Assertions.assertTrue(rewriter.shouldRewrite("我和女朋友在一起三年了最近总是吵架应该怎么沟通"));
+    }
+
+    @Test
+    void rewrittenQueriesAreCached() {
+        QueryRewriter rewriter = new QueryRewriter(transformer, meterRegistry, 1, 20);
+        Assertions.assertEquals("重写：那个 表白", rewriter.doQueryRewrite("  那个   表白 "));
+        Assertions.assertEquals("重写：那个 表白", rewriter.doQueryRewrite("那个 表白"));
+        Assertions.assertEquals(1, rewrites.get());
+        Assertions.assertEquals(1.0, outcome("cache_hit"));
+        Assertions.assertEquals(1.0, outcome("rewritten"));
+
+        // 容量为 1，旧查询被淘汰
+        rewriter.doQueryRewrite("然后呢");
+        rewriter.doQueryRewrite("那个 表白");
+        Assertions.assertEquals(3, rewrites.get());
+        Assertions.assertEquals(1, rewriter.cacheSize());
+    }
+
+    @Test
+    void usableRawQueryCancelsRewrite() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        QueryTransformer slow = query -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return new Query("重写：" + query.text());
+        };
+        QueryRewriter rewriter = new QueryRewriter(slow, meterRegistry, 10, 20);
+
+        // 原始查询检索完成时重写已在进行
+        Assertions.assertEquals("那个表白", rewriter.rewriteOrKeep("那个表白", raw -> {
+            try {
+                return started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        Assertions.assertEquals(1.0, outcome("raw_used"));
+
+        // 用不上的重写被中断，结果不写入缓存，也不计为失败
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        Assertions.assertEquals(0, rewriter.cacheSize());
+        Assertions.assertEquals(0.0, outcome("failed"));
+    }
+
+    @Test
+    void slowRewriteTimesOut() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        QueryTransformer hanging = query -> {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return new Query("重写：" + query.text());
+        };
+        QueryRewriter rewriter = new QueryRewriter(hanging, meterRegistry, 10, 20, 100);
+
+        Assertions.assertEquals("那个表白", rewriter.rewriteOrKeep("那个表白", raw -> false));
+        Assertions.assertEquals(1.0, outcome("timeout"));
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedRewriteFallsBackToRawQuery() {
+        QueryTransformer failing = query -> {
+            throw new IllegalStateException("模型不可用");
+        };
+        QueryRewriter rewriter = new QueryRewriter(failing, meterRegistry, 10, 20);
+        Assertions.assertEquals("那个表白", rewriter.rewriteOrKeep("那个表白", raw -> false));
+        Assertions.assertEquals(1.0, outcome("failed"));
+    }
+}
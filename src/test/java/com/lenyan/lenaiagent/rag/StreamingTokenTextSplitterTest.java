@@ -0,0 +1,97 @@
+package com.lenyan.lenaiagent.rag;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.util.List;
+import java.util.Map;
+
+class StreamingTokenTextSplitterTest {
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    private static String englishText(int sentences) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            builder.append("Sentence number ").append(i).append(" talks about dating, trust and communication");
+            builder.append(i % 7 == 0 ? "!\n" : i % 5 == 0 ? "? " : ". ");
+        }
+        return builder.toString();
+    }
+
+    private static String chineseText(int sentences) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            builder.append("第").append(i).append("条建议：恋爱中遇到分歧时，先倾听对方的想法，再表达自己的感受");
+            builder.append(i % 3 == 0 ? "。\n" : "！");
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void matchesTokenTextSplitterWithoutOverlap() {
+        String text = englishText(300);
+        List<String> expected = new TokenTextSplitter(200, 100, 10, 5000, true)
+                .apply(List.of(new Document(text))).stream().map(Document::getText).toList();
+        List<String> actual = StreamingTokenTextSplitter.builder()
+                .chunkSize(200).minChunkSizeChars(100).minChunkLengthToEmbed(10).maxNumChunks(5000).build()
+                .apply(List.of(new Document(text))).stream().map(Document::getText).toList();
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void chunksAreOverlappingViewsWithinTokenLimit() {
+        String text = chineseText(200);
+        StreamingTokenTextSplitter splitter = StreamingTokenTextSplitter.builder()
+                .chunkSize(100).chunkOverlap(20).minChunkSizeChars(30).build();
+        List<StreamingTokenTextSplitter.TextChunk> chunks = splitter.chunks(text).toList();
+        Assertions.assertTrue(chunks.size() > 1);
+        for (int i = 0; i < chunks.size(); i++) {
+            StreamingTokenTextSplitter.TextChunk chunk = chunks.get(i);
+            Assertions.assertSame(text, chunk.source());
+            Assertions.assertEquals(text.substring(chunk.start(), chunk.end()), chunk.toString());
+            Assertions.assertTrue(ENCODING.countTokensOrdinary(chunk.toString()) <= 100);
+            // 中文字符不会被截断成乱码
+            Assertions.assertFalse(chunk.toString().contains("�"));
+            if (i > 0) {
+                // 与上一块重叠，且整体向前推进
+                Assertions.assertTrue(chunk.start() < chunks.get(i - 1).end());
+                Assertions.assertTrue(chunk.start() > chunks.get(i - 1).start());
+            }
+        }
+        // 覆盖全文
+        Assertions.assertEquals(0, chunks.get(0).start());
+        Assertions.assertEquals(text.length() - 1, chunks.get(chunks.size() - 1).end() - 1);
+    }
+
+    @Test
+    void splitsLargeDocumentLazily() {
+        String text = chineseText(40_000) + englishText(20_000);
+        Assertions.assertTrue(text.length() > 2_000_000);
+        StreamingTokenTextSplitter splitter = StreamingTokenTextSplitter.builder().chunkSize(200).chunkOverlap(20).build();
+        // 只取前几块时不会编码全文
+        Assertions.assertEquals(3, splitter.chunks(text).limit(3).count());
+
+        long[] covered = new long[1];
+        long count = splitter.chunks(text).peek(chunk -> covered[0] = chunk.end()).count();
+        Assertions.assertTrue(count > 1000);
+        Assertions.assertEquals(text.stripTrailing().length(), covered[0]);
+    }
+
+    @Test
+    void copiesMetadataAndHonorsMaxNumChunks() {
+        Document document = new Document(englishText(100), Map.of("filename", "a.md"));
+        List<Document> documents = StreamingTokenTextSplitter.builder()
+                .chunkSize(50).minChunkSizeChars(10).maxNumChunks(2).build()
+                .apply(List.of(document));
+        Assertions.assertEquals(3, documents.size());
+        documents.forEach(split -> Assertions.assertEquals("a.md", split.getMetadata().get("filename")));
+        Assertions.assertTrue(documents.get(2).getText().endsWith(document.getText().stripTrailing()
+                .substring(document.getText().stripTrailing().length() - 20)));
+    }
+}
@@ -0,0 +1,163 @@
+package com.lenyan.lenaiagent.rag.documentreader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kohsuke.github.GHBlob;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTree;
+import org.kohsuke.github.GHTreeEntry;
+import org.kohsuke.github.GitHub;
+import org.springframework.ai.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GitHubDocumentSyncTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final GHRepository repository = mock(GHRepository.class);
+    // 路径 -> 内容，blob SHA 即内容
+    private final Map<String, String> files = new LinkedHashMap<>();
+    private final List<String> operations = new ArrayList<>();
+    private GitHubDocumentLoader loader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        GitHub gitHub = mock(GitHub.class);
+        when(gitHub.getRepository("owner/repo")).thenReturn(repository);
+        when(repository.getTreeRecursive(anyString(), anyInt())).thenAnswer(invocation -> tree());
+        when(repository.getBlob(anyString())).thenAnswer(invocation -> {
+            GHBlob blob = mock(GHBlob.class);
+            when(blob.read()).thenReturn(new ByteArrayInputStream(invocation.<String>getArgument(0).getBytes(StandardCharsets.UTF_8)));
+            return blob;
+        });
+        loader = GitHubDocumentLoader.builder().gitHub(gitHub).owner("owner").repo("repo").branch("main").build();
+    }
+
+    private GHTree tree() {
+        List<GHTreeEntry> entries = new ArrayList<>();
+        files.forEach((path, content) -> {
+            GHTreeEntry entry = mock(GHTreeEntry.class);
+            when(entry.getType()).thenReturn("blob");
+            when(entry.getPath()).thenReturn(path);
+            when(entry.getSha()).thenReturn(content);
+            entries.add(entry);
+        });
+        GHTree tree = mock(GHTree.class);
+        when(tree.getSha()).thenReturn(String.valueOf(files.hashCode()));
+        when(tree.getTree()).thenReturn(entries);
+        return tree;
+    }
+
+    private GitHubDocumentLoader.SyncResult sync(File manifest) {
+        return loader.syncTo(documents -> documents.forEach(document -> operations.add("upsert " + document.getText())),
+                ids -> ids.forEach(id -> operations.add("delete " + id)), "docs", manifest);
+    }
+
+    @Test
+    void syncsTextFilesAndWritesBeforeDeleting() {
+        File manifest = tempDir.resolve("manifest.json").toFile();
+        files.put("docs/a.md", "表白技巧");
+        files.put("docs/b.txt", "约会地点");
+        files.put("docs/logo.png", "\u0000PNG");
+        files.put("other/c.md", "不在目录下");
+
+        GitHubDocumentLoader.SyncResult first = sync(manifest);
+        Assertions.assertEquals(2, first.added());
+        Assertions.assertEquals(List.of("upsert 表白技巧", "upsert 约会地点"), operations);
+
+        // 修改 a.md、删除 b.txt：先覆盖写入，再删除
+        operations.clear();
+        files.put("docs/a.md", "表白技巧（修订）");
+        files.remove("docs/b.txt");
+        GitHubDocumentLoader.SyncResult second = sync(manifest);
+        Assertions.assertEquals(1, second.updated());
+        Assertions.assertEquals(1, second.deleted());
+        Assertions.assertEquals(List.of("upsert 表白技巧（修订）", "delete " + loader.documentId("docs/b.txt")), operations);
+    }
+
+    @Test
+    void failedWriteIsRetriedOnNextSync() {
+        File manifest = tempDir.resolve("manifest.json").toFile();
+        files.put("docs/a.md", "表白技巧");
+        sync(manifest);
+
+        // a.md 写入失败不影响 b.md，清单只记录 b.md
+        operations.clear();
+        files.put("docs/a.md", "表白技巧（修订）");
+        files.put("docs/b.md", "约会地点");
+        GitHubDocumentLoader.SyncResult failed = loader.syncTo(documents -> {
+            if (documents.get(0).getText().startsWith("表白")) {
+                throw new IllegalStateException("向量库不可用");
+            }
+            documents.forEach(document -> operations.add("upsert " + document.getText()));
+        }, ids -> ids.forEach(id -> operations.add("delete " + id)), "docs", manifest);
+        Assertions.assertEquals(1, failed.added());
+        Assertions.assertEquals(1, failed.failed());
+        Assertions.assertEquals(List.of("upsert 约会地点"), operations);
+
+        // 下次同步只重新写入失败的文件
+        operations.clear();
+        GitHubDocumentLoader.SyncResult retried = sync(manifest);
+        Assertions.assertEquals(1, retried.updated());
+        Assertions.assertEquals(1, retried.unchanged());
+        Assertions.assertEquals(List.of("upsert 表白技巧（修订）"), operations);
+    }
+
+    @Test
+    void splitsFilesIntoChunksAndDeletesStaleChunks() {
+        File manifest = tempDir.resolve("manifest.json").toFile();
+        GitHubDocumentLoader.SyncTarget target = new GitHubDocumentLoader.SyncTarget() {
+            @Override
+            public List<Document> split(Document document) {
+                return Arrays.stream(document.getText().split("\\|")).map(Document::new).toList();
+            }
+
+            @Override
+            public void upsert(List<Document> chunks) {
+                chunks.forEach(chunk -> operations.add("upsert " + chunk.getId() + " " + chunk.getText()));
+            }
+
+            @Override
+            public void delete(List<String> ids) {
+                ids.forEach(id -> operations.add("delete " + id));
+            }
+        };
+        files.put("docs/a.md", "一|二|三");
+        loader.syncTo(target, "docs", manifest);
+        String id0 = loader.documentId("docs/a.md");
+        String id1 = loader.chunkId("docs/a.md", 1);
+        String id2 = loader.chunkId("docs/a.md", 2);
+        Assertions.assertEquals(List.of("upsert " + id0 + " 一", "upsert " + id1 + " 二", "upsert " + id2 + " 三"),
+                operations);
+
+        // 块数变少时覆盖前面的块并删除多出的旧块
+        operations.clear();
+        files.put("docs/a.md", "一|二改");
+        loader.syncTo(target, "docs", manifest);
+        Assertions.assertEquals(List.of("upsert " + id0 + " 一", "upsert " + id1 + " 二改", "delete " + id2),
+                operations);
+
+        // 删除文件时删除它的全部块
+        operations.clear();
+        files.remove("docs/a.md");
+        loader.syncTo(target, "docs", manifest);
+        Assertions.assertEquals(List.of("delete " + id0, "delete " + id1), operations);
+    }
+}
@@ -0,0 +1,57 @@
+package com.lenyan.lenaiagent.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbacks;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CallLimitedToolCallbackTest {
+
+    static class CountingTools {
+
+        final AtomicInteger searches = new AtomicInteger();
+
+        @Tool(description = "search")
+        public String searchWeb(String query) {
+            return "结果" + searches.incrementAndGet();
+        }
+
+        @Tool(description = "time")
+        public String currentTime() {
+            return "现在";
+        }
+    }
+
+    @Test
+    void limitsCallsPerWrappedRequest() {
+        CountingTools target = new CountingTools();
+        ToolCallback[] tools = ToolCallbacks.from(target);
+        Map<String, Integer> limits = Map.of(WebSearchTool.TOOL_NAME, 2);
+
+        ToolCallback[] request = CallLimitedToolCallback.limit(tools, limits);
+        ToolCallback search = find(request, WebSearchTool.TOOL_NAME);
+        Assertions.assertTrue(search.call("{\"query\":\"a\"}").contains("结果1"));
+        Assertions.assertTrue(search.call("{\"query\":\"b\"}").contains("结果2"));
+        Assertions.assertTrue(search.call("{\"query\":\"c\"}").contains("调用次数已达到限制"));
+        Assertions.assertEquals(2, target.searches.get());
+        // 未限制的工具原样返回
+        Assertions.assertSame(find(tools, "currentTime"), find(request, "currentTime"));
+
+        // 下一次请求重新计数
+        ToolCallback next = find(CallLimitedToolCallback.limit(tools, limits), WebSearchTool.TOOL_NAME);
+        Assertions.assertTrue(next.call("{\"query\":\"d\"}").contains("结果3"));
+    }
+
+    private static ToolCallback find(ToolCallback[] tools, String name) {
+        for (ToolCallback tool : tools) {
+            if (tool.getToolDefinition().name().equals(name)) {
+                return tool;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}